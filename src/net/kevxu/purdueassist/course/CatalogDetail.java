@@ -7,23 +7,48 @@
 
 package net.kevxu.purdueassist.course;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.kevxu.purdueassist.course.elements.CourseKey;
+import net.kevxu.purdueassist.course.elements.Predefined.Level;
 import net.kevxu.purdueassist.course.elements.Predefined.Subject;
 import net.kevxu.purdueassist.course.elements.Predefined.Term;
 import net.kevxu.purdueassist.course.elements.Predefined.Type;
 import net.kevxu.purdueassist.course.shared.CourseNotFoundException;
+import net.kevxu.purdueassist.course.shared.HtmlFragmentReader;
 import net.kevxu.purdueassist.course.shared.HtmlParseException;
-import net.kevxu.purdueassist.course.shared.RequestNotFinishedException;
-import net.kevxu.purdueassist.shared.httpclient.BasicHttpClientAsync;
+import net.kevxu.purdueassist.course.shared.Interner;
+import net.kevxu.purdueassist.course.shared.KeywordMatcher;
+import net.kevxu.purdueassist.course.shared.NegativeCache;
+import net.kevxu.purdueassist.course.shared.Outcome;
+import net.kevxu.purdueassist.course.shared.ParsePipeline;
+import net.kevxu.purdueassist.course.shared.SingleFlight;
 import net.kevxu.purdueassist.shared.httpclient.BasicHttpClientAsync.HttpRequestListener;
+import net.kevxu.purdueassist.shared.httpclient.HttpClientAsync;
 import net.kevxu.purdueassist.shared.httpclient.HttpClientAsync.HttpMethod;
+import net.kevxu.purdueassist.shared.httpclient.HttpClientAsyncFactory;
+import net.kevxu.purdueassist.shared.httpclient.HttpUtilities;
 import net.kevxu.purdueassist.shared.httpclient.MethodNotPostException;
+import net.kevxu.purdueassist.shared.httpclient.PooledHttpClientAsync;
 
-import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.ClientProtocolException;
@@ -36,8 +61,8 @@ import org.jsoup.select.Elements;
 /**
  * This is the class implementing "Catalog Detail" search described in the
  * document. It utilizes asynchronous function call for non-blocking calling
- * style. You have to provide callback method by implementing
- * CatalogDetailListener.
+ * style. You can either provide callback method by implementing
+ * CatalogDetailListener, or use the CompletableFuture returned by getResult().
  * <p>
  * Input: subject cnbr <br />
  * Input (optional): term
@@ -49,18 +74,60 @@ import org.jsoup.select.Elements;
  * @author Rendong Chen (ryan), Kaiwen Xu (kevin)
  * @see CatalogDetailListener
  */
-public class CatalogDetail implements HttpRequestListener {
+public class CatalogDetail {
 
 	private static final String URL_HEAD = "https://selfservice.mypurdue.purdue.edu/prod/" + "bzwsrch.p_catalog_detail";
 
-	private Term term;
-	private Subject subject;
-	private int cnbr;
+	private static final String DETAIL_TABLE_SUMMARY = "This table lists the course detail for the selected term.";
+
+	private static final String CAMPUSES_LABEL = "May be offered at any of the following campuses:";
+	private static final String RESTRICTIONS_LABEL = "Restrictions:";
+
+	// labels in the course detail text, indexes into sLabels
+	private static final int LEVELS = 0;
+	private static final int SCHEDULE_TYPES = 1;
+	private static final int OFFERED_BY = 2;
+	private static final int DEPARTMENT = 3;
+	private static final int COURSE_ATTRIBUTES = 4;
+	private static final int CAMPUSES = 5;
+	private static final int REPEATABLE = 6;
+	private static final int LEARNING_OBJECTIVES = 7;
+	private static final int RESTRICTIONS = 8;
+	private static final int COREQUISITES = 9;
+	private static final int PREREQUISITES = 10;
+
+	private static final KeywordMatcher sLabels = new KeywordMatcher("Levels:", "Schedule Types:", "Offered By:",
+			"Department:", "Course Attributes:", CAMPUSES_LABEL, "Repeatable for Additional Credit:",
+			"Learning Objectives:", RESTRICTIONS_LABEL, "Corequisites:", "Prerequisites:");
+
+	/**
+	 * Fields of CatalogDetailEntry which can be requested with setFields(). The subject and cnbr are always set. Levels
+	 * and types unknown to Predefined are set to UNKNOWN, and their text is kept, see
+	 * CatalogDetailEntry.getUnknownValue().
+	 */
+	public enum Field {
+		NAME, DESCRIPTION, LEVELS, TYPE, OFFERED_BY, DEPARTMENT, CAMPUSES, RESTRICTIONS, PREREQUISITES
+	};
 
 	private CatalogDetailListener mListener;
-	private BasicHttpClientAsync httpClient;
+	private HttpClientAsyncFactory mHttpClientFactory;
+	private volatile Executor mCallbackExecutor;
+	private volatile Set<Field> mFields = EnumSet.allOf(Field.class);
+	private volatile NegativeCache<CourseKey> mNegativeCache = sNegativeCache;
 
-	private boolean requestFinished;
+	private final AtomicInteger mRequestsInFlight = new AtomicInteger(0);
+	private final AtomicLong mUnknownValues = new AtomicLong(0);
+
+	/**
+	 * Lookups in flight in the whole process. Concurrent lookups of the same course share one request and one parse.
+	 */
+	private static final SingleFlight<Lookup, Outcome<CatalogDetailEntry>> sInFlightLookups = new SingleFlight<Lookup, Outcome<CatalogDetailEntry>>();
+
+	/**
+	 * Courses not found in the last 10 minutes, shared by the instances not given another cache.
+	 */
+	private static final NegativeCache<CourseKey> sNegativeCache = new NegativeCache<CourseKey>(100000, 10,
+			TimeUnit.MINUTES);
 
 	public interface CatalogDetailListener {
 		public void onCatalogDetailFinished(CatalogDetailEntry entry);
@@ -74,225 +141,640 @@ public class CatalogDetail implements HttpRequestListener {
 		public void onCatalogDetailFinished(Exception e);
 	}
 
+	/**
+	 * Constructor for callers only using the returned futures.
+	 */
+	public CatalogDetail() {
+		this(null, PooledHttpClientAsync.FACTORY);
+	}
+
 	public CatalogDetail(CatalogDetailListener catalogDetailListener) {
+		this(catalogDetailListener, PooledHttpClientAsync.FACTORY);
+	}
+
+	public CatalogDetail(CatalogDetailListener catalogDetailListener, HttpClientAsyncFactory httpClientFactory) {
 		this.mListener = catalogDetailListener;
-		this.requestFinished = true;
+		this.mHttpClientFactory = httpClientFactory;
+		this.mCallbackExecutor = null;
 	}
 
-	public void getResult(Subject subject, int cnbr) throws RequestNotFinishedException {
-		getResult(Term.CURRENT, subject, cnbr);
+	/**
+	 * Set the executor on which the listener is called and the returned futures are completed. By default they run on
+	 * the delivery stage of the shared ParsePipeline.
+	 * 
+	 * @param callbackExecutor
+	 *            executor for callback delivery, or null for the delivery stage.
+	 */
+	public void setCallbackExecutor(Executor callbackExecutor) {
+		this.mCallbackExecutor = callbackExecutor;
 	}
 
-	public void getResult(Term term, Subject subject, int cnbr) throws RequestNotFinishedException {
-		if (!this.requestFinished)
-			throw new RequestNotFinishedException();
+	/**
+	 * Set the fields of the entries of following requests. Only the requested fields are extracted and set; the others
+	 * are left null. The course text is only searched for the labels the requested fields need, and not at all if
+	 * only the name, the type or the prerequisites are requested. All fields are requested by default.
+	 * 
+	 * @param fields
+	 *            fields to set, or null for all of them.
+	 */
+	public void setFields(EnumSet<Field> fields) {
+		this.mFields = (fields == null) ? EnumSet.allOf(Field.class) : EnumSet.copyOf(fields);
+	}
 
-		this.requestFinished = false;
+	/**
+	 * Set the cache of courses not found. A course looked up and not found is answered from the cache, without a
+	 * request, until its time to live is over. By default, a cache of 100000 courses for 10 minutes is shared by all
+	 * instances.
+	 * 
+	 * @param negativeCache
+	 *            cache of courses not found, or null for none.
+	 */
+	public void setNegativeCache(NegativeCache<CourseKey> negativeCache) {
+		this.mNegativeCache = negativeCache;
+	}
 
+	/**
+	 * @return cache of courses not found, i.e. to read its counters, or null if there is none.
+	 */
+	public NegativeCache<CourseKey> getNegativeCache() {
+		return mNegativeCache;
+	}
+
+	public CompletableFuture<CatalogDetailEntry> getResult(Subject subject, int cnbr) {
+		return getResult(Term.CURRENT, subject, cnbr);
+	}
+
+	/**
+	 * Call this method to start retrieving and parsing data. It can be called again, from any thread, before previous
+	 * requests have finished.
+	 * <p>
+	 * The listener, if any, is called before the returned future completes. If the same course is already being looked
+	 * up (by any instance), this call waits for that lookup instead of sending another request.
+	 * 
+	 * @return future completed with the entry, or exceptionally with the same exception passed to the listener.
+	 */
+	public CompletableFuture<CatalogDetailEntry> getResult(Term term, Subject subject, int cnbr) {
 		if (term == null)
 			term = Term.CURRENT;
 
-		this.term = term;
-		this.subject = subject;
-		this.cnbr = cnbr;
+		mRequestsInFlight.incrementAndGet();
+		return deliver(lookUp(term, subject, cnbr));
+	}
+
+	/**
+	 * Same as getOutcome(Term.CURRENT, subject, cnbr).
+	 */
+	public CompletableFuture<Outcome<CatalogDetailEntry>> getOutcome(Subject subject, int cnbr) {
+		return getOutcome(Term.CURRENT, subject, cnbr);
+	}
+
+	/**
+	 * Same as getResult(Term, Subject, int), except that the outcome is given as a value: the returned future always
+	 * completes normally, and a course not found creates no exception. Use it to sweep ranges of cnbrs, where most
+	 * lookups find nothing. The listener is not notified.
+	 * 
+	 * @return future completed with the outcome.
+	 */
+	public CompletableFuture<Outcome<CatalogDetailEntry>> getOutcome(Term term, Subject subject, int cnbr) {
+		if (term == null)
+			term = Term.CURRENT;
+
+		mRequestsInFlight.incrementAndGet();
+		final CompletableFuture<Outcome<CatalogDetailEntry>> future = new CompletableFuture<Outcome<CatalogDetailEntry>>();
+		lookUp(term, subject, cnbr).whenComplete((outcome, throwable) -> {
+			mRequestsInFlight.decrementAndGet();
+			final Outcome<CatalogDetailEntry> delivered = (throwable == null) ? outcome : Outcome
+					.<CatalogDetailEntry> failed(unwrap(throwable));
+			getCallbackExecutor().execute(new Runnable() {
+
+				@Override
+				public void run() {
+					future.complete(delivered);
+				}
+			});
+		});
+		return future;
+	}
+
+	private CompletableFuture<Outcome<CatalogDetailEntry>> lookUp(Term term, Subject subject, int cnbr) {
+		if (term == Term.UNKNOWN || subject == Subject.UNKNOWN)
+			return CompletableFuture.completedFuture(Outcome.<CatalogDetailEntry> notFound("Term or subject is unknown."));
+		final CourseKey course = new CourseKey(term, subject, cnbr);
+		final NegativeCache<CourseKey> cache = mNegativeCache;
+		if (cache != null) {
+			Outcome<CatalogDetailEntry> notFound = cache.get(course);
+			if (notFound != null)
+				return CompletableFuture.completedFuture(notFound);
+		}
+		CompletableFuture<Outcome<CatalogDetailEntry>> result = sInFlightLookups.get(new Lookup(course, mFields),
+				lookup -> fetch(lookup.mCourse.getTerm(), lookup.mCourse.getSubject(), lookup.mCourse.getCnbr(),
+						lookup.mFields));
+		if (cache == null)
+			return result;
+		return result.thenApply(outcome -> {
+			cache.put(course, outcome);
+			return outcome;
+		});
+	}
+
+	/**
+	 * Send the request and parse the response, without notifying anyone.
+	 */
+	private CompletableFuture<Outcome<CatalogDetailEntry>> fetch(Term term, Subject subject, int cnbr,
+			Set<Field> fields) {
+		Request request = new Request(term, subject, cnbr, fields);
 
 		List<NameValuePair> parameters = new ArrayList<NameValuePair>();
 		parameters.add(new BasicNameValuePair("term", term.getLinkName()));
 		parameters.add(new BasicNameValuePair("subject", subject.name()));
 		parameters.add(new BasicNameValuePair("cnbr", Integer.toString(cnbr)));
 
-		httpClient = new BasicHttpClientAsync(URL_HEAD, HttpMethod.POST, this);
+		HttpClientAsync httpClient = mHttpClientFactory.newHttpClient(URL_HEAD, HttpMethod.POST, request);
+		request.mHttpClient = httpClient;
 		try {
 			httpClient.setParameters(parameters);
 			httpClient.getResponse();
 		} catch (MethodNotPostException e) {
-			e.printStackTrace();
-		} finally {
-			this.requestFinished = true;
+			request.finish(Outcome.<CatalogDetailEntry> transportError(e));
 		}
+
+		return request.mFuture;
 	}
 
 	/**
-	 * Check whether previous request has been finished.
-	 * 
-	 * @return Return true if previous request has already finished.
+	 * Notify the listener of the result, on the callback executor if there is one, then complete the returned future.
 	 */
-	public boolean isRequestFinished() {
-		return this.requestFinished;
+	private CompletableFuture<CatalogDetailEntry> deliver(CompletableFuture<Outcome<CatalogDetailEntry>> result) {
+		final CompletableFuture<CatalogDetailEntry> future = new CompletableFuture<CatalogDetailEntry>();
+		result.whenComplete((outcome, throwable) -> {
+			mRequestsInFlight.decrementAndGet();
+			final CatalogDetailEntry entry = (throwable == null) ? outcome.getValue() : null;
+			final Exception exception = (throwable == null) ? outcome.toException() : unwrap(throwable);
+			getCallbackExecutor().execute(new Runnable() {
+
+				@Override
+				public void run() {
+					deliver(future, entry, exception);
+				}
+			});
+		});
+		return future;
 	}
 
-	@Override
-	public void onRequestFinished(HttpResponse httpResponse) {
+	private void deliver(CompletableFuture<CatalogDetailEntry> future, CatalogDetailEntry entry, Exception exception) {
 		try {
-			InputStream stream = httpResponse.getEntity().getContent();
-			Header encoding = httpResponse.getEntity().getContentEncoding();
-			Document document;
-			if (encoding == null) {
-				document = Jsoup.parse(stream, null, URL_HEAD);
+			if (mListener != null) {
+				notifyListener(entry, exception);
+			}
+		} finally {
+			if (exception == null) {
+				future.complete(entry);
 			} else {
-				document = Jsoup.parse(stream, encoding.getValue(), URL_HEAD);
+				future.completeExceptionally(exception);
 			}
-			stream.close();
-			CatalogDetailEntry entry = parseDocument(document);
+		}
+	}
+
+	private Executor getCallbackExecutor() {
+		Executor executor = mCallbackExecutor;
+		if (executor == null)
+			executor = ParsePipeline.getInstance().getDeliveryExecutor();
+		return executor;
+	}
+
+	private void notifyListener(CatalogDetailEntry entry, Exception exception) {
+		if (exception == null) {
 			mListener.onCatalogDetailFinished(entry);
-		} catch (IllegalStateException e) {
-			e.printStackTrace();
+		} else if (exception instanceof IOException) {
+			mListener.onCatalogDetailFinished((IOException) exception);
+		} else if (exception instanceof HtmlParseException) {
+			mListener.onCatalogDetailFinished((HtmlParseException) exception);
+		} else if (exception instanceof CourseNotFoundException) {
+			mListener.onCatalogDetailFinished((CourseNotFoundException) exception);
+		} else {
+			mListener.onCatalogDetailFinished(exception);
+		}
+	}
+
+	private static Exception unwrap(Throwable throwable) {
+		if (throwable instanceof CompletionException && throwable.getCause() != null)
+			throwable = throwable.getCause();
+		if (throwable instanceof Exception)
+			return (Exception) throwable;
+		return new Exception(throwable);
+	}
+
+	/**
+	 * Check whether all previous requests have been finished.
+	 * 
+	 * @return Return true if no request is in flight.
+	 */
+	public boolean isRequestFinished() {
+		return mRequestsInFlight.get() == 0;
+	}
+
+	/**
+	 * Get the number of values parsed which are unknown to Predefined, i.e. a new schedule type, see
+	 * CatalogDetailEntry.getUnknownValue().
+	 * 
+	 * @return number of unknown values since this was created.
+	 */
+	public long getUnknownValues() {
+		return mUnknownValues.get();
+	}
+
+	/**
+	 * Key of a lookup in flight. Lookups of the same course only share a request if they ask for the same fields.
+	 */
+	private static class Lookup {
+
+		private final CourseKey mCourse;
+		private final Set<Field> mFields;
+
+		public Lookup(CourseKey course, Set<Field> fields) {
+			this.mCourse = course;
+			this.mFields = fields;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Lookup))
+				return false;
+			Lookup other = (Lookup) obj;
+			return mCourse.equals(other.mCourse) && mFields.equals(other.mFields);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * mCourse.hashCode() + mFields.hashCode();
+		}
+	}
+
+	/**
+	 * State of a single HTTP request, so that any number of lookups can run concurrently on one instance.
+	 */
+	private class Request implements HttpRequestListener {
+
+		private final Term mTerm;
+		private final Subject mSubject;
+		private final int mCnbr;
+		private final Set<Field> mFields;
+		private final CompletableFuture<Outcome<CatalogDetailEntry>> mFuture;
+		private HttpClientAsync mHttpClient;
+
+		public Request(Term term, Subject subject, int cnbr, Set<Field> fields) {
+			this.mTerm = term;
+			this.mSubject = subject;
+			this.mCnbr = cnbr;
+			this.mFields = fields;
+			this.mFuture = new CompletableFuture<Outcome<CatalogDetailEntry>>();
+		}
+
+		@Override
+		public void onRequestFinished(HttpResponse httpResponse) {
+			ParsePipeline pipeline = ParsePipeline.getInstance();
+			try {
+				HttpEntity entity = httpResponse.getEntity();
+				InputStream stream = entity.getContent();
+				final HtmlFragmentReader reader = newFragmentReader();
+				final byte[] fragment;
+				pipeline.beginRead();
+				try {
+					fragment = reader.read(stream);
+					if (reader.isTruncated()) {
+						HttpUtilities.releaseContent(mHttpClient, stream, HttpUtilities.DEFAULT_MAX_DISCARD_BYTES);
+					} else {
+						stream.close();
+					}
+				} finally {
+					pipeline.endRead();
+				}
+				final String charset = HttpUtilities.getContentCharset(entity);
+
+				// parse off the HTTP thread
+				pipeline.parse(new Runnable() {
+
+					@Override
+					public void run() {
+						finish(parse(reader, fragment, charset, mSubject, mCnbr, mFields));
+					}
+				});
+			} catch (Exception e) {
+				finish(Outcome.<CatalogDetailEntry> failed(e));
+			}
+		}
+
+		@Override
+		public void onRequestFinished(ClientProtocolException e) {
+			finish(Outcome.<CatalogDetailEntry> transportError(e));
+		}
+
+		@Override
+		public void onRequestFinished(IOException e) {
+			finish(Outcome.<CatalogDetailEntry> transportError(e));
+		}
+
+		private void finish(Outcome<CatalogDetailEntry> outcome) {
+			mFuture.complete(outcome);
+		}
+	}
+
+	/**
+	 * Parse a saved catalog detail page, without any network access. The entry is the same getResult() gives for the
+	 * page, with the fields set by setFields(), but the listener is not notified. It may be called from any number of
+	 * threads at once.
+	 * 
+	 * @param page
+	 *            page content. It is read up to the course detail table and not closed.
+	 * @param charset
+	 *            charset of the page, or null to use the one declared in it.
+	 * @param subject
+	 *            subject the page was requested for.
+	 * @param cnbr
+	 *            cnbr the page was requested for.
+	 * @return entry of the course.
+	 * @throws IOException
+	 * @throws HtmlParseException
+	 * @throws CourseNotFoundException
+	 */
+	public CatalogDetailEntry parse(InputStream page, String charset, Subject subject, int cnbr) throws IOException,
+			HtmlParseException, CourseNotFoundException {
+		return parseOutcome(page, charset, subject, cnbr).get();
+	}
+
+	/**
+	 * Same as parse(InputStream, String, Subject, int).
+	 */
+	public CatalogDetailEntry parse(byte[] page, String charset, Subject subject, int cnbr) throws IOException,
+			HtmlParseException, CourseNotFoundException {
+		return parse(new ByteArrayInputStream(page), charset, subject, cnbr);
+	}
+
+	/**
+	 * Same as parse(InputStream, String, Subject, int), except that the outcome is given as a value, and a page
+	 * without course creates no exception.
+	 * 
+	 * @return outcome of the page. Failing to read it is a TRANSPORT_ERROR.
+	 */
+	public Outcome<CatalogDetailEntry> parseOutcome(InputStream page, String charset, Subject subject, int cnbr) {
+		HtmlFragmentReader reader = newFragmentReader();
+		byte[] fragment;
+		try {
+			fragment = reader.read(page);
 		} catch (IOException e) {
-			mListener.onCatalogDetailFinished(e);
-		} catch (HtmlParseException e) {
-			mListener.onCatalogDetailFinished(e);
-		} catch (CourseNotFoundException e) {
-			mListener.onCatalogDetailFinished(e);
-		} catch (Exception e) {
-			mListener.onCatalogDetailFinished(e);
-		} finally {
-			this.requestFinished = true;
+			return Outcome.transportError(e);
 		}
+		return parse(reader, fragment, charset, subject, cnbr, mFields);
 	}
 
-	@Override
-	public void onRequestFinished(ClientProtocolException e) {
-		e.printStackTrace();
-		this.requestFinished = true;
+	/**
+	 * Same as parseOutcome(InputStream, String, Subject, int).
+	 */
+	public Outcome<CatalogDetailEntry> parseOutcome(byte[] page, String charset, Subject subject, int cnbr) {
+		return parseOutcome(new ByteArrayInputStream(page), charset, subject, cnbr);
+	}
+
+	private static HtmlFragmentReader newFragmentReader() {
+		// only the course detail table is needed
+		return new HtmlFragmentReader().addTable(DETAIL_TABLE_SUMMARY);
 	}
 
-	@Override
-	public void onRequestFinished(IOException e) {
-		mListener.onCatalogDetailFinished(e);
-		this.requestFinished = true;
+	private Outcome<CatalogDetailEntry> parse(HtmlFragmentReader reader, byte[] fragment, String charset,
+			Subject subject, int cnbr, Set<Field> fields) {
+		if (charset == null)
+			charset = reader.getDeclaredCharset();
+		try {
+			Document document = Jsoup.parse(new ByteArrayInputStream(fragment), charset, URL_HEAD);
+			return parseDocument(document, subject, cnbr, fields);
+		} catch (Exception e) {
+			return Outcome.failed(e);
+		}
 	}
 
-	private CatalogDetailEntry parseDocument(Document document) throws HtmlParseException, CourseNotFoundException,
-			IOException {
+	private Outcome<CatalogDetailEntry> parseDocument(Document document, Subject subject, int cnbr,
+			Set<Field> fields) throws HtmlParseException {
 		CatalogDetailEntry entry = new CatalogDetailEntry(subject, cnbr);
-		Elements tableElements = document.getElementsByAttributeValue("summary",
-				"This table lists the course detail for the selected term.");
+		Elements tableElements = document.getElementsByAttributeValue("summary", DETAIL_TABLE_SUMMARY);
 		if (tableElements.isEmpty() != true) {
+			Element body = tableElements.first().select("tbody").first();
+			Element nameElement = (body == null) ? null : body.select("tr td.nttitle").first();
+			if (nameElement == null)
+				throw new HtmlParseException("Course title element not found.");
+			body = body.select(".ntdefault").first();
+			if (body == null)
+				throw new HtmlParseException("Course detail element not found.");
+
 			// get name
-			try {
-				Element body = tableElements.first().select("tbody").first();
-				String nameBlock = body.select("tr td.nttitle").first().text();
-				String[] temp = nameBlock.split(subject.name() + " " + String.valueOf(cnbr));
-				String name = temp[temp.length - 1].substring(3);
-				entry.setName(name);
-
-				// get description
-				body = body.select(".ntdefault").first();
-				String text = body.text();
-				int split = text.indexOf("Levels:");
-				String description = text.substring(0, split);
-				description = description.substring(20);
-				entry.setDescription(description);
-
-				// get levels
-				int begin = split;
-				int end = text.indexOf("Schedule Types:");
-				String levels = text.substring(begin + 8, end);
-				temp = levels.split("[ ,]");
-				List<String> lvs = new ArrayList<String>();
-				for (String s : temp)
-					if (!s.equals("")) {
-						lvs.add(s);
-					}
-				entry.setLevels(lvs);
+			String[] temp;
+			if (fields.contains(Field.NAME)) {
+				String nameBlock = nameElement.text();
+				temp = nameBlock.split(subject.name() + " " + String.valueOf(cnbr));
+				String name = (temp.length > 0) ? temp[temp.length - 1] : "";
+				if (name.length() >= 3)
+					entry.setName(name.substring(3));
+			}
+
+			// every field is cut from the text between its label and the next one; a field whose labels are missing is
+			// left unset without affecting the others. Only the labels of the requested fields are looked for.
+			int[] needed = labelsOf(fields);
+			String text = null;
+			int[] labels = null;
+			int begin;
+			int end;
+			if (needed.length > 0) {
+				text = body.text();
+				labels = sLabels.indexesOf(text, needed);
+			}
+
+			// get description
+			if (fields.contains(Field.DESCRIPTION)) {
+				begin = 20;
+				end = labels[LEVELS];
+				if (end >= begin)
+					entry.setDescription(text.substring(begin, end));
+			}
+
+			// get levels
+			if (fields.contains(Field.LEVELS)) {
+				begin = labels[LEVELS];
+				end = labels[SCHEDULE_TYPES];
+				if (begin >= 0 && end >= begin + 8) {
+					String levels = text.substring(begin + 8, end);
+					temp = levels.split("[ ,]");
+					List<Level> lvs = new ArrayList<Level>();
+					List<String> unknownLevels = new ArrayList<String>();
+					for (String s : temp)
+						if (!s.equals("")) {
+							Level level = Level.lookup(s);
+							lvs.add(level);
+							if (level == Level.UNKNOWN)
+								unknownLevels.add(s);
+						}
+					entry.setLevels(lvs);
+					if (unknownLevels.size() > 0)
+						setUnknownValue(entry, Field.LEVELS, unknownLevels);
+				}
+			}
 
-				// get type and prerequisites
+			// get type and prerequisites
+			if (fields.contains(Field.TYPE) || fields.contains(Field.PREREQUISITES)) {
 				List<Type> types = new ArrayList<Type>();
+				List<String> unknownTypes = new ArrayList<String>();
 				List<String> preq = new ArrayList<String>();
 				Elements parsing_A = body.select("a");
 				for (Element e : parsing_A) {
 					if (e.attr("href").contains("schd_in") && !(e.attr("href").contains("%"))) {
-
-						try {
-							types.add(Type.valueOf(e.text().replace(" ", "")));
-						} catch (Exception exception) {
-							throw new HtmlParseException();
-						}
+						if (!fields.contains(Field.TYPE))
+							continue;
+						Type type = Type.lookup(e.text());
+						types.add(type);
+						if (type == Type.UNKNOWN)
+							unknownTypes.add(e.text());
 					} else if (e.attr("href").contains("sel_attr=")) {
 						preq.add(e.text());
 					}
 				}
 				if (types.size() > 0)
 					entry.setType(types);
-				if (preq.size() > 0)
+				if (unknownTypes.size() > 0)
+					setUnknownValue(entry, Field.TYPE, unknownTypes);
+				if (preq.size() > 0 && fields.contains(Field.PREREQUISITES))
 					entry.setPrerequisites(preq);
+			}
 
-				// get offered by
-				begin = text.indexOf("Offered By:");
-				end = text.indexOf("Department:");
-				if (end < 0)
-					end = text.indexOf("Course Attributes:");
-				if (end > 0) {
+			// get offered by
+			if (fields.contains(Field.OFFERED_BY)) {
+				begin = labels[OFFERED_BY];
+				end = firstOf(labels, DEPARTMENT, COURSE_ATTRIBUTES);
+				if (begin >= 0 && end >= begin + 13) {
 					entry.setOfferedBy(text.substring(begin + 12, end - 1));
 				}
+			}
 
-				// get department
-				begin = text.indexOf("Department:");
-				if (begin > 0) {
-					end = text.indexOf("Course Attributes:");
+			// get department
+			if (fields.contains(Field.DEPARTMENT)) {
+				begin = labels[DEPARTMENT];
+				end = labels[COURSE_ATTRIBUTES];
+				if (begin > 0 && end >= begin + 13) {
 					entry.setDepartment((text.substring(begin + 12, end - 1)));
 				}
+			}
 
-				// get campus
-				begin = text.indexOf("May be offered at any of the following campuses:");
-				String campuses;
-				end = text.indexOf("Repeatable for Additional Credit:");
-				if (end < 0)
-					end = text.indexOf("Learning Objectives:");
-				if (end < 0)
-					end = text.indexOf("Restrictions:");
-				if (end < 0)
-					end = text.indexOf("Corequisites:");
-				if (end < 0)
-					end = text.indexOf("Prerequisites:");
-				if (end < 0) {
-					campuses = text.substring(begin + "May be offered at any of the following campuses:".length() + 5);
-				} else {
-					campuses = text.substring(begin + "May be offered at any of the following campuses:".length() + 5,
-							end - 1);
-				}
-				String ttt=campuses.substring(0,7);
-				temp = campuses.replace(ttt, "#").split("#");
-				List<String> camps = new ArrayList<String>();
-				for (String s : temp) {
-					if (s.length() > 1) {
-						camps.add(s);
-					}
+			// get campus
+			if (fields.contains(Field.CAMPUSES)) {
+				begin = labels[CAMPUSES];
+				end = firstOf(labels, REPEATABLE, LEARNING_OBJECTIVES, RESTRICTIONS, COREQUISITES, PREREQUISITES);
+				if (begin >= 0) {
+					begin += CAMPUSES_LABEL.length() + 5;
+					end = (end < 0) ? text.length() : end - 1;
+					String campuses = (end >= begin) ? text.substring(begin, end) : "";
+					if (campuses.length() >= 7) {
+						String ttt = campuses.substring(0, 7);
+						temp = campuses.replace(ttt, "#").split("#");
+						List<String> camps = new ArrayList<String>();
+						for (String s : temp) {
+							if (s.length() > 1) {
+								camps.add(s);
+							}
 
+						}
+						entry.setCampuses(camps);
+					}
 				}
-				entry.setCampuses(camps);
+			}
 
-				// get restrictions
-				begin = text.indexOf("Restrictions:");
-				end = text.indexOf("Corequisites:");
-				if (end < 0)
-					end = text.indexOf("Prerequisites:");
+			// get restrictions
+			if (fields.contains(Field.RESTRICTIONS)) {
+				begin = labels[RESTRICTIONS];
+				end = firstOf(labels, COREQUISITES, PREREQUISITES);
 				if (begin > 0 && end < 0) {
-					entry.setRestrictions(text.substring(begin + "Restrictions:".length()).replace("������", "\n"));
-				} else if (begin > 0) {
-					entry.setRestrictions(text.substring(begin + "Restrictions:".length(), end).replace("������", "\n"));
+					entry.setRestrictions(text.substring(begin + RESTRICTIONS_LABEL.length()).replace("������", "\n"));
+				} else if (begin > 0 && end >= begin + RESTRICTIONS_LABEL.length()) {
+					entry.setRestrictions(text.substring(begin + RESTRICTIONS_LABEL.length(), end).replace("������",
+							"\n"));
 				}
-
-			} catch (StringIndexOutOfBoundsException e) {
-				// no type, not available
-				// System.out.println("-----------");
-				// System.out.println("Error for cnbr = " + cnbr);
-				// System.out.println("-----------");
 			}
 		} else {
-			throw new CourseNotFoundException();
+			return Outcome.notFound(null);
+		}
+
+		return Outcome.found(entry);
+	}
+
+	/**
+	 * @return labels the given fields are cut between.
+	 */
+	/**
+	 * Keep the text of values unknown to Predefined on the entry, separated by ", ", and count them.
+	 */
+	private void setUnknownValue(CatalogDetailEntry entry, Field field, List<String> texts) {
+		StringBuilder text = new StringBuilder();
+		for (String s : texts) {
+			if (text.length() > 0)
+				text.append(", ");
+			text.append(s.trim());
 		}
+		entry.setUnknownValue(field, text.toString());
+		mUnknownValues.addAndGet(texts.size());
+	}
 
-		return entry;
+	private static int[] labelsOf(Set<Field> fields) {
+		List<Integer> labels = new ArrayList<Integer>();
+		if (fields.contains(Field.DESCRIPTION) || fields.contains(Field.LEVELS))
+			labels.add(LEVELS);
+		if (fields.contains(Field.LEVELS))
+			labels.add(SCHEDULE_TYPES);
+		if (fields.contains(Field.OFFERED_BY))
+			labels.add(OFFERED_BY);
+		if (fields.contains(Field.OFFERED_BY) || fields.contains(Field.DEPARTMENT)) {
+			labels.add(DEPARTMENT);
+			labels.add(COURSE_ATTRIBUTES);
+		}
+		if (fields.contains(Field.CAMPUSES)) {
+			labels.add(CAMPUSES);
+			labels.add(REPEATABLE);
+			labels.add(LEARNING_OBJECTIVES);
+		}
+		if (fields.contains(Field.CAMPUSES) || fields.contains(Field.RESTRICTIONS)) {
+			labels.add(RESTRICTIONS);
+			labels.add(COREQUISITES);
+			labels.add(PREREQUISITES);
+		}
+		int[] result = new int[labels.size()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = labels.get(i);
+		return result;
+	}
+
+	/**
+	 * Get the offset of the first of the labels present, in the order given.
+	 * 
+	 * @param offsets
+	 *            label offsets, -1 for missing labels.
+	 * @param labels
+	 *            labels in order of preference.
+	 * @return offset of the label, or -1 if none of them is present.
+	 */
+	private static int firstOf(int[] offsets, int... labels) {
+		for (int label : labels) {
+			if (offsets[label] >= 0)
+				return offsets[label];
+		}
+		return -1;
 	}
 
 	/**
 	 * This class contains information return by CatalogDetail.
+	 * <p>
+	 * An entry is immutable once returned, and does not refer to the CatalogDetail which parsed it. Lists cannot be
+	 * modified, and levels, types, campuses and the strings repeated across courses are shared (see Interner).
 	 * 
 	 * @author Rendong Chen (ryan), Kaiwen Xu (kevin)
 	 */
 	@SuppressWarnings("unused")
-	public class CatalogDetailEntry {
+	public static class CatalogDetailEntry {
 		private Subject searchSubject;
 		private int searchCnbr;
 
@@ -317,7 +799,7 @@ public class CatalogDetail implements HttpRequestListener {
 		private int cnbr;
 		private String name;
 		private String description;
-		private List<String> levels;
+		private List<Level> levels;
 		private List<Type> type;
 		private String offeredBy;
 		private String department;
@@ -325,6 +807,9 @@ public class CatalogDetail implements HttpRequestListener {
 		private String restrictions;
 		private List<String> prerequisites;
 
+		/** Text of the values which are UNKNOWN, null if there is none. */
+		private Map<Field, String> unknownValues;
+
 		@Override
 		public String toString() {
 			StringBuffer myStr = new StringBuffer();
@@ -336,7 +821,7 @@ public class CatalogDetail implements HttpRequestListener {
 				myStr.append("Description: " + description + "\n");
 			if (levels != null) {
 				myStr.append("Level: ");
-				for (String s : levels)
+				for (Level s : levels)
 					myStr.append(s + " ; ");
 				myStr.append("\n");
 			}
@@ -364,6 +849,8 @@ public class CatalogDetail implements HttpRequestListener {
 					myStr.append(s + " ; ");
 				myStr.append("\n");
 			}
+			if (unknownValues != null)
+				myStr.append("Unknown Values: " + unknownValues + "\n");
 			return myStr.toString();
 		}
 
@@ -387,72 +874,191 @@ public class CatalogDetail implements HttpRequestListener {
 			return name;
 		}
 
-		public void setName(String name) {
-			this.name = name;
+		/**
+		 * Get a copy of this entry with some fields taken from another entry of the same course.
+		 * 
+		 * @param fetched
+		 *            entry of the same course.
+		 * @param fields
+		 *            fields to take from fetched.
+		 * @return the copy.
+		 */
+		CatalogDetailEntry merge(CatalogDetailEntry fetched, Set<Field> fields) {
+			CatalogDetailEntry entry = new CatalogDetailEntry(searchSubject, searchCnbr);
+			entry.subject = subject;
+			entry.cnbr = cnbr;
+			for (Field field : Field.values())
+				entry.copy(fields.contains(field) ? fetched : this, field);
+			return entry;
+		}
+
+		private void copy(CatalogDetailEntry from, Field field) {
+			switch (field) {
+			case NAME:
+				name = from.name;
+				break;
+			case DESCRIPTION:
+				description = from.description;
+				break;
+			case LEVELS:
+				levels = from.levels;
+				break;
+			case TYPE:
+				type = from.type;
+				break;
+			case OFFERED_BY:
+				offeredBy = from.offeredBy;
+				break;
+			case DEPARTMENT:
+				department = from.department;
+				break;
+			case CAMPUSES:
+				campuses = from.campuses;
+				break;
+			case RESTRICTIONS:
+				restrictions = from.restrictions;
+				break;
+			case PREREQUISITES:
+				prerequisites = from.prerequisites;
+				break;
+			}
+			String unknownValue = from.getUnknownValue(field);
+			if (unknownValue != null)
+				setUnknownValue(field, unknownValue);
+		}
+
+		/**
+		 * Write the entry, to be read back by read().
+		 */
+		void write(DataOutput out) throws IOException {
+			EntryCache.writeEnum(out, searchSubject);
+			out.writeInt(searchCnbr);
+			EntryCache.writeEnum(out, subject);
+			out.writeInt(cnbr);
+			EntryCache.writeString(out, name);
+			EntryCache.writeString(out, description);
+			EntryCache.writeList(out, levels);
+			EntryCache.writeList(out, type);
+			EntryCache.writeString(out, offeredBy);
+			EntryCache.writeString(out, department);
+			EntryCache.writeList(out, campuses);
+			EntryCache.writeString(out, restrictions);
+			EntryCache.writeList(out, prerequisites);
+			EntryCache.writeStringMap(out, unknownValues);
+		}
+
+		/**
+		 * Read an entry written by write().
+		 */
+		static CatalogDetailEntry read(DataInput in) throws IOException {
+			CatalogDetailEntry entry = new CatalogDetailEntry(EntryCache.readEnum(in, Subject.class), in.readInt());
+			entry.subject = EntryCache.readEnum(in, Subject.class);
+			entry.cnbr = in.readInt();
+			entry.setName(EntryCache.readString(in));
+			entry.setDescription(EntryCache.readString(in));
+			List<Level> levels = EntryCache.readEnumList(in, Level.class);
+			if (levels != null)
+				entry.setLevels(levels);
+			List<Type> type = EntryCache.readEnumList(in, Type.class);
+			if (type != null)
+				entry.setType(type);
+			entry.setOfferedBy(EntryCache.readString(in));
+			entry.setDepartment(EntryCache.readString(in));
+			List<String> campuses = EntryCache.readStringList(in);
+			if (campuses != null)
+				entry.setCampuses(campuses);
+			entry.setRestrictions(EntryCache.readString(in));
+			List<String> prerequisites = EntryCache.readStringList(in);
+			if (prerequisites != null)
+				entry.setPrerequisites(prerequisites);
+			entry.unknownValues = EntryCache.readStringMap(in, Field.class);
+			return entry;
+		}
+
+		private void setName(String name) {
+			this.name = Interner.intern(name);
 		}
 
 		public String getDescription() {
 			return description;
 		}
 
-		public void setDescription(String description) {
+		private void setDescription(String description) {
 			this.description = description;
 		}
 
-		public List<String> getLevels() {
+		public List<Level> getLevels() {
 			return levels;
 		}
 
-		public void setLevels(List<String> levels) {
-			this.levels = levels;
+		private void setLevels(List<Level> levels) {
+			this.levels = Interner.intern(levels);
 		}
 
 		public List<Type> getType() {
 			return type;
 		}
 
-		public void setType(List<Type> type) {
-			this.type = type;
+		private void setType(List<Type> type) {
+			this.type = Interner.intern(type);
 		}
 
 		public String getOfferedBy() {
 			return offeredBy;
 		}
 
-		public void setOfferedBy(String offeredBy) {
-			this.offeredBy = offeredBy;
+		private void setOfferedBy(String offeredBy) {
+			this.offeredBy = Interner.intern(offeredBy);
 		}
 
 		public String getDepartment() {
 			return department;
 		}
 
-		public void setDepartment(String department) {
-			this.department = department;
+		private void setDepartment(String department) {
+			this.department = Interner.intern(department);
 		}
 
 		public List<String> getCampuses() {
 			return campuses;
 		}
 
-		public void setCampuses(List<String> campuses) {
-			this.campuses = campuses;
+		private void setCampuses(List<String> campuses) {
+			this.campuses = Interner.intern(campuses);
 		}
 
 		public String getRestrictions() {
 			return restrictions;
 		}
 
-		public void setRestrictions(String restrictions) {
-			this.restrictions = restrictions;
+		private void setRestrictions(String restrictions) {
+			this.restrictions = Interner.intern(restrictions);
 		}
 
 		public List<String> getPrerequisites() {
 			return prerequisites;
 		}
 
-		public void setPrerequisites(List<String> prerequisites) {
-			this.prerequisites = prerequisites;
+		private void setPrerequisites(List<String> prerequisites) {
+			this.prerequisites = Collections.unmodifiableList(prerequisites);
+		}
+
+		/**
+		 * Get the text of a field whose value is unknown to Predefined, i.e. the name of a schedule type added after
+		 * this was released.
+		 * 
+		 * @param field
+		 *            the field.
+		 * @return the text, or null if no value is UNKNOWN. For levels and types, the unknown ones separated by ", ".
+		 */
+		public String getUnknownValue(Field field) {
+			return (unknownValues == null) ? null : unknownValues.get(field);
+		}
+
+		private void setUnknownValue(Field field, String text) {
+			if (unknownValues == null)
+				unknownValues = new EnumMap<Field, String>(Field.class);
+			unknownValues.put(field, Interner.intern(text));
 		}
 
 	}
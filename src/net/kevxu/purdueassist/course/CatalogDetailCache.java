@@ -0,0 +1,156 @@
+/*
+ * CatalogDetailCache.java
+ * 
+ * Released under Apache License 2.0.
+ */
+
+package net.kevxu.purdueassist.course;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.kevxu.purdueassist.course.CatalogDetail.CatalogDetailEntry;
+import net.kevxu.purdueassist.course.CatalogDetail.Field;
+import net.kevxu.purdueassist.course.elements.CourseKey;
+import net.kevxu.purdueassist.course.elements.Predefined.Subject;
+import net.kevxu.purdueassist.course.elements.Predefined.Term;
+import net.kevxu.purdueassist.course.shared.Outcome;
+import net.kevxu.purdueassist.shared.httpclient.HttpClientAsyncFactory;
+import net.kevxu.purdueassist.shared.httpclient.PooledHttpClientAsync;
+
+/**
+ * Cache of catalog detail entries, see EntryCache.
+ * <p>
+ * The name, type, levels and campuses are of Freshness.DETAILS, the
+ * description, department, offering department, restrictions and
+ * prerequisites of Freshness.TERM. Entries are saved as
+ * TERM_SUBJECT_CNBR.entry, i.e. FALL2012_CS_18000.entry.
+ */
+public class CatalogDetailCache extends
+		EntryCache<CourseKey, CatalogDetailEntry, Field> {
+
+	private final HttpClientAsyncFactory mHttpClientFactory;
+
+	/** CatalogDetail requesting each set of fields fetched. */
+	private final ConcurrentMap<Set<Field>, CatalogDetail> mDetails = new ConcurrentHashMap<Set<Field>, CatalogDetail>();
+
+	/**
+	 * Same as CatalogDetailCache(heapSize, directory,
+	 * PooledHttpClientAsync.FACTORY).
+	 */
+	public CatalogDetailCache(int heapSize, File directory) {
+		this(heapSize, directory, PooledHttpClientAsync.FACTORY);
+	}
+
+	/**
+	 * Constructor. The entries saved last in the directory are read into
+	 * memory.
+	 * 
+	 * @param heapSize
+	 *            number of entries kept in memory.
+	 * @param directory
+	 *            directory of the entries on disk, or null to keep them in
+	 *            memory only.
+	 * @param httpClientFactory
+	 *            creates the HTTP clients the entries are fetched with.
+	 */
+	public CatalogDetailCache(int heapSize, File directory,
+			HttpClientAsyncFactory httpClientFactory) {
+		super(Field.class, heapSize, directory);
+		this.mHttpClientFactory = httpClientFactory;
+		warm();
+	}
+
+	/**
+	 * Get the entry of a course, fetching the fields which are not cached or
+	 * stale.
+	 * 
+	 * @param term
+	 *            School term. If it's null, current school term will be used.
+	 * @param subject
+	 *            subject of course.
+	 * @param cnbr
+	 *            course number.
+	 * @return future completed with the outcome, never exceptionally.
+	 */
+	public CompletableFuture<Outcome<CatalogDetailEntry>> get(Term term,
+			Subject subject, int cnbr) {
+		return lookUp(new CourseKey(term, subject, cnbr));
+	}
+
+	@Override
+	protected Freshness freshnessOf(Field field) {
+		switch (field) {
+		case NAME:
+		case TYPE:
+		case LEVELS:
+		case CAMPUSES:
+			return Freshness.DETAILS;
+		default:
+			return Freshness.TERM;
+		}
+	}
+
+	@Override
+	protected CompletableFuture<Outcome<CatalogDetailEntry>> fetch(
+			CourseKey course, Set<Field> fields) {
+		CatalogDetail detail = mDetails.get(fields);
+		if (detail == null) {
+			detail = new CatalogDetail(null, mHttpClientFactory);
+			detail.setFields(EnumSet.copyOf(fields));
+			CatalogDetail existing = mDetails.putIfAbsent(
+					EnumSet.copyOf(fields), detail);
+			if (existing != null)
+				detail = existing;
+		}
+		return detail.getOutcome(course.getTerm(), course.getSubject(),
+				course.getCnbr());
+	}
+
+	@Override
+	protected CatalogDetailEntry merge(CatalogDetailEntry cached,
+			CatalogDetailEntry fetched, Set<Field> fields) {
+		return cached.merge(fetched, fields);
+	}
+
+	@Override
+	protected String fileNameOf(CourseKey course) {
+		return course.getTerm().name() + "_" + course.getSubject().name()
+				+ "_" + course.getCnbr();
+	}
+
+	@Override
+	protected CourseKey keyOf(String fileName) {
+		String[] key = fileName.split("_");
+		if (key.length != 3)
+			return null;
+		Term term = Term.lookup(key[0]);
+		Subject subject = Subject.lookup(key[1]);
+		if (term == Term.UNKNOWN || subject == Subject.UNKNOWN)
+			return null;
+		try {
+			return new CourseKey(term, subject, Integer.valueOf(key[2]));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	@Override
+	protected void writeEntry(CatalogDetailEntry entry, DataOutput out)
+			throws IOException {
+		entry.write(out);
+	}
+
+	@Override
+	protected CatalogDetailEntry readEntry(DataInput in) throws IOException {
+		return CatalogDetailEntry.read(in);
+	}
+
+}
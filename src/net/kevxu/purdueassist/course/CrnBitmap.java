@@ -0,0 +1,180 @@
+/*
+ * CrnBitmap.java
+ * 
+ * Released under Apache License 2.0.
+ */
+
+package net.kevxu.purdueassist.course;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import net.kevxu.purdueassist.course.elements.Predefined.Term;
+import net.kevxu.purdueassist.course.shared.Utilities;
+
+/**
+ * CRNs known to exist in a term, one bit per 5 digit CRN (12.5 KB a term).
+ * <p>
+ * It is built from crawl results, i.e. by a ScheduleDetail given it with
+ * setCrnBitmap(), which adds every section found and, under
+ * UnknownCrnPolicy.LOOK_UP, removes every section not found, or by add() for
+ * each CRN of saved pages. Saved to a file, it is
+ * loaded again by later runs, and lets ScheduleDetail answer lookups of
+ * unknown CRNs without sending a request. Bits are set and cleared atomically,
+ * so it can be read and built from any thread.
+ */
+public class CrnBitmap {
+
+	/** "CRNS", first int of a saved bitmap. */
+	private static final int MAGIC = 0x43524E53;
+	private static final int VERSION = 1;
+
+	private static final int WORDS = (Utilities.MAX_CRN >> 6) + 1;
+
+	private final Term mTerm;
+	private final AtomicLongArray mWords;
+
+	/**
+	 * Constructor. The bitmap is empty.
+	 * 
+	 * @param term
+	 *            term of the CRNs.
+	 */
+	public CrnBitmap(Term term) {
+		this.mTerm = term;
+		this.mWords = new AtomicLongArray(WORDS);
+	}
+
+	public Term getTerm() {
+		return mTerm;
+	}
+
+	/**
+	 * @param crn
+	 *            CRN number of course.
+	 * @return true if the CRN is known to exist.
+	 */
+	public boolean contains(int crn) {
+		if (!Utilities.verifyCrn(crn))
+			return false;
+		return (mWords.get(crn >> 6) & (1L << crn)) != 0;
+	}
+
+	/**
+	 * @param crn
+	 *            CRN number of course, found in the term.
+	 */
+	public void add(int crn) {
+		checkCrn(crn);
+		long bit = 1L << crn;
+		long word;
+		do {
+			word = mWords.get(crn >> 6);
+		} while ((word & bit) == 0
+				&& !mWords.compareAndSet(crn >> 6, word, word | bit));
+	}
+
+	/**
+	 * @param crn
+	 *            CRN number of course, not found in the term.
+	 */
+	public void remove(int crn) {
+		checkCrn(crn);
+		long bit = 1L << crn;
+		long word;
+		do {
+			word = mWords.get(crn >> 6);
+		} while ((word & bit) != 0
+				&& !mWords.compareAndSet(crn >> 6, word, word & ~bit));
+	}
+
+	/**
+	 * @return number of CRNs known to exist.
+	 */
+	public int size() {
+		int size = 0;
+		for (int i = 0; i < WORDS; i++)
+			size += Long.bitCount(mWords.get(i));
+		return size;
+	}
+
+	/**
+	 * Save the bitmap. The file is replaced at once, so a reader never sees
+	 * it half written.
+	 * 
+	 * @param file
+	 *            file to save the bitmap into.
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		File directory = file.getAbsoluteFile().getParentFile();
+		File temp = File.createTempFile(file.getName(), ".tmp", directory);
+		try {
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temp)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeUTF(mTerm.name());
+				out.writeInt(WORDS);
+				for (int i = 0; i < WORDS; i++)
+					out.writeLong(mWords.get(i));
+			} finally {
+				out.close();
+			}
+			Files.move(temp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Load a bitmap saved by save().
+	 * 
+	 * @param file
+	 *            file the bitmap was saved into.
+	 * @return the bitmap.
+	 * @throws IOException
+	 *             if the file cannot be read, or is not a saved bitmap.
+	 */
+	public static CrnBitmap load(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException(file + " is not a CRN bitmap.");
+			Term term;
+			try {
+				term = Term.valueOf(in.readUTF());
+			} catch (IllegalArgumentException e) {
+				throw new IOException(file + " is of an unknown term.", e);
+			}
+			if (in.readInt() != WORDS)
+				throw new IOException(file + " is not a CRN bitmap.");
+			CrnBitmap bitmap = new CrnBitmap(term);
+			for (int i = 0; i < WORDS; i++)
+				bitmap.mWords.set(i, in.readLong());
+			return bitmap;
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void checkCrn(int crn) {
+		if (!Utilities.verifyCrn(crn))
+			throw new IllegalArgumentException("CRN " + crn
+					+ " is not a 5 digit number.");
+	}
+
+}
@@ -0,0 +1,575 @@
+/*
+ * EntryCache.java
+ * 
+ * Released under Apache License 2.0.
+ */
+
+package net.kevxu.purdueassist.course;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.kevxu.purdueassist.course.shared.Interner;
+import net.kevxu.purdueassist.course.shared.Outcome;
+
+/**
+ * Cache of entries in two tiers: the entries used last in memory, and every
+ * entry on disk.
+ * <p>
+ * Each field of an entry has a Freshness class, and stays fresh for the max
+ * age of its class since it was fetched. A lookup of a cached entry only
+ * fetches the fields which are stale, i.e. only the seats of a section whose
+ * details are still fresh, which ScheduleDetail reads straight from the page
+ * bytes, and merges them into the cached entry. Entries not cached, or stale
+ * altogether, are fetched whole. An entry not found any more is dropped. If
+ * fetching the stale fields fails, i.e. with a transport or parse error, the
+ * cached entry is returned as it is, stale fields included, and they are
+ * fetched again by the next lookup.
+ * <p>
+ * Entries are written to disk when fields of a persisted class are fetched,
+ * and read back when a lookup misses in memory, or by warm(), which the
+ * constructors of the subclasses call to fill the memory tier after a
+ * restart. Failing to write or read the disk only costs a fetch.
+ * @param <K>
+ *            type of key. It has to implement equals() and hashCode().
+ * @param <E>
+ *            type of entry.
+ * @param <F>
+ *            type of the fields of the entries.
+ */
+public abstract class EntryCache<K, E, F extends Enum<F>> {
+
+	/** "CENT", first int of a saved entry. */
+	private static final int MAGIC = 0x43454E54;
+	private static final int VERSION = 2;
+	private static final String EXTENSION = ".entry";
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final Freshness[] sFreshnesses = Freshness.values();
+
+	/** Cached entry, and when the fields of each Freshness were fetched. */
+	private static class Cached<E> {
+		final E mEntry;
+		final long[] mFetchedAt;
+
+		Cached(E entry, long[] fetchedAt) {
+			this.mEntry = entry;
+			this.mFetchedAt = fetchedAt;
+		}
+	}
+
+	private final Class<F> mFieldClass;
+	private final Set<F> mAllFields;
+	private final int mHeapSize;
+	private final File mDirectory;
+	private final Map<K, Cached<E>> mHeap;
+	private final long[] mMaxAges = new long[sFreshnesses.length];
+
+	private final AtomicLong mHeapHits = new AtomicLong(0);
+	private final AtomicLong mDiskHits = new AtomicLong(0);
+	private final AtomicLong mMisses = new AtomicLong(0);
+	private final AtomicLong mRefreshes = new AtomicLong(0);
+	private final AtomicLong mFailedRefreshes = new AtomicLong(0);
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param fieldClass
+	 *            class of the fields.
+	 * @param heapSize
+	 *            number of entries kept in memory.
+	 * @param directory
+	 *            directory of the entries on disk, or null to keep them in
+	 *            memory only.
+	 */
+	protected EntryCache(Class<F> fieldClass, int heapSize, File directory) {
+		if (heapSize <= 0)
+			throw new IllegalArgumentException("Heap size has to be positive.");
+		this.mFieldClass = fieldClass;
+		this.mAllFields = Collections.unmodifiableSet(EnumSet
+				.allOf(fieldClass));
+		this.mHeapSize = heapSize;
+		this.mDirectory = directory;
+		if (directory != null)
+			directory.mkdirs();
+		this.mHeap = new LinkedHashMap<K, Cached<E>>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, Cached<E>> eldest) {
+				return size() > mHeapSize;
+			}
+		};
+		for (Freshness freshness : sFreshnesses)
+			mMaxAges[freshness.ordinal()] = freshness.getDefaultMaxAge();
+	}
+
+	/**
+	 * Set how long the fields of a Freshness class stay fresh.
+	 * 
+	 * @param freshness
+	 *            class of fields.
+	 * @param maxAge
+	 *            time the fields stay fresh since fetched.
+	 * @param unit
+	 *            unit of maxAge.
+	 */
+	public void setMaxAge(Freshness freshness, long maxAge, TimeUnit unit) {
+		synchronized (mHeap) {
+			mMaxAges[freshness.ordinal()] = unit.toMillis(maxAge);
+		}
+	}
+
+	/**
+	 * Fill the memory tier with the entries on disk saved last, as many as it
+	 * holds.
+	 * 
+	 * @return number of entries read.
+	 */
+	public int warm() {
+		if (mDirectory == null)
+			return 0;
+		File[] files = mDirectory.listFiles();
+		if (files == null)
+			return 0;
+		final Map<File, Long> modified = new LinkedHashMap<File, Long>();
+		for (File file : files) {
+			if (file.getName().endsWith(EXTENSION))
+				modified.put(file, file.lastModified());
+		}
+		List<File> newestFirst = new ArrayList<File>(modified.keySet());
+		Collections.sort(newestFirst, new Comparator<File>() {
+
+			@Override
+			public int compare(File lhs, File rhs) {
+				return modified.get(rhs).compareTo(modified.get(lhs));
+			}
+		});
+		newestFirst = newestFirst.subList(0,
+				Math.min(mHeapSize, newestFirst.size()));
+		int count = 0;
+		// oldest first, so that the newest are evicted last
+		for (int i = newestFirst.size() - 1; i >= 0; i--) {
+			File file = newestFirst.get(i);
+			String name = file.getName();
+			K key = keyOf(name.substring(0, name.length() - EXTENSION.length()));
+			if (key == null)
+				continue;
+			Cached<E> cached = read(file);
+			if (cached == null)
+				continue;
+			synchronized (mHeap) {
+				if (!mHeap.containsKey(key)) {
+					mHeap.put(key, cached);
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Get an entry, fetching the fields which are not cached or stale.
+	 * 
+	 * @param key
+	 *            key of the entry.
+	 * @return future completed with the outcome, never exceptionally. It is
+	 *         the cached entry if it could not be refreshed.
+	 */
+	protected CompletableFuture<Outcome<E>> lookUp(final K key) {
+		final long now = System.currentTimeMillis();
+		final Cached<E> cached = get(key);
+		final Set<F> fields;
+		if (cached == null) {
+			fields = mAllFields;
+		} else {
+			Set<F> stale = null;
+			for (F field : mAllFields) {
+				if (isStale(cached, freshnessOf(field), now)) {
+					if (stale == null)
+						stale = EnumSet.noneOf(mFieldClass);
+					stale.add(field);
+				}
+			}
+			if (stale == null)
+				return CompletableFuture.completedFuture(Outcome
+						.found(cached.mEntry));
+			fields = stale;
+			mRefreshes.incrementAndGet();
+		}
+
+		return fetch(key, fields).thenApply(outcome -> {
+			if (outcome.isFound()) {
+				return Outcome.found(store(key, cached, outcome.getValue(),
+						fields, now));
+			} else if (outcome.getStatus() == Outcome.Status.NOT_FOUND) {
+				remove(key);
+			} else if (cached != null) {
+				// stale fields are better than none
+				mFailedRefreshes.incrementAndGet();
+				return Outcome.found(cached.mEntry);
+			}
+			return outcome;
+		});
+	}
+
+	/**
+	 * Drop an entry from both tiers.
+	 * 
+	 * @param key
+	 *            key of the entry.
+	 */
+	public void remove(K key) {
+		synchronized (mHeap) {
+			mHeap.remove(key);
+		}
+		if (mDirectory != null)
+			fileOf(key).delete();
+	}
+
+	/**
+	 * @return number of entries in memory.
+	 */
+	public int size() {
+		synchronized (mHeap) {
+			return mHeap.size();
+		}
+	}
+
+	/**
+	 * @return number of lookups which found the entry in memory.
+	 */
+	public long getHeapHits() {
+		return mHeapHits.get();
+	}
+
+	/**
+	 * @return number of lookups which found the entry on disk only.
+	 */
+	public long getDiskHits() {
+		return mDiskHits.get();
+	}
+
+	/**
+	 * @return number of lookups of entries not cached.
+	 */
+	public long getMisses() {
+		return mMisses.get();
+	}
+
+	/**
+	 * @return number of lookups which fetched the stale fields of a cached
+	 *         entry.
+	 */
+	public long getRefreshes() {
+		return mRefreshes.get();
+	}
+
+	/**
+	 * @return number of refreshes which failed, answered with the cached
+	 *         entry.
+	 */
+	public long getFailedRefreshes() {
+		return mFailedRefreshes.get();
+	}
+
+	@Override
+	public String toString() {
+		return "Size: " + size() + "; Heap Hits: " + getHeapHits()
+				+ "; Disk Hits: " + getDiskHits() + "; Misses: " + getMisses()
+				+ "; Refreshes: " + getRefreshes() + "; Failed Refreshes: "
+				+ getFailedRefreshes() + ";";
+	}
+
+	/**
+	 * @return the Freshness class of a field.
+	 */
+	protected abstract Freshness freshnessOf(F field);
+
+	/**
+	 * Fetch the given fields of an entry.
+	 * 
+	 * @return future completed with the outcome, never exceptionally.
+	 */
+	protected abstract CompletableFuture<Outcome<E>> fetch(K key,
+			Set<F> fields);
+
+	/**
+	 * @return copy of the cached entry with the given fields of the fetched
+	 *         one.
+	 */
+	protected abstract E merge(E cached, E fetched, Set<F> fields);
+
+	/**
+	 * @return name of the file of an entry, without extension.
+	 */
+	protected abstract String fileNameOf(K key);
+
+	/**
+	 * @return key of the entry of a file name without extension, or null if
+	 *         it is not the name of an entry.
+	 */
+	protected abstract K keyOf(String fileName);
+
+	protected abstract void writeEntry(E entry, DataOutput out)
+			throws IOException;
+
+	protected abstract E readEntry(DataInput in) throws IOException;
+
+	private Cached<E> get(K key) {
+		Cached<E> cached;
+		synchronized (mHeap) {
+			cached = mHeap.get(key);
+		}
+		if (cached != null) {
+			mHeapHits.incrementAndGet();
+			return cached;
+		}
+		if (mDirectory != null) {
+			File file = fileOf(key);
+			if (file.exists())
+				cached = read(file);
+		}
+		if (cached == null) {
+			mMisses.incrementAndGet();
+			return null;
+		}
+		mDiskHits.incrementAndGet();
+		synchronized (mHeap) {
+			mHeap.put(key, cached);
+		}
+		return cached;
+	}
+
+	private boolean isStale(Cached<E> cached, Freshness freshness, long now) {
+		long maxAge;
+		synchronized (mHeap) {
+			maxAge = mMaxAges[freshness.ordinal()];
+		}
+		return now - cached.mFetchedAt[freshness.ordinal()] >= maxAge;
+	}
+
+	/**
+	 * Cache the fields fetched of an entry.
+	 * 
+	 * @return the entry cached.
+	 */
+	private E store(K key, Cached<E> cached, E fetched, Set<F> fields, long now) {
+		E entry;
+		long[] fetchedAt;
+		if (cached == null || fields.equals(mAllFields)) {
+			entry = fetched;
+			fetchedAt = new long[sFreshnesses.length];
+		} else {
+			entry = merge(cached.mEntry, fetched, fields);
+			fetchedAt = Arrays.copyOf(cached.mFetchedAt, sFreshnesses.length);
+		}
+		boolean persisted = false;
+		for (F field : fields) {
+			Freshness freshness = freshnessOf(field);
+			fetchedAt[freshness.ordinal()] = now;
+			persisted |= freshness.isPersisted();
+		}
+		Cached<E> updated = new Cached<E>(entry, fetchedAt);
+		synchronized (mHeap) {
+			mHeap.put(key, updated);
+		}
+		if (persisted && mDirectory != null)
+			write(fileOf(key), updated);
+		return entry;
+	}
+
+	private File fileOf(K key) {
+		return new File(mDirectory, fileNameOf(key) + EXTENSION);
+	}
+
+	/**
+	 * Write an entry. The file is replaced at once, so a reader never sees it
+	 * half written.
+	 */
+	private void write(File file, Cached<E> cached) {
+		File temp = null;
+		try {
+			temp = File.createTempFile(file.getName(), ".tmp", mDirectory);
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temp)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(cached.mFetchedAt.length);
+				for (long fetchedAt : cached.mFetchedAt)
+					out.writeLong(fetchedAt);
+				writeEntry(cached.mEntry, out);
+			} finally {
+				out.close();
+			}
+			Files.move(temp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			// the entry is still cached in memory
+		} finally {
+			if (temp != null)
+				temp.delete();
+		}
+	}
+
+	/**
+	 * @return the entry, or null if the file cannot be read. A file which is
+	 *         not an entry of this version is deleted.
+	 */
+	private Cached<E> read(File file) {
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file)));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION
+					|| in.readInt() != sFreshnesses.length)
+				throw new IOException(file + " is not a cached entry.");
+			long[] fetchedAt = new long[sFreshnesses.length];
+			for (int i = 0; i < fetchedAt.length; i++)
+				fetchedAt[i] = in.readLong();
+			return new Cached<E>(readEntry(in), fetchedAt);
+		} catch (IOException e) {
+			file.delete();
+			return null;
+		} catch (RuntimeException e) {
+			// i.e. an enum constant which does not exist any more
+			file.delete();
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write a String which may be null or longer than writeUTF() allows.
+	 */
+	static void writeString(DataOutput out, String string) throws IOException {
+		if (string == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = string.getBytes(UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	static String readString(DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	/**
+	 * Write an enum constant, which may be null, by name.
+	 */
+	static void writeEnum(DataOutput out, Enum<?> constant) throws IOException {
+		writeString(out, (constant == null) ? null : constant.name());
+	}
+
+	static <T extends Enum<T>> T readEnum(DataInput in, Class<T> enumClass)
+			throws IOException {
+		String name = readString(in);
+		return (name == null) ? null : Enum.valueOf(enumClass, name);
+	}
+
+	/**
+	 * Write a list of Strings or enum constants, which may be null.
+	 */
+	static void writeList(DataOutput out, List<?> list) throws IOException {
+		if (list == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(list.size());
+		for (Object element : list) {
+			if (element instanceof Enum)
+				writeEnum(out, (Enum<?>) element);
+			else
+				writeString(out, (String) element);
+		}
+	}
+
+	static List<String> readStringList(DataInput in) throws IOException {
+		int size = in.readInt();
+		if (size < 0)
+			return null;
+		List<String> list = new ArrayList<String>(size);
+		for (int i = 0; i < size; i++)
+			list.add(readString(in));
+		return list;
+	}
+
+	static <T extends Enum<T>> List<T> readEnumList(DataInput in,
+			Class<T> enumClass) throws IOException {
+		int size = in.readInt();
+		if (size < 0)
+			return null;
+		List<T> list = new ArrayList<T>(size);
+		for (int i = 0; i < size; i++)
+			list.add(readEnum(in, enumClass));
+		return list;
+	}
+
+	/**
+	 * Write a map from enum constants to Strings, which may be null.
+	 */
+	static void writeStringMap(DataOutput out,
+			Map<? extends Enum<?>, String> map) throws IOException {
+		if (map == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(map.size());
+		for (Map.Entry<? extends Enum<?>, String> entry : map.entrySet()) {
+			writeEnum(out, entry.getKey());
+			writeString(out, entry.getValue());
+		}
+	}
+
+	static <T extends Enum<T>> Map<T, String> readStringMap(DataInput in,
+			Class<T> enumClass) throws IOException {
+		int size = in.readInt();
+		if (size < 0)
+			return null;
+		Map<T, String> map = new EnumMap<T, String>(enumClass);
+		for (int i = 0; i < size; i++)
+			map.put(readEnum(in, enumClass), Interner.intern(readString(in)));
+		return map;
+	}
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Freshness.java
+ * 
+ * Released under Apache License 2.0.
+ */
+
+package net.kevxu.purdueassist.course;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long cached fields stay fresh, by how often their data changes. Each
+ * field of an entry belongs to one class; see ScheduleDetailCache and
+ * CatalogDetailCache.
+ */
+public enum Freshness {
+
+	/** Seat counts, which change by the minute during registration. */
+	SEATS(30, TimeUnit.SECONDS, false),
+
+	/** Name, type, credits, levels and campus of sections and courses. */
+	DETAILS(3, TimeUnit.DAYS, true),
+
+	/** Catalog text, i.e. description and prerequisites, set for a term. */
+	TERM(120, TimeUnit.DAYS, true);
+
+	private final long mDefaultMaxAge;
+	private final boolean mPersisted;
+
+	private Freshness(long defaultMaxAge, TimeUnit unit, boolean persisted) {
+		this.mDefaultMaxAge = unit.toMillis(defaultMaxAge);
+		this.mPersisted = persisted;
+	}
+
+	/**
+	 * @return time in milliseconds the fields stay fresh, unless set
+	 *         otherwise with EntryCache.setMaxAge().
+	 */
+	public long getDefaultMaxAge() {
+		return mDefaultMaxAge;
+	}
+
+	/**
+	 * @return whether refreshing the fields is worth writing the entry to
+	 *         disk. Fields which are stale again long before the entry would
+	 *         be read back are only refreshed in memory.
+	 */
+	public boolean isPersisted() {
+		return mPersisted;
+	}
+
+}
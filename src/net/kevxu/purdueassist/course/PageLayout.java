@@ -0,0 +1,142 @@
+/*
+ * PageLayout.java
+ * 
+ * Released under Apache License 2.0.
+ */
+
+package net.kevxu.purdueassist.course;
+
+import java.util.Locale;
+
+import net.kevxu.purdueassist.course.shared.KeywordMatcher;
+
+/**
+ * Templates of schedule detail pages known to the fast paths.
+ * <p>
+ * A page is recognized by its fingerprint, the set of marker byte sequences
+ * found in it, e.g. whether the seat rows are labelled by th or td elements.
+ * The markers are looked for in one pass over the bytes, and the fingerprint
+ * picks the template from a table built once. Each template comes with a
+ * SeatsExtractor made for its markup; a page of no known template is
+ * UNKNOWN, and should be parsed the generic way right away instead of trying
+ * a fast path bound to fail.
+ * <p>
+ * A template new to the parsers only needs a constant here, with the markers
+ * telling it apart from the others.
+ */
+enum PageLayout {
+
+	/** Seat rows labelled by th elements, as myPurdue serves them. */
+	TH_LABELS(Marker.TH_LABEL, Marker.TBODY | Marker.TD_LABEL,
+			new SeatsExtractor(true, false)),
+
+	/** Same as TH_LABELS, with the seat rows in an explicit tbody. */
+	TH_LABELS_TBODY(Marker.TH_LABEL | Marker.TBODY, Marker.TD_LABEL,
+			new SeatsExtractor(true, true)),
+
+	/** Seat rows labelled by td elements, as older myPurdue pages. */
+	TD_LABELS(Marker.TD_LABEL, Marker.TBODY | Marker.TH_LABEL,
+			new SeatsExtractor(false, false)),
+
+	/** Same as TD_LABELS, with the seat rows in an explicit tbody. */
+	TD_LABELS_TBODY(Marker.TD_LABEL | Marker.TBODY, Marker.TH_LABEL,
+			new SeatsExtractor(false, true)),
+
+	/** Any other page, including pages without detail table. */
+	UNKNOWN(0, 0, null);
+
+	/**
+	 * Bits of the fingerprint. Their values are the indexes of the markers in
+	 * sMarkers.
+	 */
+	private static class Marker {
+		static final int DETAIL_TABLE = 1 << 0;
+		static final int SEAT_TABLE = 1 << 1;
+		static final int TBODY = 1 << 2;
+		static final int THEAD = 1 << 3;
+		static final int TH_LABEL = 1 << 4;
+		static final int TD_LABEL = 1 << 5;
+		static final int COUNT = 6;
+
+		/** Markers all known templates have. */
+		static final int COMMON = DETAIL_TABLE | SEAT_TABLE;
+		/** Markers no known template has. */
+		static final int NONE = THEAD;
+	}
+
+	/** Markers in lower case, as the bytes are matched ignoring case. */
+	private static final KeywordMatcher sMarkers = new KeywordMatcher(
+			ScheduleDetail.DETAIL_TABLE_SUMMARY.toLowerCase(Locale.ENGLISH),
+			ScheduleDetail.SEAT_TABLE_SUMMARY.toLowerCase(Locale.ENGLISH),
+			"<tbody", "<thead", "seats</span></th>", ">seats</td>");
+
+	/** Template of each fingerprint. */
+	private static final PageLayout[] sLayouts =
+			new PageLayout[1 << Marker.COUNT];
+
+	static {
+		for (int fingerprint = 0; fingerprint < sLayouts.length; fingerprint++) {
+			sLayouts[fingerprint] = UNKNOWN;
+			for (PageLayout layout : values()) {
+				if (layout.matches(fingerprint)) {
+					sLayouts[fingerprint] = layout;
+					break;
+				}
+			}
+		}
+	}
+
+	private final int mRequired;
+	private final int mForbidden;
+	private final SeatsExtractor mSeatsExtractor;
+
+	private PageLayout(int required, int forbidden,
+			SeatsExtractor seatsExtractor) {
+		this.mRequired = required | Marker.COMMON;
+		this.mForbidden = forbidden | Marker.NONE;
+		this.mSeatsExtractor = seatsExtractor;
+	}
+
+	/**
+	 * Recognize the template of a page.
+	 * 
+	 * @param page
+	 *            page, or the fragment of it holding the detail table.
+	 * @return the template, or UNKNOWN.
+	 */
+	static PageLayout of(byte[] page) {
+		return sLayouts[fingerprint(page)];
+	}
+
+	/**
+	 * @return extractor of the seats of pages of this template, or null if
+	 *         there is none.
+	 */
+	SeatsExtractor getSeatsExtractor() {
+		return mSeatsExtractor;
+	}
+
+	private boolean matches(int fingerprint) {
+		return mSeatsExtractor != null
+				&& (fingerprint & mRequired) == mRequired
+				&& (fingerprint & mForbidden) == 0;
+	}
+
+	/**
+	 * @return bits of the markers found in the page.
+	 */
+	private static int fingerprint(byte[] page) {
+		int fingerprint = 0;
+		int state = KeywordMatcher.START;
+		for (byte b : page) {
+			char c = (char) (b & 0xFF);
+			if (c >= 'A' && c <= 'Z')
+				c += 'a' - 'A';
+			state = sMarkers.next(state, c);
+			for (int marker : sMarkers.getMatches(state))
+				fingerprint |= 1 << marker;
+		}
+		return fingerprint;
+	}
+
+}
@@ -7,28 +7,58 @@
 
 package net.kevxu.purdueassist.course;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.kevxu.purdueassist.course.ScheduleDetailExtractor.DetailTable;
+import net.kevxu.purdueassist.course.ScheduleDetailExtractor.Page;
+import net.kevxu.purdueassist.course.ScheduleDetailExtractor.UnsupportedLayoutException;
+import net.kevxu.purdueassist.course.SeatsExtractor.SeatTable;
+import net.kevxu.purdueassist.course.elements.Predefined.Level;
 import net.kevxu.purdueassist.course.elements.Predefined.Subject;
 import net.kevxu.purdueassist.course.elements.Predefined.Term;
 import net.kevxu.purdueassist.course.elements.Predefined.Type;
 import net.kevxu.purdueassist.course.elements.Seats;
+import net.kevxu.purdueassist.course.elements.SectionKey;
 import net.kevxu.purdueassist.course.shared.CourseNotFoundException;
+import net.kevxu.purdueassist.course.shared.HtmlFragmentReader;
 import net.kevxu.purdueassist.course.shared.HtmlParseException;
-import net.kevxu.purdueassist.course.shared.RequestNotFinishedException;
+import net.kevxu.purdueassist.course.shared.Interner;
+import net.kevxu.purdueassist.course.shared.KeywordMatcher;
+import net.kevxu.purdueassist.course.shared.NegativeCache;
+import net.kevxu.purdueassist.course.shared.Outcome;
+import net.kevxu.purdueassist.course.shared.ParsePipeline;
 import net.kevxu.purdueassist.course.shared.ResultNotMatchException;
+import net.kevxu.purdueassist.course.shared.SingleFlight;
 import net.kevxu.purdueassist.course.shared.Utilities;
-import net.kevxu.purdueassist.shared.httpclient.BasicHttpClientAsync;
 import net.kevxu.purdueassist.shared.httpclient.BasicHttpClientAsync.HttpRequestListener;
+import net.kevxu.purdueassist.shared.httpclient.HttpClientAsync;
 import net.kevxu.purdueassist.shared.httpclient.HttpClientAsync.HttpMethod;
+import net.kevxu.purdueassist.shared.httpclient.HttpClientAsyncFactory;
+import net.kevxu.purdueassist.shared.httpclient.HttpUtilities;
 import net.kevxu.purdueassist.shared.httpclient.MethodNotPostException;
+import net.kevxu.purdueassist.shared.httpclient.PooledHttpClientAsync;
 
 import org.apache.commons.lang.StringEscapeUtils;
-import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.ClientProtocolException;
@@ -41,8 +71,8 @@ import org.jsoup.select.Elements;
 /**
  * This is the class implementing "Schedule Detail" search described in the
  * document. It utilizes asynchronous function call for non-blocking calling
- * style. You have to provide callback method by implementing
- * ScheduleDetailListener.
+ * style. You can either provide callback method by implementing
+ * ScheduleDetailListener, or use the CompletableFuture returned by getResult().
  * <p>
  * Input: crn <br />
  * Input (optional): term
@@ -54,18 +84,112 @@ import org.jsoup.select.Elements;
  * @author Kaiwen Xu (kevin)
  * @see ScheduleDetailListener
  */
-public class ScheduleDetail implements HttpRequestListener {
+public class ScheduleDetail {
 
 	private static final String URL_HEAD = "https://selfservice.mypurdue.purdue.edu/prod/"
 			+ "bzwsrch.p_schedule_detail";
 
-	private Term term;
-	private int crn;
+	static final String DETAIL_TABLE_SUMMARY = "This table is used to present the detailed class information.";
+	static final String MESSAGE_TABLE_SUMMARY = "This layout table holds message information";
+	static final String SEAT_TABLE_SUMMARY = "This layout table is used to present the seating numbers.";
+	private static final String NOT_FOUND_MESSAGE = "No detailed class information found";
+
+	private static final String LINE_BREAK_TAG = "<br />";
+	private static final String NBSP = "&nbsp;";
+
+	// keywords looked for in the remaining info, and sections recorded
+	private static final int LINE_BREAK = 0;
+	private static final int PREREQUISITES = 1;
+	private static final int RESTRICTIONS = 2;
+	private static final int GENERAL_REQUIREMENTS = 3;
+	private static final int COREQUISITES = 4;
+	private static final int ASSOCIATED_TERM = 5;
+	private static final int LEVELS = 6;
+	private static final int CAMPUS = 7;
+	private static final int SCHEDULE_TYPE = 8;
+	private static final int CREDITS = 9;
+	private static final int NOT_RECORD = 0;
+
+	private static final int SECTION_LABELS = 1 << PREREQUISITES
+			| 1 << RESTRICTIONS | 1 << GENERAL_REQUIREMENTS | 1 << COREQUISITES;
+	private static final int FIELDS = 1 << ASSOCIATED_TERM | 1 << LEVELS
+			| 1 << CAMPUS | 1 << SCHEDULE_TYPE | 1 << CREDITS;
+	private static final int SPACE_ENDED = 1 << ASSOCIATED_TERM | 1 << LEVELS;
+
+	private static final KeywordMatcher sRemainingInfoKeywords = new KeywordMatcher(
+			LINE_BREAK_TAG, "Prerequisites:", "Restrictions:",
+			"General Requirements:", "Corequisites:", "Associated Term: ",
+			"Levels: ", "Campus", "Schedule Type", "Credits");
+
+	/**
+	 * How pages are parsed.
+	 * <p>
+	 * DOCUMENT builds a Jsoup Document. STREAMING pulls the values out of the
+	 * token stream in one pass, without building a tree; it gives the same
+	 * entries, and falls back to DOCUMENT for pages laid out unlike myPurdue's.
+	 */
+	public enum Parser {
+		DOCUMENT, STREAMING
+	};
+
+	/**
+	 * What to do when looking up a CRN not in the CRN bitmap, see
+	 * setCrnBitmap().
+	 * <p>
+	 * LOOK_UP sends the request anyway, so the bitmap only learns from it.
+	 * REJECT answers that the section is not found without sending anything,
+	 * which suits a bitmap built from a full crawl of the term. Under REJECT,
+	 * CRNs are never removed from the bitmap, since a CRN removed could not
+	 * be looked up again; sections added later in the term are only known
+	 * once the bitmap is rebuilt from a new crawl.
+	 */
+	public enum UnknownCrnPolicy {
+		LOOK_UP, REJECT
+	};
+
+	/**
+	 * Fields of ScheduleDetailEntry which can be requested with setFields().
+	 * The CRN, search term and search CRN are always set. A subject, term,
+	 * level or type unknown to Predefined is set to UNKNOWN, and its text is
+	 * kept, see ScheduleDetailEntry.getUnknownValue().
+	 */
+	public enum Field {
+		NAME, SUBJECT, CNBR, SECTION, TERM, LEVELS, CAMPUS, TYPE, CREDITS,
+		SEATS, WAITLIST_SEATS, CROSSLIST_SEATS, RESTRICTIONS, PREREQUISITES,
+		GENERAL_REQUIREMENTS, COREQUISITES
+	};
+
+	private static final Set<Field> SEAT_FIELDS = EnumSet.of(Field.SEATS,
+			Field.WAITLIST_SEATS, Field.CROSSLIST_SEATS);
+	private static final Set<Field> REMAINING_INFO_FIELDS = EnumSet.range(
+			Field.TERM, Field.COREQUISITES);
 
 	private ScheduleDetailListener mListener;
-	private BasicHttpClientAsync mHttpClient;
+	private HttpClientAsyncFactory mHttpClientFactory;
+	private volatile Executor mCallbackExecutor;
+	private volatile Parser mParser = Parser.DOCUMENT;
+	private volatile Set<Field> mFields = EnumSet.allOf(Field.class);
+	private volatile TermSeatTable mSeatTable;
+	private volatile CrnBitmap mCrnBitmap;
+	private volatile UnknownCrnPolicy mUnknownCrnPolicy = UnknownCrnPolicy.LOOK_UP;
+	private volatile NegativeCache<SectionKey> mNegativeCache = sNegativeCache;
+
+	private final AtomicInteger mRequestsInFlight = new AtomicInteger(0);
+	private final AtomicLong mUnknownValues = new AtomicLong(0);
+	private final AtomicLong mSeatsFallbacks = new AtomicLong(0);
 
-	private boolean requestFinished;
+	/**
+	 * Lookups in flight in the whole process. Concurrent lookups of the same
+	 * section share one request and one parse.
+	 */
+	private static final SingleFlight<Lookup, Outcome<ScheduleDetailEntry>> sInFlightLookups = new SingleFlight<Lookup, Outcome<ScheduleDetailEntry>>();
+
+	/**
+	 * Sections not found in the last 10 minutes, shared by the instances not
+	 * given another cache.
+	 */
+	private static final NegativeCache<SectionKey> sNegativeCache = new NegativeCache<SectionKey>(
+			100000, 10, TimeUnit.MINUTES);
 
 	/**
 	 * Callback methods you have to implement. Provide either
@@ -86,6 +210,36 @@ public class ScheduleDetail implements HttpRequestListener {
 		public void onScheduleDetailFinished(Exception e);
 	}
 
+	/**
+	 * Callback methods for getResults(). Provide either ScheduleDetailEntry
+	 * object or the exception raised for one section.
+	 * 
+	 * @author Kaiwen Xu (kevin)
+	 */
+	public interface BatchListener {
+		public void onBatchEntry(ScheduleDetailEntry entry);
+
+		public void onBatchFailure(SectionKey section, Exception e);
+	}
+
+	/**
+	 * Callback method for getOutcomes(). Provide the outcome of one section,
+	 * whether it was found or not.
+	 * 
+	 * @author Kaiwen Xu (kevin)
+	 */
+	public interface BatchOutcomeListener {
+		public void onBatchOutcome(SectionKey section,
+				Outcome<ScheduleDetailEntry> outcome);
+	}
+
+	/**
+	 * Constructor for callers only using the returned futures.
+	 */
+	public ScheduleDetail() {
+		this(null, PooledHttpClientAsync.FACTORY);
+	}
+
 	/**
 	 * Constructor.
 	 * 
@@ -93,8 +247,119 @@ public class ScheduleDetail implements HttpRequestListener {
 	 *            callback you have to implement.
 	 */
 	public ScheduleDetail(ScheduleDetailListener scheduleDetailListener) {
+		this(scheduleDetailListener, PooledHttpClientAsync.FACTORY);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param scheduleDetailListener
+	 *            callback you have to implement. It can be null if only the
+	 *            returned futures are used.
+	 * @param httpClientFactory
+	 *            creates the HttpClientAsync carrying each request, i.e.
+	 *            NioHttpClientAsync.FACTORY for the non-blocking transport.
+	 */
+	public ScheduleDetail(ScheduleDetailListener scheduleDetailListener,
+			HttpClientAsyncFactory httpClientFactory) {
 		this.mListener = scheduleDetailListener;
-		this.requestFinished = true;
+		this.mHttpClientFactory = httpClientFactory;
+		this.mCallbackExecutor = null;
+	}
+
+	/**
+	 * Set the executor on which the listener is called and the returned
+	 * futures are completed. By default they run on the delivery stage of the
+	 * shared ParsePipeline.
+	 * 
+	 * @param callbackExecutor
+	 *            executor for callback delivery, or null for the delivery
+	 *            stage.
+	 */
+	public void setCallbackExecutor(Executor callbackExecutor) {
+		this.mCallbackExecutor = callbackExecutor;
+	}
+
+	/**
+	 * Set how pages are parsed. The default is Parser.DOCUMENT.
+	 * 
+	 * @param parser
+	 *            parser for the pages of following requests.
+	 */
+	public void setParser(Parser parser) {
+		this.mParser = parser;
+	}
+
+	/**
+	 * Set the fields of the entries of following requests. Only the requested
+	 * fields are extracted and set; the others are left null (0 for credits).
+	 * Parsing stops as soon as every requested field is set, e.g. the lines
+	 * after the credits are not read if only the seats and the credits are
+	 * requested. If only seat fields are requested and the page is of a known
+	 * template, the seats are read from the page bytes without parsing the
+	 * page at all, which suits polling.
+	 * All fields are requested by default.
+	 * 
+	 * @param fields
+	 *            fields to set, or null for all of them.
+	 */
+	public void setFields(EnumSet<Field> fields) {
+		this.mFields = (fields == null) ? EnumSet.allOf(Field.class)
+				: EnumSet.copyOf(fields);
+	}
+
+	/**
+	 * Set the table the seats of every section looked up are written into, as
+	 * soon as the page is parsed. Sections of other terms are ignored, and a
+	 * section not found is removed from the table. Pair it with seats only
+	 * fields to poll the seats of a term.
+	 * 
+	 * @param seatTable
+	 *            table of the seats of a term, or null for none.
+	 */
+	public void setSeatTable(TermSeatTable seatTable) {
+		this.mSeatTable = seatTable;
+	}
+
+	/**
+	 * Set the CRNs known to exist in a term. Lookups of that term check the
+	 * bitmap before sending any request, and unknown CRNs are handled as the
+	 * policy says. The bitmap learns from every page parsed: a section found
+	 * is added, and a section not found is removed, unless the policy is
+	 * REJECT.
+	 * <p>
+	 * A CRN which is not a 5 digit number is never looked up, with or without
+	 * a bitmap.
+	 * 
+	 * @param crnBitmap
+	 *            CRNs of a term, or null for none.
+	 * @param policy
+	 *            what to do with CRNs not in the bitmap.
+	 */
+	public void setCrnBitmap(CrnBitmap crnBitmap, UnknownCrnPolicy policy) {
+		this.mUnknownCrnPolicy = policy;
+		this.mCrnBitmap = crnBitmap;
+	}
+
+	/**
+	 * Set the cache of sections not found. A section looked up and not found
+	 * is answered from the cache, without a request, until its time to live
+	 * is over. By default, a cache of 100000 sections for 10 minutes is
+	 * shared by all instances.
+	 * 
+	 * @param negativeCache
+	 *            cache of sections not found, or null for none.
+	 */
+	public void setNegativeCache(NegativeCache<SectionKey> negativeCache) {
+		this.mNegativeCache = negativeCache;
+	}
+
+	/**
+	 * @return cache of sections not found, i.e. to read its counters, or
+	 *         null if there is none.
+	 */
+	public NegativeCache<SectionKey> getNegativeCache() {
+		return mNegativeCache;
 	}
 
 	/**
@@ -102,190 +367,838 @@ public class ScheduleDetail implements HttpRequestListener {
 	 * 
 	 * @param crn
 	 *            CRN number of course.
-	 * @throws RequestNotFinishedException
-	 *             If calling this method before previous request is finished,
-	 *             then will throw this exception.
+	 * @return future completed with the entry, or exceptionally with the same
+	 *         exception passed to the listener.
 	 */
-	public void getResult(int crn) throws RequestNotFinishedException {
-		getResult(Term.CURRENT, crn);
+	public CompletableFuture<ScheduleDetailEntry> getResult(int crn) {
+		return getResult(Term.CURRENT, crn);
 	}
 
 	/**
-	 * Call this method to start retrieving and parsing data.
+	 * Call this method to start retrieving and parsing data. It can be called
+	 * again, from any thread, before previous requests have finished.
+	 * <p>
+	 * The listener, if any, is called before the returned future completes.
+	 * If the same section is already being looked up (by any instance), this
+	 * call waits for that lookup instead of sending another request.
 	 * 
 	 * @param term
 	 *            School term. If it's null, current school term will be used.
 	 * @param crn
 	 *            CRN number of course.
-	 * @throws RequestNotFinishedException
-	 *             If calling this method before previous request is finished,
-	 *             then will throw this exception.
+	 * @return future completed with the entry, or exceptionally with the same
+	 *         exception passed to the listener.
 	 */
-	public void getResult(Term term, int crn)
-			throws RequestNotFinishedException {
-		if (!this.requestFinished)
-			throw new RequestNotFinishedException();
+	public CompletableFuture<ScheduleDetailEntry> getResult(Term term, int crn) {
+		if (term == null)
+			term = Term.CURRENT;
 
-		this.requestFinished = false;
+		mRequestsInFlight.incrementAndGet();
+		return deliver(lookUp(term, crn), term, crn);
+	}
 
+	/**
+	 * Same as getResult(Term, int), except that the outcome is given as a
+	 * value: the returned future always completes normally, and a section not
+	 * found creates no exception. Use it to sweep ranges of CRNs, where most
+	 * lookups find nothing. The listener is not notified.
+	 * 
+	 * @param term
+	 *            School term. If it's null, current school term will be used.
+	 * @param crn
+	 *            CRN number of course.
+	 * @return future completed with the outcome.
+	 */
+	public CompletableFuture<Outcome<ScheduleDetailEntry>> getOutcome(
+			Term term, int crn) {
 		if (term == null)
 			term = Term.CURRENT;
 
-		this.term = term;
-		this.crn = crn;
+		mRequestsInFlight.incrementAndGet();
+		return deliverOutcome(lookUp(term, crn), term, crn, false);
+	}
+
+	private CompletableFuture<Outcome<ScheduleDetailEntry>> lookUp(Term term,
+			int crn) {
+		if (!Utilities.verifyCrn(crn)) {
+			return CompletableFuture.completedFuture(Outcome
+					.<ScheduleDetailEntry> notFound("CRN " + crn
+							+ " is not a 5 digit number."));
+		}
+		if (term == Term.UNKNOWN) {
+			return CompletableFuture.completedFuture(Outcome
+					.<ScheduleDetailEntry> notFound("Term is unknown."));
+		}
+		CrnBitmap bitmap = mCrnBitmap;
+		if (bitmap != null && bitmap.getTerm() == term
+				&& mUnknownCrnPolicy == UnknownCrnPolicy.REJECT
+				&& !bitmap.contains(crn)) {
+			return CompletableFuture.completedFuture(Outcome
+					.<ScheduleDetailEntry> notFound("CRN " + crn
+							+ " is not known in " + term + "."));
+		}
+		final SectionKey section = new SectionKey(term, crn);
+		final NegativeCache<SectionKey> cache = mNegativeCache;
+		if (cache != null) {
+			Outcome<ScheduleDetailEntry> notFound = cache.get(section);
+			if (notFound != null)
+				return CompletableFuture.completedFuture(notFound);
+		}
+		CompletableFuture<Outcome<ScheduleDetailEntry>> result = sInFlightLookups
+				.get(new Lookup(section, mFields), lookup -> fetch(
+						lookup.mSection.getTerm(), lookup.mSection.getCrn(),
+						lookup.mFields));
+		if (cache == null)
+			return result;
+		return result.thenApply(outcome -> {
+			cache.put(section, outcome);
+			return outcome;
+		});
+	}
+
+	/**
+	 * Send the request and parse the response, without notifying anyone.
+	 */
+	private CompletableFuture<Outcome<ScheduleDetailEntry>> fetch(Term term,
+			int crn, Set<Field> fields) {
+		Request request = new Request(term, crn, fields);
 
 		List<NameValuePair> parameters = new ArrayList<NameValuePair>();
 		parameters.add(new BasicNameValuePair("term", term.getLinkName()));
 		parameters.add(new BasicNameValuePair("crn", Integer.toString(crn)));
 
-		mHttpClient = new BasicHttpClientAsync(URL_HEAD, HttpMethod.POST, this);
+		HttpClientAsync httpClient = mHttpClientFactory.newHttpClient(
+				URL_HEAD, HttpMethod.POST, request);
+		request.mHttpClient = httpClient;
 		try {
-			mHttpClient.setParameters(parameters);
-			mHttpClient.getResponse();
+			httpClient.setParameters(parameters);
+			httpClient.getResponse();
 		} catch (MethodNotPostException e) {
-			e.printStackTrace();
-		} finally {
-			this.requestFinished = true;
+			request.finish(Outcome.<ScheduleDetailEntry> transportError(e));
 		}
+
+		return request.mFuture;
+	}
+
+	/**
+	 * Notify the listener of the result, on the callback executor if there is
+	 * one, then complete the returned future.
+	 */
+	private CompletableFuture<ScheduleDetailEntry> deliver(
+			CompletableFuture<Outcome<ScheduleDetailEntry>> result,
+			final Term term, final int crn) {
+		final CompletableFuture<ScheduleDetailEntry> future = new CompletableFuture<ScheduleDetailEntry>();
+		result.whenComplete((outcome, throwable) -> {
+			mRequestsInFlight.decrementAndGet();
+			final ScheduleDetailEntry entry = (throwable == null) ? outcome
+					.getValue() : null;
+			final Exception exception = (throwable == null) ? outcome
+					.toException() : unwrap(throwable);
+			getCallbackExecutor().execute(new Runnable() {
+
+				@Override
+				public void run() {
+					deliver(future, entry, exception, term, crn);
+				}
+			});
+		});
+		return future;
 	}
 
 	/**
-	 * Check whether previous request has been finished.
+	 * Same as deliver(), with the outcome as value.
 	 * 
-	 * @return Return true if previous request has already finished.
+	 * @param notify
+	 *            whether the listener is notified.
 	 */
-	public boolean isRequestFinished() {
-		return this.requestFinished;
+	private CompletableFuture<Outcome<ScheduleDetailEntry>> deliverOutcome(
+			CompletableFuture<Outcome<ScheduleDetailEntry>> result,
+			final Term term, final int crn, final boolean notify) {
+		final CompletableFuture<Outcome<ScheduleDetailEntry>> future =
+				new CompletableFuture<Outcome<ScheduleDetailEntry>>();
+		result.whenComplete((outcome, throwable) -> {
+			mRequestsInFlight.decrementAndGet();
+			final Outcome<ScheduleDetailEntry> delivered = (throwable == null)
+					? outcome : Outcome.<ScheduleDetailEntry> failed(unwrap(
+							throwable));
+			getCallbackExecutor().execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						if (notify && mListener != null) {
+							notifyListener(delivered.getValue(),
+									delivered.toException(), term, crn);
+						}
+					} finally {
+						future.complete(delivered);
+					}
+				}
+			});
+		});
+		return future;
+	}
+
+	private Executor getCallbackExecutor() {
+		Executor executor = mCallbackExecutor;
+		if (executor == null)
+			executor = ParsePipeline.getInstance().getDeliveryExecutor();
+		return executor;
 	}
 
-	@Override
-	public void onRequestFinished(HttpResponse httpResponse) {
+	private void deliver(CompletableFuture<ScheduleDetailEntry> future,
+			ScheduleDetailEntry entry, Exception exception, Term term, int crn) {
 		try {
-			InputStream stream = httpResponse.getEntity().getContent();
-			Header encoding = httpResponse.getEntity().getContentEncoding();
-			Document document;
-			if (encoding == null) {
-				document = Jsoup.parse(stream, null, URL_HEAD);
+			if (mListener != null) {
+				notifyListener(entry, exception, term, crn);
+			}
+		} finally {
+			if (exception == null) {
+				future.complete(entry);
 			} else {
-				document = Jsoup.parse(stream, encoding.getValue(), URL_HEAD);
+				future.completeExceptionally(exception);
 			}
-			stream.close();
-			ScheduleDetailEntry entry = parseDocument(document);
+		}
+	}
+
+	private void notifyListener(ScheduleDetailEntry entry,
+			Exception exception, Term term, int crn) {
+		if (exception == null) {
 			mListener.onScheduleDetailFinished(entry);
-		} catch (IllegalStateException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			mListener.onScheduleDetailFinished(e);
-		} catch (HtmlParseException e) {
-			mListener.onScheduleDetailFinished(e);
-		} catch (CourseNotFoundException e) {
-			mListener.onScheduleDetailFinished(e, term, crn);
-		} catch (ResultNotMatchException e) {
-			mListener.onScheduleDetailFinished(new HtmlParseException(e
-					.getMessage()));
-		} catch (Exception e) {
-			mListener.onScheduleDetailFinished(e);
-		} finally {
-			this.requestFinished = true;
+		} else if (exception instanceof IOException) {
+			mListener.onScheduleDetailFinished((IOException) exception);
+		} else if (exception instanceof HtmlParseException) {
+			mListener.onScheduleDetailFinished((HtmlParseException) exception);
+		} else if (exception instanceof CourseNotFoundException) {
+			mListener.onScheduleDetailFinished(
+					(CourseNotFoundException) exception, term, crn);
+		} else {
+			mListener.onScheduleDetailFinished(exception);
 		}
 	}
 
-	@Override
-	public void onRequestFinished(ClientProtocolException e) {
-		e.printStackTrace();
-		this.requestFinished = true;
+	/**
+	 * Check whether all previous requests have been finished.
+	 * 
+	 * @return Return true if no request is in flight.
+	 */
+	public boolean isRequestFinished() {
+		return mRequestsInFlight.get() == 0;
 	}
 
-	@Override
-	public void onRequestFinished(IOException e) {
-		mListener.onScheduleDetailFinished(e);
-		this.requestFinished = true;
+	/**
+	 * Get the number of values parsed which are unknown to Predefined, i.e.
+	 * a new schedule type, see ScheduleDetailEntry.getUnknownValue().
+	 * 
+	 * @return number of unknown values since this was created.
+	 */
+	public long getUnknownValues() {
+		return mUnknownValues.get();
 	}
 
-	private ScheduleDetailEntry parseDocument(Document document)
-			throws HtmlParseException, CourseNotFoundException,
-			ResultNotMatchException {
-		ScheduleDetailEntry entry = new ScheduleDetailEntry(term, crn);
-		Elements tableElements = document
-				.getElementsByAttributeValue("summary",
-						"This table is used to present the detailed class information.");
+	/**
+	 * Get the number of pages parsed for the seats only which could not be
+	 * read straight from their bytes and were parsed the usual way, see
+	 * getSeatsTemplate().
+	 * 
+	 * @return number of fallbacks since this was created.
+	 */
+	public long getSeatsFallbacks() {
+		return mSeatsFallbacks.get();
+	}
 
-		if (!tableElements.isEmpty()) {
-			for (Element tableElement : tableElements) {
-				// get basic info for selected course
-				Element tableBasicInfoElement = tableElement
-						.getElementsByClass("ddlabel").first();
-				if (tableBasicInfoElement != null) {
-					setBasicInfo(entry, tableBasicInfoElement.text());
+	/**
+	 * Get the template of a schedule detail page, as recognized by lookups
+	 * only asking for the seats.
+	 * 
+	 * @param page
+	 *            the page.
+	 * @return name of the template, i.e. "TH_LABELS", or null if the
+	 *         template is unknown or the seats cannot be read straight from
+	 *         the bytes, in which case the page is parsed the usual way.
+	 */
+	public static String getSeatsTemplate(byte[] page) {
+		PageLayout layout = PageLayout.of(page);
+		SeatsExtractor extractor = layout.getSeatsExtractor();
+		if (extractor == null)
+			return null;
+		try {
+			extractor.extract(page, null);
+			return layout.name();
+		} catch (UnsupportedLayoutException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Start retrieving and parsing a batch of sections, with at most given
+	 * number of requests in flight at any time. Sections are taken from the
+	 * iterator only when a slot becomes free, so it can be backed by a stream
+	 * (i.e. CRNs read from standard input) and nothing is buffered.
+	 * <p>
+	 * The iterator is always accessed by one thread at a time, but not always
+	 * by the same thread.
+	 * 
+	 * @param sections
+	 *            sections to look up.
+	 * @param concurrency
+	 *            maximum number of requests in flight.
+	 * @param batchListener
+	 *            receives every entry or failure as soon as it is available.
+	 * @return future completed once every section has been reported to the
+	 *         listener.
+	 */
+	public CompletableFuture<Void> getResults(Iterator<SectionKey> sections,
+			int concurrency, final BatchListener batchListener) {
+		return startBatch(sections, concurrency, new BatchOutcomeListener() {
+
+			@Override
+			public void onBatchOutcome(SectionKey section,
+					Outcome<ScheduleDetailEntry> outcome) {
+				if (outcome.isFound()) {
+					batchListener.onBatchEntry(outcome.getValue());
 				} else {
-					throw new HtmlParseException("Basic info element empty.");
+					batchListener.onBatchFailure(section,
+							outcome.toException());
+				}
+			}
+		}, true);
+	}
+
+	/**
+	 * Same as getResults(Iterator, int, BatchListener).
+	 */
+	public CompletableFuture<Void> getResults(Iterable<SectionKey> sections,
+			int concurrency, BatchListener batchListener) {
+		return getResults(sections.iterator(), concurrency, batchListener);
+	}
+
+	/**
+	 * Same as getResults(Iterator, int, BatchListener), except that every
+	 * outcome is given as a value, and a section not found creates no
+	 * exception. The listener given to the constructor is not notified.
+	 * 
+	 * @param sections
+	 *            sections to look up.
+	 * @param concurrency
+	 *            maximum number of requests in flight.
+	 * @param batchListener
+	 *            receives the outcome of every section as soon as it is
+	 *            available.
+	 * @return future completed once every section has been reported to the
+	 *         listener.
+	 */
+	public CompletableFuture<Void> getOutcomes(Iterator<SectionKey> sections,
+			int concurrency, BatchOutcomeListener batchListener) {
+		return startBatch(sections, concurrency, batchListener, false);
+	}
+
+	private CompletableFuture<Void> startBatch(Iterator<SectionKey> sections,
+			int concurrency, BatchOutcomeListener batchListener,
+			boolean notify) {
+		if (concurrency < 1)
+			throw new IllegalArgumentException(
+					"Concurrency must be at least 1. We have " + concurrency
+							+ ".");
+
+		Batch batch = new Batch(sections, concurrency, batchListener, notify);
+		batch.pump();
+		return batch.mDone;
+	}
+
+	/**
+	 * State of a running batch.
+	 */
+	private class Batch {
+
+		private final Iterator<SectionKey> mSections;
+		private final int mConcurrency;
+		private final BatchOutcomeListener mBatchListener;
+		private final boolean mNotify;
+		private final CompletableFuture<Void> mDone;
+
+		private final AtomicInteger mInFlight = new AtomicInteger(0);
+		// number of pending pump() calls; only the caller moving it from 0
+		// touches the iterator
+		private final AtomicInteger mPumping = new AtomicInteger(0);
+		private volatile boolean mExhausted = false;
+
+		public Batch(Iterator<SectionKey> sections, int concurrency,
+				BatchOutcomeListener batchListener, boolean notify) {
+			this.mSections = sections;
+			this.mConcurrency = concurrency;
+			this.mBatchListener = batchListener;
+			this.mNotify = notify;
+			this.mDone = new CompletableFuture<Void>();
+		}
+
+		/**
+		 * Fill free slots from the iterator. Completions happening while
+		 * filling (i.e. synchronously) are handled by looping instead of
+		 * recursing.
+		 */
+		private void pump() {
+			if (mPumping.getAndIncrement() != 0)
+				return;
+
+			do {
+				try {
+					while (!mExhausted && mInFlight.get() < mConcurrency) {
+						if (!mSections.hasNext()) {
+							mExhausted = true;
+							break;
+						}
+						launch(mSections.next());
+					}
+				} catch (RuntimeException e) {
+					mExhausted = true;
+					mDone.completeExceptionally(e);
 				}
 
-				// get detailed course info
-				Element tableDetailedInfoElement = tableElement
-						.getElementsByClass("dddefault").first();
-
-				if (tableDetailedInfoElement != null) {
-					// process seat info
-					Elements tableSeatDetailElements = tableDetailedInfoElement
-							.getElementsByAttributeValue("summary",
-									"This layout table is used to present the seating numbers.");
-					if (tableSeatDetailElements.size() == 1) {
-						Element tableSeatDetailElement = tableSeatDetailElements
-								.first();
-						Elements tableSeatDetailEntryElements = tableSeatDetailElement
-								.getElementsByTag("tbody").first().children();
-						if (tableSeatDetailEntryElements.size() == 3
-								|| tableSeatDetailEntryElements.size() == 4) {
-							setSeats(entry, tableSeatDetailEntryElements.get(1)
-									.text());
-							setWaitlistSeats(entry,
-									tableSeatDetailEntryElements.get(2).text());
-							if (tableSeatDetailEntryElements.size() == 4) {
-								setCrosslistSeats(entry,
-										tableSeatDetailEntryElements.get(3)
-												.text());
-							}
-						} else {
-							throw new HtmlParseException(
-									"Seat detail entry elements size not 3. We have "
-											+ tableSeatDetailEntryElements
-													.size() + ".");
+				if (mExhausted && mInFlight.get() == 0)
+					mDone.complete(null);
+			} while (mPumping.decrementAndGet() != 0);
+		}
+
+		private void launch(final SectionKey section) {
+			mInFlight.incrementAndGet();
+			mRequestsInFlight.incrementAndGet();
+			Term term = section.getTerm();
+			int crn = section.getCrn();
+			deliverOutcome(lookUp(term, crn), term, crn, mNotify).whenComplete(
+					(outcome, e) -> {
+						try {
+							mBatchListener.onBatchOutcome(section, outcome);
+						} finally {
+							mInFlight.decrementAndGet();
+							pump();
 						}
+					});
+		}
+	}
+
+	private static Exception unwrap(Throwable throwable) {
+		if (throwable instanceof CompletionException
+				&& throwable.getCause() != null)
+			throwable = throwable.getCause();
+		if (throwable instanceof Exception)
+			return (Exception) throwable;
+		return new Exception(throwable);
+	}
+
+	/**
+	 * Key of a lookup in flight. Lookups of the same section only share a
+	 * request if they ask for the same fields.
+	 */
+	private static class Lookup {
+
+		private final SectionKey mSection;
+		private final Set<Field> mFields;
+
+		public Lookup(SectionKey section, Set<Field> fields) {
+			this.mSection = section;
+			this.mFields = fields;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Lookup))
+				return false;
+			Lookup other = (Lookup) obj;
+			return mSection.equals(other.mSection)
+					&& mFields.equals(other.mFields);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * mSection.hashCode() + mFields.hashCode();
+		}
+	}
+
+	/**
+	 * State of a single HTTP request. Keeping it here instead of on
+	 * ScheduleDetail lets any number of lookups run concurrently on one
+	 * instance.
+	 */
+	private class Request implements HttpRequestListener {
+
+		private final Term mTerm;
+		private final int mCrn;
+		private final Set<Field> mFields;
+		private final CompletableFuture<Outcome<ScheduleDetailEntry>> mFuture;
+		private HttpClientAsync mHttpClient;
+
+		public Request(Term term, int crn, Set<Field> fields) {
+			this.mTerm = term;
+			this.mCrn = crn;
+			this.mFields = fields;
+			this.mFuture = new CompletableFuture<Outcome<ScheduleDetailEntry>>();
+		}
+
+		@Override
+		public void onRequestFinished(HttpResponse httpResponse) {
+			ParsePipeline pipeline = ParsePipeline.getInstance();
+			try {
+				HttpEntity entity = httpResponse.getEntity();
+				InputStream stream = entity.getContent();
+				final HtmlFragmentReader reader = newFragmentReader();
+				final byte[] fragment;
+				pipeline.beginRead();
+				try {
+					fragment = reader.read(stream);
+					if (reader.isTruncated()) {
+						HttpUtilities.releaseContent(mHttpClient, stream,
+								HttpUtilities.DEFAULT_MAX_DISCARD_BYTES);
 					} else {
-						throw new HtmlParseException(
-								"Seat detail elements size not 1. We have "
-										+ tableSeatDetailElements.size() + ".");
+						stream.close();
 					}
-					// remove the seat info from detailed info
-					tableSeatDetailElements.remove();
+				} finally {
+					pipeline.endRead();
+				}
+				final String charset = HttpUtilities.getContentCharset(entity);
 
-					// remaining information
-					setRemainingInfo(entry, tableDetailedInfoElement.html());
+				// parse off the HTTP thread
+				pipeline.parse(new Runnable() {
 
-				} else {
-					throw new HtmlParseException("Detailed info element empty.");
+					@Override
+					public void run() {
+						finish(parse(reader, fragment, charset, mTerm, mCrn,
+								mFields));
+					}
+				});
+			} catch (Exception e) {
+				finish(Outcome.<ScheduleDetailEntry> failed(e));
+			}
+		}
+
+		@Override
+		public void onRequestFinished(ClientProtocolException e) {
+			finish(Outcome.<ScheduleDetailEntry> transportError(e));
+		}
+
+		@Override
+		public void onRequestFinished(IOException e) {
+			finish(Outcome.<ScheduleDetailEntry> transportError(e));
+		}
+
+		private void finish(Outcome<ScheduleDetailEntry> outcome) {
+			mFuture.complete(outcome);
+		}
+	}
+
+	/**
+	 * Parse a saved schedule detail page, without any network access. The
+	 * entry is the same getResult() gives for the page, with the fields set by
+	 * setFields(), but the listener is not notified. It may be called from any
+	 * number of threads at once.
+	 * 
+	 * @param page
+	 *            page content. It is read up to the detail table and not
+	 *            closed.
+	 * @param charset
+	 *            charset of the page, or null to use the one declared in it.
+	 * @param term
+	 *            term the page was requested for.
+	 * @param crn
+	 *            CRN the page was requested for.
+	 * @return entry of the section.
+	 * @throws IOException
+	 * @throws HtmlParseException
+	 *             if the page cannot be parsed, or is about another section.
+	 * @throws CourseNotFoundException
+	 */
+	public ScheduleDetailEntry parse(InputStream page, String charset,
+			Term term, int crn) throws IOException, HtmlParseException,
+			CourseNotFoundException {
+		return parseOutcome(page, charset, term, crn).get();
+	}
+
+	/**
+	 * Same as parse(InputStream, String, Term, int).
+	 */
+	public ScheduleDetailEntry parse(byte[] page, String charset, Term term,
+			int crn) throws IOException, HtmlParseException,
+			CourseNotFoundException {
+		return parse(new ByteArrayInputStream(page), charset, term, crn);
+	}
+
+	/**
+	 * Same as parse(InputStream, String, Term, int), except that the outcome
+	 * is given as a value, and a page saying the section is not found creates
+	 * no exception.
+	 * 
+	 * @return outcome of the page. Failing to read it is a TRANSPORT_ERROR.
+	 */
+	public Outcome<ScheduleDetailEntry> parseOutcome(InputStream page,
+			String charset, Term term, int crn) {
+		HtmlFragmentReader reader = newFragmentReader();
+		byte[] fragment;
+		try {
+			fragment = reader.read(page);
+		} catch (IOException e) {
+			return Outcome.transportError(e);
+		}
+		return parse(reader, fragment, charset, term, crn, mFields);
+	}
+
+	/**
+	 * Same as parseOutcome(InputStream, String, Term, int).
+	 */
+	public Outcome<ScheduleDetailEntry> parseOutcome(byte[] page,
+			String charset, Term term, int crn) {
+		return parseOutcome(new ByteArrayInputStream(page), charset, term, crn);
+	}
+
+	private static HtmlFragmentReader newFragmentReader() {
+		// only the detail table, or the message saying there is none, is
+		// needed
+		return new HtmlFragmentReader().addTable(DETAIL_TABLE_SUMMARY)
+				.addTable(MESSAGE_TABLE_SUMMARY, NOT_FOUND_MESSAGE);
+	}
+
+	private Outcome<ScheduleDetailEntry> parse(HtmlFragmentReader reader,
+			byte[] fragment, String charset, Term term, int crn,
+			Set<Field> fields) {
+		if (charset == null)
+			charset = reader.getDeclaredCharset();
+		try {
+			return record(parseFragment(fragment, charset, term, crn, fields),
+					term, crn, fields);
+		} catch (ResultNotMatchException e) {
+			return Outcome.parseError(new HtmlParseException(e.getMessage()));
+		} catch (Exception e) {
+			return Outcome.failed(e);
+		}
+	}
+
+	/**
+	 * Write whether a section was found, and its seats, into the CRN bitmap
+	 * and the seat table, if any. Seats which were requested and are not on
+	 * the page are cleared; seats which were not requested are left as they
+	 * are.
+	 * 
+	 * @return the outcome.
+	 */
+	private Outcome<ScheduleDetailEntry> record(
+			Outcome<ScheduleDetailEntry> outcome, Term term, int crn,
+			Set<Field> fields) {
+		if (!Utilities.verifyCrn(crn))
+			return outcome;
+		boolean found = outcome.isFound();
+		if (!found && outcome.getStatus() != Outcome.Status.NOT_FOUND)
+			return outcome;
+		CrnBitmap bitmap = mCrnBitmap;
+		if (bitmap != null && bitmap.getTerm() == term) {
+			if (found)
+				bitmap.add(crn);
+			else if (mUnknownCrnPolicy == UnknownCrnPolicy.LOOK_UP)
+				bitmap.remove(crn);
+		}
+		TermSeatTable table = mSeatTable;
+		if (table != null && table.getTerm() == term) {
+			if (found) {
+				ScheduleDetailEntry entry = outcome.getValue();
+				table.update(crn,
+						recorded(fields, Field.SEATS, entry.seats),
+						recorded(fields, Field.WAITLIST_SEATS,
+								entry.waitlistSeats),
+						recorded(fields, Field.CROSSLIST_SEATS,
+								entry.crosslistSeats));
+			} else {
+				table.remove(crn);
+			}
+		}
+		return outcome;
+	}
+
+	/**
+	 * @return packed seats of the entry, which are Seats.NONE if the page has
+	 *         none, or TermSeatTable.UNCHANGED if they were not requested.
+	 */
+	private static long recorded(Set<Field> fields, Field field, long seats) {
+		return fields.contains(field) ? seats : TermSeatTable.UNCHANGED;
+	}
+
+	private Outcome<ScheduleDetailEntry> parseFragment(byte[] page,
+			String charset, Term term, int crn, Set<Field> fields)
+			throws IOException, HtmlParseException, ResultNotMatchException {
+		if (SEAT_FIELDS.containsAll(fields)) {
+			// seats only, straight from the bytes if the template is known
+			SeatsExtractor extractor = PageLayout.of(page)
+					.getSeatsExtractor();
+			if (extractor != null) {
+				try {
+					return Outcome.found(parseSeats(extractor.extract(page,
+							charset), term, crn, fields));
+				} catch (UnsupportedLayoutException e) {
+					// parse it the usual way
 				}
+			}
+			mSeatsFallbacks.incrementAndGet();
+		}
 
+		boolean seats = !Collections.disjoint(fields, SEAT_FIELDS);
+		boolean remainingInfo = !Collections.disjoint(fields,
+				REMAINING_INFO_FIELDS);
+		if (mParser == Parser.STREAMING) {
+			// same decoding as Jsoup
+			if (charset == null)
+				charset = "UTF-8";
+			String html = new String(page, Charset.forName(charset));
+			if (html.length() > 0 && html.charAt(0) == '\uFEFF')
+				html = html.substring(1);
+			try {
+				return parsePage(ScheduleDetailExtractor.extract(html, charset,
+						seats, remainingInfo), term, crn, fields);
+			} catch (UnsupportedLayoutException e) {
+				// parse it the usual way
+			}
+		}
+
+		Document document = Jsoup.parse(new ByteArrayInputStream(page),
+				charset, URL_HEAD);
+		return parseDocument(document, term, crn, fields, seats, remainingInfo);
+	}
+
+	private Outcome<ScheduleDetailEntry> parseDocument(Document document,
+			Term term, int crn, Set<Field> fields, boolean seats,
+			boolean remainingInfo) throws HtmlParseException,
+			ResultNotMatchException {
+		ScheduleDetailEntry entry = new ScheduleDetailEntry(term, crn);
+		Elements tableElements = document.getElementsByAttributeValue(
+				"summary", DETAIL_TABLE_SUMMARY);
+
+		if (!tableElements.isEmpty()) {
+			for (Element tableElement : tableElements) {
+				setDetailTable(entry, ScheduleDetailExtractor.extract(
+						tableElement, seats, remainingInfo), fields);
 			}
 		} else {
 			// test empty
 			Elements informationElements = document
 					.getElementsByAttributeValue("summary",
-							"This layout table holds message information");
-			if (!informationElements.isEmpty()
-					&& informationElements.text().contains(
-							"No detailed class information found")) {
-				throw new CourseNotFoundException(informationElements.text());
-			} else {
-				throw new HtmlParseException(
-						"Course table not found, but page does not contain message stating no course found.");
+							MESSAGE_TABLE_SUMMARY);
+			return notFound(informationElements.isEmpty() ? null
+					: informationElements.text());
+		}
+
+		return Outcome.found(entry);
+	}
+
+	private Outcome<ScheduleDetailEntry> parsePage(Page page, Term term,
+			int crn, Set<Field> fields) throws HtmlParseException,
+			ResultNotMatchException {
+		ScheduleDetailEntry entry = new ScheduleDetailEntry(term, crn);
+
+		if (!page.mDetailTables.isEmpty()) {
+			for (DetailTable table : page.mDetailTables) {
+				setDetailTable(entry, table, fields);
 			}
+		} else {
+			return notFound(page.mMessage);
 		}
 
+		return Outcome.found(entry);
+	}
+
+	private ScheduleDetailEntry parseSeats(SeatTable table, Term term,
+			int crn, Set<Field> fields) throws ResultNotMatchException {
+		ScheduleDetailEntry entry = new ScheduleDetailEntry(term, crn);
+		entry.setCrn(table.mCrn);
+		if (entry.getCrn() != entry.getSearchCrn())
+			throw new ResultNotMatchException(
+					"Result not match with search option.");
+		if (fields.contains(Field.SEATS))
+			entry.setSeats(table.mSeats);
+		if (fields.contains(Field.WAITLIST_SEATS))
+			entry.setWaitlistSeats(table.mWaitlistSeats);
+		if (fields.contains(Field.CROSSLIST_SEATS))
+			entry.setCrosslistSeats(table.mCrosslistSeats);
 		return entry;
 	}
 
+	/**
+	 * Set everything found in one detail table.
+	 * 
+	 * @param entry
+	 *            ScheduleDetailEntry to be set.
+	 * @param table
+	 *            strings of the detail table.
+	 * @param fields
+	 *            fields to set.
+	 * @throws HtmlParseException
+	 * @throws ResultNotMatchException
+	 */
+	private void setDetailTable(ScheduleDetailEntry entry, DetailTable table,
+			Set<Field> fields) throws HtmlParseException,
+			ResultNotMatchException {
+		// get basic info for selected course
+		if (table.mBasicInfo != null) {
+			setBasicInfo(entry, table.mBasicInfo, fields);
+		} else {
+			throw new HtmlParseException("Basic info element empty.");
+		}
+
+		// get detailed course info
+		if (table.mRemainingInfoHtml != null) {
+			// process seat info
+			if (!Collections.disjoint(fields, SEAT_FIELDS)) {
+				if (table.mSeatTableCount == 1) {
+					List<String> seatRows = table.mSeatRows;
+					if (seatRows == null)
+						throw new HtmlParseException(
+								"Seat detail table is empty.");
+					if (seatRows.size() == 3 || seatRows.size() == 4) {
+						if (fields.contains(Field.SEATS))
+							setSeats(entry, seatRows.get(1));
+						if (fields.contains(Field.WAITLIST_SEATS))
+							setWaitlistSeats(entry, seatRows.get(2));
+						if (seatRows.size() == 4
+								&& fields.contains(Field.CROSSLIST_SEATS)) {
+							setCrosslistSeats(entry, seatRows.get(3));
+						}
+					} else {
+						throw new HtmlParseException(
+								"Seat detail entry elements size not 3. We have "
+										+ seatRows.size() + ".");
+					}
+				} else {
+					throw new HtmlParseException(
+							"Seat detail elements size not 1. We have "
+									+ table.mSeatTableCount + ".");
+				}
+			}
+
+			// remaining information
+			if (!Collections.disjoint(fields, REMAINING_INFO_FIELDS))
+				setRemainingInfo(entry, table.mRemainingInfoHtml, fields);
+
+		} else {
+			throw new HtmlParseException("Detailed info element empty.");
+		}
+	}
+
+	/**
+	 * Get the outcome of a page without detail table.
+	 * 
+	 * @param message
+	 *            text of the message tables, or null if there is none.
+	 * @return a NOT_FOUND outcome.
+	 * @throws HtmlParseException
+	 *             if the page does not say the section is not found.
+	 */
+	private Outcome<ScheduleDetailEntry> notFound(String message)
+			throws HtmlParseException {
+		if (message != null && message.contains(NOT_FOUND_MESSAGE)) {
+			return Outcome.notFound(message);
+		} else {
+			throw new HtmlParseException(
+					"Course table not found, but page does not contain message stating no course found.");
+		}
+	}
+
 	/**
 	 * Set course name, crn, subject - cnbr and section number based on the
 	 * string passed to this method.
@@ -295,35 +1208,50 @@ public class ScheduleDetail implements HttpRequestListener {
 	 * @param basicInfo
 	 *            String contains course name, crn, subject - cnbr and section
 	 *            number.
+	 * @param fields
+	 *            fields to set. The crn is always set, to check the result.
 	 * @throws HtmlParseException
 	 * @throws ResultNotMatchException
 	 */
-	private void setBasicInfo(ScheduleDetailEntry entry, String basicInfo)
-			throws HtmlParseException, ResultNotMatchException {
+	private void setBasicInfo(ScheduleDetailEntry entry, String basicInfo,
+			Set<Field> fields) throws HtmlParseException,
+			ResultNotMatchException {
 		String[] basicInfoes = basicInfo.split(" - ");
 		if (basicInfoes.length >= 4) {
 			entry.setCrn(Integer.valueOf(basicInfoes[basicInfoes.length - 3]));
 			if (entry.getCrn() != entry.getSearchCrn())
 				throw new ResultNotMatchException(
 						"Result not match with search option.");
-			entry.setSection(basicInfoes[basicInfoes.length - 1]);
-
-			String[] subjectCnbr = basicInfoes[basicInfoes.length - 2]
-					.split(" ");
-			if (subjectCnbr.length == 2) {
-				entry.setSubject(Subject.valueOf(subjectCnbr[0]));
-				entry.setCnbr(subjectCnbr[1]);
-			} else {
-				throw new HtmlParseException(
-						"Subject and CNBR cannot be split to 2. We have "
-								+ subjectCnbr.length + ".");
+			if (fields.contains(Field.SECTION))
+				entry.setSection(basicInfoes[basicInfoes.length - 1]);
+
+			if (fields.contains(Field.SUBJECT) || fields.contains(Field.CNBR)) {
+				String[] subjectCnbr = basicInfoes[basicInfoes.length - 2]
+						.split(" ");
+				if (subjectCnbr.length == 2) {
+					if (fields.contains(Field.SUBJECT)) {
+						Subject subject = Subject.lookup(subjectCnbr[0]);
+						entry.setSubject(subject);
+						if (subject == Subject.UNKNOWN)
+							setUnknownValue(entry, Field.SUBJECT,
+									subjectCnbr[0]);
+					}
+					if (fields.contains(Field.CNBR))
+						entry.setCnbr(subjectCnbr[1]);
+				} else {
+					throw new HtmlParseException(
+							"Subject and CNBR cannot be split to 2. We have "
+									+ subjectCnbr.length + ".");
+				}
 			}
 
-			StringBuffer name = new StringBuffer(basicInfoes[0]);
-			for (int i = 1; i <= basicInfoes.length - 4; i++) {
-				name.append(" - " + basicInfoes[i]);
+			if (fields.contains(Field.NAME)) {
+				StringBuffer name = new StringBuffer(basicInfoes[0]);
+				for (int i = 1; i <= basicInfoes.length - 4; i++) {
+					name.append(" - " + basicInfoes[i]);
+				}
+				entry.setName(name.toString());
 			}
-			entry.setName(name.toString());
 		} else {
 			throw new HtmlParseException(
 					"Basic info cannot be split to equal or more than 4. We have "
@@ -394,171 +1322,307 @@ public class ScheduleDetail implements HttpRequestListener {
 	/**
 	 * Set term, levels, campus and etc. based on the html passed to this
 	 * method.
+	 * <p>
+	 * The html is read once. Lines are separated by "&lt;br /&gt;", and each
+	 * line is either a field (term, levels, campus, type, credits), the label
+	 * of a section, or part of the section after the last label. Reading stops
+	 * once no requested field is left to set.
 	 * 
 	 * @param entry
 	 *            ScheduleDetailEntry to be set.
 	 * @param remainingInfoHtml
 	 *            Html String contains information about the term, levels,
 	 *            campus.
+	 * @param fields
+	 *            fields to set.
 	 */
 	private void setRemainingInfo(ScheduleDetailEntry entry,
-			String remainingInfoHtml) {
+			String remainingInfoHtml, Set<Field> fields) {
 		// TODO: handle cross list courses. i.e. crn 10248
-		final int NOT_RECORD = 0;
-		final int PREREQUISTES = 1;
-		final int RESTRICTIONS = 2;
-		final int GENERAL_REQUIREMENTS = 3;
-		final int COREQUISITES = 4;
-
+		StringBuilder[] sections = new StringBuilder[COREQUISITES + 1];
 		int recordType = NOT_RECORD;
-
-		String prerequisitesString = null;
-		String restrictionsString = null;
-		String generalRequirementsString = null;
-		String corequisitesString = null;
-
-		String[] remainingInfoes = remainingInfoHtml.split("<br />");
-		for (String info : remainingInfoes) {
-			info = info.trim();
-
-			if (recordType == PREREQUISTES) {
-				if (prerequisitesString == null) {
-					prerequisitesString = "";
-				}
-
-				if (!info.contains("Restrictions:")
-						&& !info.contains("General Requirements:")
-						&& !info.contains("Corequisites:")) {
-					prerequisitesString += " "
-							+ Utilities.removeHtmlTags(info).trim();
+		// requested fields and sections, as keyword masks
+		int wanted = keywordsOf(fields);
+		int fieldsLeft = wanted & FIELDS;
+		// empty lines at the end of the html do not count
+		int pendingEmptyLines = 0;
+
+		int length = remainingInfoHtml.length();
+		int lineStart = 0;
+		int keywords = 0;
+		// where "Associated Term: " and "Levels: " first ended on the line
+		int[] keywordEnds = new int[LEVELS + 1];
+		int state = KeywordMatcher.START;
+		for (int i = 0; i <= length; i++) {
+			int lineEnd;
+			if (i < length) {
+				state = sRemainingInfoKeywords.next(state,
+						remainingInfoHtml.charAt(i));
+				for (int keyword : sRemainingInfoKeywords.getMatches(state)) {
+					if ((keywords & (1 << keyword)) == 0
+							&& (1 << keyword & SPACE_ENDED) != 0)
+						keywordEnds[keyword] = i;
+					keywords |= 1 << keyword;
 				}
+				if ((keywords & (1 << LINE_BREAK)) == 0)
+					continue;
+				lineEnd = i + 1 - LINE_BREAK_TAG.length();
+			} else {
+				lineEnd = length;
 			}
 
-			if (recordType == RESTRICTIONS) {
-				if (restrictionsString == null) {
-					restrictionsString = "";
-				}
-
-				if (!info.contains("Prerequisites:")
-						&& !info.contains("General Requirements:")
-						&& !info.contains("Corequisites:")) {
-					restrictionsString += " "
-							+ Utilities.removeHtmlTags(
-									info.replace("&nbsp;", "")).trim();
-				}
+			if ((keywords & SPACE_ENDED) != 0) {
+				// the line is trimmed, so they need more text after them
+				int trimmedEnd = lineEnd;
+				while (trimmedEnd > lineStart
+						&& remainingInfoHtml.charAt(trimmedEnd - 1) <= ' ')
+					trimmedEnd--;
+				if (keywordEnds[ASSOCIATED_TERM] >= trimmedEnd)
+					keywords &= ~(1 << ASSOCIATED_TERM);
+				if (keywordEnds[LEVELS] >= trimmedEnd)
+					keywords &= ~(1 << LEVELS);
 			}
 
-			if (recordType == GENERAL_REQUIREMENTS) {
-				if (generalRequirementsString == null) {
-					generalRequirementsString = "";
+			if (recordType != NOT_RECORD) {
+				// sections not requested are skipped
+				if ((wanted & (1 << recordType)) != 0) {
+					int otherLabels = SECTION_LABELS & ~(1 << recordType);
+					if (lineStart == lineEnd) {
+						pendingEmptyLines++;
+					} else {
+						if (sections[recordType] == null)
+							sections[recordType] = new StringBuilder();
+						StringBuilder section = sections[recordType];
+						for (; pendingEmptyLines > 0; pendingEmptyLines--)
+							section.append(' ');
+						if ((keywords & otherLabels) == 0) {
+							section.append(' ');
+							appendText(section, remainingInfoHtml,
+									lineStart, lineEnd,
+									recordType != PREREQUISITES);
+						}
+					}
 				}
-
-				if (!info.contains("Prerequisites:")
-						&& !info.contains("Restrictions:")
-						&& !info.contains("Corequisites:")) {
-					generalRequirementsString += " "
-							+ Utilities.removeHtmlTags(
-									info.replace("&nbsp;", "")).trim();
+			} else if ((keywords & FIELDS) != 0) {
+				// the first field found on the line is set
+				int field = Integer.numberOfTrailingZeros(keywords & FIELDS);
+				if ((wanted & (1 << field)) != 0) {
+					setField(entry, remainingInfoHtml.substring(lineStart,
+							lineEnd).trim(), field);
+					fieldsLeft &= ~(1 << field);
 				}
+				keywords = 0;
 			}
 
-			if (recordType == COREQUISITES) {
-				if (corequisitesString == null) {
-					corequisitesString = "";
-				}
-
-				if (!info.contains("Prerequisites:")
-						&& !info.contains("Restrictions:")
-						&& !info.contains("General Requirements:")) {
-					corequisitesString += " "
-							+ Utilities.removeHtmlTags(
-									info.replace("&nbsp;", "")).trim();
-				}
+			if ((keywords & (1 << RESTRICTIONS)) != 0) {
+				recordType = RESTRICTIONS;
+			} else if ((keywords & (1 << PREREQUISITES)) != 0) {
+				recordType = PREREQUISITES;
+			} else if ((keywords & (1 << GENERAL_REQUIREMENTS)) != 0) {
+				recordType = GENERAL_REQUIREMENTS;
+			} else if ((keywords & (1 << COREQUISITES)) != 0) {
+				recordType = COREQUISITES;
 			}
 
-			if (recordType == NOT_RECORD) {
+			lineStart = i + 1;
+			keywords = 0;
 
-				if (info.contains("Associated Term: ")) {
-					String termString = info.substring(info.indexOf("</span>")
-							+ "</span>".length());
-					entry.setTerm(Term.valueOf(termString.replace(" ", "")
-							.toUpperCase()));
-					continue;
-				} else if (info.contains("Levels: ")) {
-					String levelsString = info.substring(info
-							.indexOf("</span>") + "</span>".length());
-					entry.setLevels(new ArrayList<String>(Arrays
-							.asList(levelsString.split(", "))));
-					continue;
-				} else if (info.contains("Campus")) {
-					String campusString = info.substring(0,
-							info.indexOf("Campus")).trim();
-					entry.setCampus(campusString);
-					continue;
-				} else if (info.contains("Schedule Type")) {
-					String typeString = info.substring(0,
-							info.indexOf("Schedule Type")).trim();
-					entry.setType(Type.valueOf(typeString.replace(" ", "")));
-					continue;
-				} else if (info.contains("Credits")) {
-					// TODO: require better handling of credit string with OR or
-					// TO contained
-					String creditsString = "0";
-					if (!info.contains("TO") && !info.contains("OR")) {
-						creditsString = info.substring(0,
-								info.indexOf("Credits")).trim();
-					} else if (info.contains("TO")) {
-						creditsString = info.substring(info.indexOf("TO") + 2,
-								info.indexOf("Credits")).trim();
-					} else if (info.contains("OR")) {
-						creditsString = info.substring(info.indexOf("OR") + 2,
-								info.indexOf("Credits")).trim();
-					}
-					entry.setCredits(Double.valueOf(creditsString));
-					continue;
-				}
+			// fields only come before the sections
+			if ((wanted & SECTION_LABELS) == 0
+					&& (fieldsLeft == 0 || recordType != NOT_RECORD))
+				break;
+		}
 
-			}
+		if (sections[PREREQUISITES] != null) {
+			entry.setPrerequisites(sections[PREREQUISITES].toString());
+		}
 
-			if (info.contains("Restrictions:")) {
-				recordType = RESTRICTIONS;
-				continue;
-			} else if (info.contains("Prerequisites:")) {
-				recordType = PREREQUISTES;
-				continue;
-			} else if (info.contains("General Requirements:")) {
-				recordType = GENERAL_REQUIREMENTS;
-				continue;
-			} else if (info.contains("Corequisites:")) {
-				recordType = COREQUISITES;
-				continue;
-			}
+		if (sections[RESTRICTIONS] != null) {
+			entry.setRestrictions(sections[RESTRICTIONS].toString());
 		}
 
-		if (prerequisitesString != null) {
-			entry.setPrerequisites(prerequisitesString);
+		if (sections[GENERAL_REQUIREMENTS] != null) {
+			entry.setGeneralRequirements(sections[GENERAL_REQUIREMENTS]
+					.toString());
 		}
 
-		if (restrictionsString != null) {
-			entry.setRestrictions(restrictionsString);
+		if (sections[COREQUISITES] != null) {
+			entry.setCorequisites(sections[COREQUISITES].toString());
 		}
 
-		if (generalRequirementsString != null) {
-			entry.setGeneralRequirements(generalRequirementsString);
+	}
+
+	/**
+	 * Keep the text of a value unknown to Predefined on the entry, and count
+	 * it.
+	 */
+	private void setUnknownValue(ScheduleDetailEntry entry, Field field,
+			String text) {
+		entry.setUnknownValue(field, text);
+		mUnknownValues.incrementAndGet();
+	}
+
+	/**
+	 * Set the field given on a line before the sections.
+	 * 
+	 * @param entry
+	 *            ScheduleDetailEntry to be set.
+	 * @param info
+	 *            the line, trimmed.
+	 * @param field
+	 *            keyword of the field.
+	 */
+	private void setField(ScheduleDetailEntry entry, String info, int field) {
+		if (field == ASSOCIATED_TERM) {
+			int termStart = info.indexOf("</span>") + "</span>".length();
+			Term term = Term.lookup(info, termStart, info.length());
+			entry.setTerm(term);
+			if (term == Term.UNKNOWN)
+				setUnknownValue(entry, Field.TERM, info.substring(termStart));
+		} else if (field == LEVELS) {
+			String levelsString = info.substring(info.indexOf("</span>")
+					+ "</span>".length());
+			List<Level> levels = new ArrayList<Level>();
+			StringBuilder unknownLevels = null;
+			for (String levelString : levelsString.split(", ")) {
+				Level level = Level.lookup(levelString);
+				levels.add(level);
+				if (level == Level.UNKNOWN) {
+					if (unknownLevels == null)
+						unknownLevels = new StringBuilder();
+					else
+						unknownLevels.append(", ");
+					unknownLevels.append(levelString.trim());
+				}
+			}
+			entry.setLevels(levels);
+			if (unknownLevels != null)
+				setUnknownValue(entry, Field.LEVELS, unknownLevels.toString());
+		} else if (field == CAMPUS) {
+			String campusString = info.substring(0, info.indexOf("Campus"))
+					.trim();
+			entry.setCampus(campusString);
+		} else if (field == SCHEDULE_TYPE) {
+			int typeEnd = info.indexOf("Schedule Type");
+			Type type = Type.lookup(info, 0, typeEnd);
+			entry.setType(type);
+			if (type == Type.UNKNOWN)
+				setUnknownValue(entry, Field.TYPE, info.substring(0, typeEnd));
+		} else if (field == CREDITS) {
+			// TODO: require better handling of credit string with OR or
+			// TO contained
+			String creditsString = "0";
+			if (!info.contains("TO") && !info.contains("OR")) {
+				creditsString = info.substring(0, info.indexOf("Credits")).trim();
+			} else if (info.contains("TO")) {
+				creditsString = info.substring(info.indexOf("TO") + 2,
+						info.indexOf("Credits")).trim();
+			} else if (info.contains("OR")) {
+				creditsString = info.substring(info.indexOf("OR") + 2,
+						info.indexOf("Credits")).trim();
+			}
+			entry.setCredits(Double.valueOf(creditsString));
 		}
+	}
 
-		if (corequisitesString != null) {
-			entry.setCorequisites(corequisitesString);
+	/**
+	 * @return keywords of the fields and section labels of the remaining info
+	 *         for the given fields.
+	 */
+	private static int keywordsOf(Set<Field> fields) {
+		int keywords = 0;
+		for (Field field : fields) {
+			switch (field) {
+			case TERM:
+				keywords |= 1 << ASSOCIATED_TERM;
+				break;
+			case LEVELS:
+				keywords |= 1 << LEVELS;
+				break;
+			case CAMPUS:
+				keywords |= 1 << CAMPUS;
+				break;
+			case TYPE:
+				keywords |= 1 << SCHEDULE_TYPE;
+				break;
+			case CREDITS:
+				keywords |= 1 << CREDITS;
+				break;
+			case RESTRICTIONS:
+				keywords |= 1 << RESTRICTIONS;
+				break;
+			case PREREQUISITES:
+				keywords |= 1 << PREREQUISITES;
+				break;
+			case GENERAL_REQUIREMENTS:
+				keywords |= 1 << GENERAL_REQUIREMENTS;
+				break;
+			case COREQUISITES:
+				keywords |= 1 << COREQUISITES;
+				break;
+			default:
+				break;
+			}
 		}
+		return keywords;
+	}
 
+	/**
+	 * Append the text of a line, without html tags and surrounding whitespace.
+	 * 
+	 * @param builder
+	 *            where the text goes.
+	 * @param html
+	 *            the html.
+	 * @param start
+	 *            start of the line.
+	 * @param end
+	 *            end of the line.
+	 * @param removeNbsp
+	 *            whether to leave out "&amp;nbsp;" as well.
+	 */
+	private static void appendText(StringBuilder builder, String html,
+			int start, int end, boolean removeNbsp) {
+		int textStart = builder.length();
+		// a tag has to be closed on the same line, or "<" is taken literally
+		int tagEnd = start - 1;
+		for (int i = start; i < end; i++) {
+			char c = html.charAt(i);
+			if (c == '<' && tagEnd < end) {
+				if (tagEnd < i)
+					for (tagEnd = i + 1; tagEnd < end
+							&& html.charAt(tagEnd) != '>'; tagEnd++)
+						;
+				if (tagEnd < end) {
+					i = tagEnd;
+					continue;
+				}
+			} else if (removeNbsp && c == '&' && html.startsWith(NBSP, i)
+					&& i + NBSP.length() <= end) {
+				i += NBSP.length() - 1;
+				continue;
+			}
+			if (c > ' ' || builder.length() > textStart)
+				builder.append(c);
+		}
+		int textEnd = builder.length();
+		while (textEnd > textStart && builder.charAt(textEnd - 1) <= ' ')
+			textEnd--;
+		builder.setLength(textEnd);
 	}
 
 	/**
 	 * This class contains information return by ScheduleDetail.
+	 * <p>
+	 * An entry is immutable once returned, and refers to nothing but its
+	 * values, not to the ScheduleDetail which parsed it, so entries of whole
+	 * terms can be kept in memory. To keep them small, seats are packed into
+	 * longs, values repeated across sections are shared (see Interner), and
+	 * levels are enums.
 	 * 
 	 * @author Kaiwen Xu (kevin)
 	 */
-	public class ScheduleDetailEntry {
+	public static class ScheduleDetailEntry {
 
 		private String name;
 		private int crn;
@@ -566,18 +1630,21 @@ public class ScheduleDetail implements HttpRequestListener {
 		private String cnbr;
 		private String section;
 		private Term term;
-		private List<String> levels;
+		private List<Level> levels;
 		private String campus;
 		private Type type;
 		private double credits;
-		private Seats seats;
-		private Seats waitlistSeats;
-		private Seats crossistSeats;
+		private long seats = Seats.NONE;
+		private long waitlistSeats = Seats.NONE;
+		private long crosslistSeats = Seats.NONE;
 		private String restrictions;
 		private String prerequisites;
 		private String generalRequirements;
 		private String corequisites;
 
+		/** Text of the values which are UNKNOWN, null if there is none. */
+		private Map<Field, String> unknownValues;
+
 		private int searchCrn;
 		private Term searchTerm;
 
@@ -619,7 +1686,10 @@ public class ScheduleDetail implements HttpRequestListener {
 			return term;
 		}
 
-		public List<String> getLevels() {
+		/**
+		 * @return levels, or null if not set. The list cannot be modified.
+		 */
+		public List<Level> getLevels() {
 			return levels;
 		}
 
@@ -635,16 +1705,20 @@ public class ScheduleDetail implements HttpRequestListener {
 			return credits;
 		}
 
+		/**
+		 * @return seats, or null if not set. A new Seats is returned on each
+		 *         call.
+		 */
 		public Seats getSeats() {
-			return seats;
+			return Seats.unpack(seats);
 		}
 
 		public Seats getWaitlistSeats() {
-			return waitlistSeats;
+			return Seats.unpack(waitlistSeats);
 		}
 
 		public Seats getCrosslistSeats() {
-			return crossistSeats;
+			return Seats.unpack(crosslistSeats);
 		}
 
 		public String getPrerequisites() {
@@ -663,8 +1737,155 @@ public class ScheduleDetail implements HttpRequestListener {
 			return corequisites;
 		}
 
+		/**
+		 * Get the text of a field whose value is unknown to Predefined, i.e.
+		 * the name of a schedule type added after this was released.
+		 * 
+		 * @param field
+		 *            the field.
+		 * @return the text, or null if the value is not UNKNOWN. For levels,
+		 *         the unknown levels separated by ", ".
+		 */
+		public String getUnknownValue(Field field) {
+			return (unknownValues == null) ? null : unknownValues.get(field);
+		}
+
+		/**
+		 * Get a copy of this entry with some fields taken from another entry
+		 * of the same section, i.e. seats fetched again.
+		 * 
+		 * @param fetched
+		 *            entry of the same section.
+		 * @param fields
+		 *            fields to take from fetched.
+		 * @return the copy.
+		 */
+		ScheduleDetailEntry merge(ScheduleDetailEntry fetched, Set<Field> fields) {
+			ScheduleDetailEntry entry = new ScheduleDetailEntry(searchTerm,
+					searchCrn);
+			entry.crn = crn;
+			for (Field field : Field.values())
+				entry.copy(fields.contains(field) ? fetched : this, field);
+			return entry;
+		}
+
+		private void copy(ScheduleDetailEntry from, Field field) {
+			switch (field) {
+			case NAME:
+				name = from.name;
+				break;
+			case SUBJECT:
+				subject = from.subject;
+				break;
+			case CNBR:
+				cnbr = from.cnbr;
+				break;
+			case SECTION:
+				section = from.section;
+				break;
+			case TERM:
+				term = from.term;
+				break;
+			case LEVELS:
+				levels = from.levels;
+				break;
+			case CAMPUS:
+				campus = from.campus;
+				break;
+			case TYPE:
+				type = from.type;
+				break;
+			case CREDITS:
+				credits = from.credits;
+				break;
+			case SEATS:
+				seats = from.seats;
+				break;
+			case WAITLIST_SEATS:
+				waitlistSeats = from.waitlistSeats;
+				break;
+			case CROSSLIST_SEATS:
+				crosslistSeats = from.crosslistSeats;
+				break;
+			case RESTRICTIONS:
+				restrictions = from.restrictions;
+				break;
+			case PREREQUISITES:
+				prerequisites = from.prerequisites;
+				break;
+			case GENERAL_REQUIREMENTS:
+				generalRequirements = from.generalRequirements;
+				break;
+			case COREQUISITES:
+				corequisites = from.corequisites;
+				break;
+			}
+			String unknownValue = from.getUnknownValue(field);
+			if (unknownValue != null) {
+				if (unknownValues == null)
+					unknownValues = new EnumMap<Field, String>(Field.class);
+				unknownValues.put(field, unknownValue);
+			}
+		}
+
+		/**
+		 * Write the entry, to be read back by read().
+		 */
+		void write(DataOutput out) throws IOException {
+			EntryCache.writeEnum(out, searchTerm);
+			out.writeInt(searchCrn);
+			out.writeInt(crn);
+			EntryCache.writeString(out, name);
+			EntryCache.writeEnum(out, subject);
+			EntryCache.writeString(out, cnbr);
+			EntryCache.writeString(out, section);
+			EntryCache.writeEnum(out, term);
+			EntryCache.writeList(out, levels);
+			EntryCache.writeString(out, campus);
+			EntryCache.writeEnum(out, type);
+			out.writeDouble(credits);
+			out.writeLong(seats);
+			out.writeLong(waitlistSeats);
+			out.writeLong(crosslistSeats);
+			EntryCache.writeString(out, restrictions);
+			EntryCache.writeString(out, prerequisites);
+			EntryCache.writeString(out, generalRequirements);
+			EntryCache.writeString(out, corequisites);
+			EntryCache.writeStringMap(out, unknownValues);
+		}
+
+		/**
+		 * Read an entry written by write().
+		 */
+		static ScheduleDetailEntry read(DataInput in) throws IOException {
+			ScheduleDetailEntry entry = new ScheduleDetailEntry(
+					EntryCache.readEnum(in, Term.class), in.readInt());
+			entry.crn = in.readInt();
+			entry.name = Interner.intern(EntryCache.readString(in));
+			entry.subject = EntryCache.readEnum(in, Subject.class);
+			entry.cnbr = Interner.intern(EntryCache.readString(in));
+			entry.section = Interner.intern(EntryCache.readString(in));
+			entry.term = EntryCache.readEnum(in, Term.class);
+			entry.levels = Interner.intern(EntryCache.readEnumList(in,
+					Level.class));
+			entry.campus = Interner.intern(EntryCache.readString(in));
+			entry.type = EntryCache.readEnum(in, Type.class);
+			entry.credits = in.readDouble();
+			entry.seats = in.readLong();
+			entry.waitlistSeats = in.readLong();
+			entry.crosslistSeats = in.readLong();
+			entry.restrictions = Interner.intern(EntryCache.readString(in));
+			entry.prerequisites = Interner.intern(EntryCache.readString(in));
+			entry.generalRequirements = Interner.intern(EntryCache
+					.readString(in));
+			entry.corequisites = Interner.intern(EntryCache.readString(in));
+			entry.unknownValues = EntryCache.readStringMap(in, Field.class);
+			return entry;
+		}
+
 		private void setName(String name) {
-			this.name = StringEscapeUtils.unescapeHtml(name).trim();
+			this.name = Interner.intern(StringEscapeUtils.unescapeHtml(name)
+					.trim());
 		}
 
 		private void setCrn(int crn) {
@@ -676,23 +1897,25 @@ public class ScheduleDetail implements HttpRequestListener {
 		}
 
 		private void setCnbr(String cnbr) {
-			this.cnbr = cnbr;
+			this.cnbr = Interner.intern(cnbr);
 		}
 
 		private void setSection(String section) {
-			this.section = StringEscapeUtils.unescapeHtml(section).trim();
+			this.section = Interner.intern(StringEscapeUtils.unescapeHtml(
+					section).trim());
 		}
 
 		private void setTerm(Term term) {
 			this.term = term;
 		}
 
-		private void setLevels(List<String> levels) {
-			this.levels = levels;
+		private void setLevels(List<Level> levels) {
+			this.levels = Interner.intern(levels);
 		}
 
 		private void setCampus(String campus) {
-			this.campus = StringEscapeUtils.unescapeHtml(campus).trim();
+			this.campus = Interner.intern(StringEscapeUtils.unescapeHtml(campus)
+					.trim());
 		}
 
 		private void setType(Type type) {
@@ -704,35 +1927,42 @@ public class ScheduleDetail implements HttpRequestListener {
 		}
 
 		private void setSeats(Seats seats) {
-			this.seats = seats;
+			this.seats = Seats.pack(seats);
 		}
 
 		private void setWaitlistSeats(Seats waitlistSeats) {
-			this.waitlistSeats = waitlistSeats;
+			this.waitlistSeats = Seats.pack(waitlistSeats);
 		}
 
 		private void setCrosslistSeats(Seats crosslistSeats) {
-			this.crossistSeats = crosslistSeats;
+			this.crosslistSeats = Seats.pack(crosslistSeats);
 		}
 
 		private void setPrerequisites(String prerequisites) {
-			this.prerequisites = StringEscapeUtils.unescapeHtml(prerequisites)
-					.trim();
+			this.prerequisites = Interner.intern(StringEscapeUtils
+					.unescapeHtml(prerequisites).trim());
 		}
 
 		private void setRestrictions(String restrictions) {
-			this.restrictions = StringEscapeUtils.unescapeHtml(restrictions)
-					.trim();
+			this.restrictions = Interner.intern(StringEscapeUtils
+					.unescapeHtml(restrictions).trim());
 		}
 
 		private void setGeneralRequirements(String generalRequirements) {
-			this.generalRequirements = Utilities
+			this.generalRequirements = Interner.intern(Utilities
 					.shrinkContentInParentheses(StringEscapeUtils.unescapeHtml(
-							generalRequirements).trim());
+							generalRequirements).trim()));
 		}
 
 		private void setCorequisites(String corequisites) {
-			this.corequisites = corequisites.trim();
+			this.corequisites = Interner.intern(corequisites.trim());
+		}
+
+		private void setUnknownValue(Field field, String text) {
+			if (unknownValues == null)
+				unknownValues = new EnumMap<Field, String>(Field.class);
+			unknownValues.put(field, Interner.intern(StringEscapeUtils
+					.unescapeHtml(text).trim()));
 		}
 
 		@Override
@@ -742,12 +1972,14 @@ public class ScheduleDetail implements HttpRequestListener {
 					+ "Section: " + section + "\n" + "Term: " + term + "\n"
 					+ "Levels: " + levels + "\n" + "Campus: " + campus + "\n"
 					+ "Type: " + type + "\n" + "Credits: " + credits + "\n"
-					+ "Seats: " + seats + "\n" + "Waitlist Seats: "
-					+ waitlistSeats + "\n" + "Crosslist Seats: "
-					+ crossistSeats + "\n" + "Restrictions: " + restrictions
-					+ "\n" + "Prerequisites: " + prerequisites + "\n"
-					+ "General Requirements: " + generalRequirements + "\n"
-					+ "Corequisites: " + corequisites + "\n";
+					+ "Seats: " + getSeats() + "\n" + "Waitlist Seats: "
+					+ getWaitlistSeats() + "\n" + "Crosslist Seats: "
+					+ getCrosslistSeats() + "\n" + "Restrictions: "
+					+ restrictions + "\n" + "Prerequisites: " + prerequisites
+					+ "\n" + "General Requirements: " + generalRequirements
+					+ "\n" + "Corequisites: " + corequisites + "\n"
+					+ ((unknownValues == null) ? "" : "Unknown Values: "
+							+ unknownValues + "\n");
 		}
 	}
 
@@ -0,0 +1,156 @@
+/*
+ * ScheduleDetailCache.java
+ * 
+ * Released under Apache License 2.0.
+ */
+
+package net.kevxu.purdueassist.course;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.kevxu.purdueassist.course.ScheduleDetail.Field;
+import net.kevxu.purdueassist.course.ScheduleDetail.ScheduleDetailEntry;
+import net.kevxu.purdueassist.course.elements.Predefined.Term;
+import net.kevxu.purdueassist.course.elements.SectionKey;
+import net.kevxu.purdueassist.course.shared.Outcome;
+import net.kevxu.purdueassist.shared.httpclient.HttpClientAsyncFactory;
+import net.kevxu.purdueassist.shared.httpclient.PooledHttpClientAsync;
+
+/**
+ * Cache of schedule detail entries, see EntryCache.
+ * <p>
+ * The seats, waitlist seats and crosslist seats are of Freshness.SEATS; the
+ * restrictions, prerequisites, general requirements and corequisites, set in
+ * the catalog, of Freshness.TERM; the other fields of Freshness.DETAILS. A
+ * section whose details are fresh only has its seats fetched again, which
+ * reads them straight from the page bytes. Entries are saved as
+ * TERM_CRN.entry, i.e. FALL2012_10248.entry.
+ */
+public class ScheduleDetailCache extends
+		EntryCache<SectionKey, ScheduleDetailEntry, Field> {
+
+	private final HttpClientAsyncFactory mHttpClientFactory;
+
+	/** ScheduleDetail requesting each set of fields fetched. */
+	private final ConcurrentMap<Set<Field>, ScheduleDetail> mDetails = new ConcurrentHashMap<Set<Field>, ScheduleDetail>();
+
+	/**
+	 * Same as ScheduleDetailCache(heapSize, directory,
+	 * PooledHttpClientAsync.FACTORY).
+	 */
+	public ScheduleDetailCache(int heapSize, File directory) {
+		this(heapSize, directory, PooledHttpClientAsync.FACTORY);
+	}
+
+	/**
+	 * Constructor. The entries saved last in the directory are read into
+	 * memory.
+	 * 
+	 * @param heapSize
+	 *            number of entries kept in memory.
+	 * @param directory
+	 *            directory of the entries on disk, or null to keep them in
+	 *            memory only.
+	 * @param httpClientFactory
+	 *            creates the HTTP clients the entries are fetched with.
+	 */
+	public ScheduleDetailCache(int heapSize, File directory,
+			HttpClientAsyncFactory httpClientFactory) {
+		super(Field.class, heapSize, directory);
+		this.mHttpClientFactory = httpClientFactory;
+		warm();
+	}
+
+	/**
+	 * Get the entry of a section, fetching the fields which are not cached or
+	 * stale.
+	 * 
+	 * @param term
+	 *            School term. If it's null, current school term will be used.
+	 * @param crn
+	 *            CRN number of course.
+	 * @return future completed with the outcome, never exceptionally.
+	 */
+	public CompletableFuture<Outcome<ScheduleDetailEntry>> get(Term term,
+			int crn) {
+		return lookUp(new SectionKey(term, crn));
+	}
+
+	@Override
+	protected Freshness freshnessOf(Field field) {
+		switch (field) {
+		case SEATS:
+		case WAITLIST_SEATS:
+		case CROSSLIST_SEATS:
+			return Freshness.SEATS;
+		case RESTRICTIONS:
+		case PREREQUISITES:
+		case GENERAL_REQUIREMENTS:
+		case COREQUISITES:
+			return Freshness.TERM;
+		default:
+			return Freshness.DETAILS;
+		}
+	}
+
+	@Override
+	protected CompletableFuture<Outcome<ScheduleDetailEntry>> fetch(
+			SectionKey section, Set<Field> fields) {
+		ScheduleDetail detail = mDetails.get(fields);
+		if (detail == null) {
+			detail = new ScheduleDetail(null, mHttpClientFactory);
+			detail.setFields(EnumSet.copyOf(fields));
+			ScheduleDetail existing = mDetails.putIfAbsent(
+					EnumSet.copyOf(fields), detail);
+			if (existing != null)
+				detail = existing;
+		}
+		return detail.getOutcome(section.getTerm(), section.getCrn());
+	}
+
+	@Override
+	protected ScheduleDetailEntry merge(ScheduleDetailEntry cached,
+			ScheduleDetailEntry fetched, Set<Field> fields) {
+		return cached.merge(fetched, fields);
+	}
+
+	@Override
+	protected String fileNameOf(SectionKey section) {
+		return section.getTerm().name() + "_" + section.getCrn();
+	}
+
+	@Override
+	protected SectionKey keyOf(String fileName) {
+		String[] key = fileName.split("_");
+		if (key.length != 2)
+			return null;
+		Term term = Term.lookup(key[0]);
+		if (term == Term.UNKNOWN)
+			return null;
+		try {
+			return new SectionKey(term, Integer.valueOf(key[1]));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	@Override
+	protected void writeEntry(ScheduleDetailEntry entry, DataOutput out)
+			throws IOException {
+		entry.write(out);
+	}
+
+	@Override
+	protected ScheduleDetailEntry readEntry(DataInput in) throws IOException {
+		return ScheduleDetailEntry.read(in);
+	}
+
+}
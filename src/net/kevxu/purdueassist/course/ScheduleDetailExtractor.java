@@ -0,0 +1,809 @@
+/*
+ * ScheduleDetailExtractor.java
+ * 
+ * Released under Apache License 2.0.
+ */
+
+package net.kevxu.purdueassist.course;
+
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.kevxu.purdueassist.course.shared.HtmlTokenizer;
+import net.kevxu.purdueassist.course.shared.HtmlTokenizer.TokenType;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.parser.Tag;
+import org.jsoup.select.Elements;
+
+/**
+ * Extracts the strings ScheduleDetail reads from a schedule detail page: the
+ * title of each detail table, the rows of its seat table, the HTML of the
+ * rest of its detail cell, and the text of the message tables.
+ * <p>
+ * They can be taken either from a Jsoup Document, or directly from the
+ * HtmlTokenizer token stream in one forward pass, without building a tree.
+ * The streaming extractor reproduces what Jsoup would build and print, i.e.
+ * implied tbody and tr elements, whitespace normalization and entity
+ * escaping, so both give the same strings. Within the tables it only follows
+ * the tree construction rules seen on well-formed pages, and throws
+ * UnsupportedLayoutException when the markup needs any other rule, in which
+ * case the page should be parsed into a Document instead.
+ */
+class ScheduleDetailExtractor {
+
+	/**
+	 * Strings of one detail table.
+	 */
+	static class DetailTable {
+		/** Text of the first "ddlabel" element, or null if there is none. */
+		String mBasicInfo = null;
+		/**
+		 * HTML of the first "dddefault" element without its seat tables, or
+		 * null if there is none.
+		 */
+		String mRemainingInfoHtml = null;
+		/** Number of seat tables in the "dddefault" element. */
+		int mSeatTableCount = 0;
+		/**
+		 * Text of each row of the only seat table, or null if it has no
+		 * body or there is not exactly one seat table.
+		 */
+		List<String> mSeatRows = null;
+	}
+
+	/**
+	 * Strings of a whole page.
+	 */
+	static class Page {
+		final List<DetailTable> mDetailTables = new ArrayList<DetailTable>();
+		/** Text of the message tables, or null if there is none. */
+		String mMessage = null;
+	}
+
+	/**
+	 * Thrown when the page needs tree construction rules the streaming
+	 * extractor does not follow.
+	 */
+	static class UnsupportedLayoutException extends Exception {
+
+		private static final long serialVersionUID = 4911405730265283720L;
+
+		public UnsupportedLayoutException(String message) {
+			super(message);
+		}
+	}
+
+	/** Elements Jsoup closes right away. */
+	private static final Set<String> VOID_TAGS = new HashSet<String>(
+			Arrays.asList("area", "base", "basefont", "bgsound", "br",
+					"command", "embed", "hr", "img", "input", "keygen",
+					"link", "meta", "param", "source", "track", "wbr"));
+	/** Elements with insertion rules not followed within the tables. */
+	private static final Set<String> UNSUPPORTED_TAGS = new HashSet<String>(
+			Arrays.asList("body", "col", "colgroup", "form", "frame",
+					"frameset", "head", "html", "image", "isindex",
+					"listing", "math", "optgroup", "option", "plaintext",
+					"pre", "select", "svg", "textarea"));
+	/** Elements Jsoup may leave out of the tree. */
+	private static final Set<String> IGNORABLE_TAGS = new HashSet<String>(
+			Arrays.asList("body", "caption", "col", "colgroup", "frame",
+					"head", "html", "tbody", "td", "tfoot", "th", "thead",
+					"tr"));
+	/** Elements holding raw text. */
+	private static final Set<String> RAW_TEXT_TAGS = new HashSet<String>(
+			Arrays.asList("iframe", "noembed", "noframes", "script", "style",
+					"textarea", "title", "xmp"));
+	/** Elements closing an open element of the same kind. */
+	private static final Set<String> SELF_NESTING_TAGS = new HashSet<String>(
+			Arrays.asList("a", "button", "dd", "dt", "li", "nobr"));
+	private static final Set<String> HEADING_TAGS = new HashSet<String>(
+			Arrays.asList("h1", "h2", "h3", "h4", "h5", "h6"));
+	private static final Set<String> TABLE_TAGS = new HashSet<String>(
+			Arrays.asList("table", "tbody", "thead", "tfoot", "tr"));
+	private static final Set<String> SECTION_TAGS = new HashSet<String>(
+			Arrays.asList("tbody", "thead", "tfoot"));
+	private static final Set<String> CELL_TAGS = new HashSet<String>(
+			Arrays.asList("td", "th"));
+
+	/** Entities Jsoup escapes characters below 256 to. */
+	private static final String[] sEscapes = new String[256];
+
+	static {
+		for (int c = 0; c < sEscapes.length; c++) {
+			String html = new TextNode(String.valueOf((char) c), "")
+					.outerHtml();
+			if (html.length() > 1 && html.charAt(0) == '&')
+				sEscapes[c] = html;
+		}
+	}
+
+	/**
+	 * Get the strings of a detail table from a Document.
+	 * 
+	 * @param tableElement
+	 *            detail table. Its seat tables are removed.
+	 * @param seats
+	 *            whether the seat rows are needed.
+	 * @param remainingInfo
+	 *            whether the HTML of the detail cell is needed. If not, it is
+	 *            empty.
+	 * @return strings of the table.
+	 */
+	static DetailTable extract(Element tableElement, boolean seats,
+			boolean remainingInfo) {
+		DetailTable table = new DetailTable();
+
+		Element basicInfoElement = tableElement.getElementsByClass("ddlabel")
+				.first();
+		if (basicInfoElement != null)
+			table.mBasicInfo = basicInfoElement.text();
+
+		Element detailedInfoElement = tableElement.getElementsByClass(
+				"dddefault").first();
+		if (detailedInfoElement != null) {
+			Elements seatElements = detailedInfoElement
+					.getElementsByAttributeValue("summary",
+							ScheduleDetail.SEAT_TABLE_SUMMARY);
+			table.mSeatTableCount = seatElements.size();
+			if (seats && seatElements.size() == 1) {
+				Element bodyElement = seatElements.first()
+						.getElementsByTag("tbody").first();
+				if (bodyElement != null) {
+					table.mSeatRows = new ArrayList<String>();
+					for (Element rowElement : bodyElement.children()) {
+						table.mSeatRows.add(rowElement.text());
+					}
+				}
+			}
+			if (remainingInfo) {
+				// remove the seat info from detailed info
+				seatElements.remove();
+				table.mRemainingInfoHtml = detailedInfoElement.html();
+			} else {
+				table.mRemainingInfoHtml = "";
+			}
+		}
+
+		return table;
+	}
+
+	/**
+	 * Get the strings of a page without building a Document.
+	 * 
+	 * @param html
+	 *            page, or the fragment of it holding the tables.
+	 * @param charset
+	 *            charset the page was decoded with. Characters it cannot
+	 *            encode are escaped in the HTML returned, as Jsoup does.
+	 * @param seats
+	 *            whether the seat rows are needed.
+	 * @param remainingInfo
+	 *            whether the HTML of the detail cells is needed. If not, it is
+	 *            empty and not written at all.
+	 * @return strings of the page.
+	 * @throws UnsupportedLayoutException
+	 */
+	static Page extract(String html, String charset, boolean seats,
+			boolean remainingInfo) throws UnsupportedLayoutException {
+		if (html.indexOf('\u0000') >= 0)
+			throw new UnsupportedLayoutException("Null character.");
+		return new ScheduleDetailExtractor(charset, seats, remainingInfo)
+				.run(new HtmlTokenizer(html));
+	}
+
+	/**
+	 * Element open at some point of the token stream.
+	 */
+	private static class Frame {
+		final String mName;
+		final Tag mTag;
+		final Frame mParent;
+		final int mLevel;
+		final boolean mPreserveWhitespace;
+		/** Within a detail or message table. */
+		boolean mInTable;
+		/** Has children in the HTML being written. */
+		boolean mHasChildren = false;
+		boolean mSeatTable = false;
+
+		public Frame(String name, Frame parent) {
+			this.mName = name;
+			this.mTag = Tag.valueOf(name);
+			this.mParent = parent;
+			this.mLevel = (parent == null) ? 0 : parent.mLevel + 1;
+			this.mPreserveWhitespace = mTag.preserveWhitespace()
+					|| (parent != null && parent.mPreserveWhitespace);
+			this.mInTable = parent != null && parent.mInTable;
+		}
+	}
+
+	/**
+	 * Text of an element, as returned by Element.text().
+	 */
+	private static class TextCapture {
+		final Frame mRoot;
+		final StringBuilder mText = new StringBuilder();
+		String mResult = null;
+
+		public TextCapture(Frame root) {
+			this.mRoot = root;
+			if (root.mName.equals("br"))
+				mText.append(' ');
+		}
+
+		void element(Frame frame) {
+			if (mText.length() > 0 && frame.mTag.isBlock() && !endsWithSpace())
+				mText.append(' ');
+			if (frame.mName.equals("br") && !endsWithSpace())
+				mText.append(' ');
+		}
+
+		void text(String text, boolean preserveWhitespace) {
+			if (!preserveWhitespace) {
+				text = normaliseWhitespace(text);
+				if (endsWithSpace())
+					text = stripLeadingWhitespace(text);
+			}
+			mText.append(text);
+		}
+
+		void finish() {
+			mResult = mText.toString().trim();
+		}
+
+		private boolean endsWithSpace() {
+			return mText.length() != 0
+					&& mText.charAt(mText.length() - 1) == ' ';
+		}
+	}
+
+	private final CharsetEncoder mEncoder;
+	private final boolean mSeats;
+	private final boolean mRemainingInfo;
+	private final Page mPage = new Page();
+
+	private Frame mTop = null;
+	private final List<TextCapture> mCaptures = new ArrayList<TextCapture>();
+	private final List<TextCapture> mMessageCaptures = new ArrayList<TextCapture>();
+
+	private Frame mDetailFrame = null;
+	private DetailTable mDetailTable = null;
+	private TextCapture mBasicInfoCapture = null;
+
+	private Frame mCellFrame = null;
+	private StringBuilder mHtml = null;
+	private int mSeatTableDepth = 0;
+	private boolean mSeatTableFound = false;
+	private Frame mSeatFrame = null;
+	private boolean mSeatBodyFound = false;
+	private Frame mSeatBodyFrame = null;
+	private List<TextCapture> mSeatRowCaptures = null;
+
+	private ScheduleDetailExtractor(String charset, boolean seats,
+			boolean remainingInfo) {
+		this.mEncoder = Charset.forName(charset).newEncoder();
+		this.mSeats = seats;
+		this.mRemainingInfo = remainingInfo;
+	}
+
+	private Page run(HtmlTokenizer tokenizer)
+			throws UnsupportedLayoutException {
+		TokenType type;
+		while ((type = tokenizer.next()) != TokenType.EOF) {
+			switch (type) {
+			case START_TAG:
+				startTag(tokenizer.getTagName(), tokenizer.getAttributes(),
+						tokenizer.isSelfClosing());
+				break;
+			case END_TAG:
+				endTag(tokenizer.getTagName());
+				break;
+			case TEXT:
+				text(tokenizer.getText());
+				break;
+			case DATA:
+				data(tokenizer.getText());
+				break;
+			case COMMENT:
+				comment(tokenizer.getText());
+				break;
+			default:
+				break;
+			}
+		}
+		// like Jsoup, close whatever is still open
+		while (mTop != null) {
+			pop();
+		}
+
+		if (!mMessageCaptures.isEmpty()) {
+			StringBuilder message = new StringBuilder();
+			for (TextCapture capture : mMessageCaptures) {
+				if (message.length() != 0)
+					message.append(" ");
+				message.append(capture.mResult);
+			}
+			mPage.mMessage = message.toString();
+		}
+		return mPage;
+	}
+
+	private void startTag(String name, Map<String, String> attributes,
+			boolean selfClosing) throws UnsupportedLayoutException {
+		if (mTop == null || !mTop.mInTable) {
+			// outside of the tables only the stack of open elements matters
+			if (name.equals("html") || name.equals("head")
+					|| name.equals("body"))
+				return;
+			push(name, attributes, VOID_TAGS.contains(name));
+			return;
+		}
+
+		if (name.trim().length() != name.length())
+			throw new UnsupportedLayoutException("Element name \"" + name
+					+ "\".");
+		if (TABLE_TAGS.contains(mTop.mName)) {
+			startTableTag(name, attributes);
+			return;
+		}
+
+		Frame context = contextOf(mTop);
+		if (context == null || TABLE_TAGS.contains(context.mName))
+			throw new UnsupportedLayoutException("Element " + name
+					+ " outside of a table cell.");
+
+		if (CELL_TAGS.contains(name) || TABLE_TAGS.contains(name)
+				&& !name.equals("table") || name.equals("caption")) {
+			// implied end of the cell
+			if (mTop != context || !CELL_TAGS.contains(context.mName))
+				throw new UnsupportedLayoutException("Element " + name
+						+ " closing " + mTop.mName + ".");
+			pop();
+			startTableTag(name, attributes);
+			return;
+		}
+
+		if (UNSUPPORTED_TAGS.contains(name)
+				|| (selfClosing && !VOID_TAGS.contains(name))
+				|| (Tag.valueOf(name).isEmpty() && !VOID_TAGS.contains(name)))
+			throw new UnsupportedLayoutException("Element " + name + ".");
+		if (HEADING_TAGS.contains(name) && HEADING_TAGS.contains(mTop.mName))
+			throw new UnsupportedLayoutException("Element " + name
+					+ " closing " + mTop.mName + ".");
+		if (name.equals("p") || SELF_NESTING_TAGS.contains(name)
+				|| Tag.valueOf(name).isBlock()) {
+			for (Frame frame = mTop; frame != context; frame = frame.mParent) {
+				if (frame.mName.equals("p")
+						|| (SELF_NESTING_TAGS.contains(name) && SELF_NESTING_TAGS
+								.contains(frame.mName)))
+					throw new UnsupportedLayoutException("Element " + name
+							+ " closing " + frame.mName + ".");
+			}
+		}
+
+		push(name, attributes, VOID_TAGS.contains(name));
+	}
+
+	/**
+	 * Start tag in a table, outside of cells.
+	 */
+	private void startTableTag(String name, Map<String, String> attributes)
+			throws UnsupportedLayoutException {
+		Map<String, String> none = null;
+		if (CELL_TAGS.contains(name)) {
+			if (mTop.mName.equals("table"))
+				push("tbody", none, false);
+			if (SECTION_TAGS.contains(mTop.mName))
+				push("tr", none, false);
+		} else if (name.equals("tr")) {
+			if (mTop.mName.equals("tr"))
+				pop();
+			if (mTop.mName.equals("table"))
+				push("tbody", none, false);
+		} else if (SECTION_TAGS.contains(name) || name.equals("caption")) {
+			if (mTop.mName.equals("tr"))
+				pop();
+			if (SECTION_TAGS.contains(mTop.mName))
+				pop();
+		} else if (!name.equals("script") && !name.equals("style")) {
+			// Jsoup would move it out of the table
+			throw new UnsupportedLayoutException("Element " + name
+					+ " in table.");
+		}
+		if (!name.equals("script") && !name.equals("style")
+				&& !TABLE_TAGS.contains(mTop.mName))
+			throw new UnsupportedLayoutException("Element " + name + " in "
+					+ mTop.mName + ".");
+		push(name, attributes, false);
+	}
+
+	private void endTag(String name) throws UnsupportedLayoutException {
+		if (mTop == null)
+			return;
+		if (!mTop.mInTable) {
+			for (Frame frame = mTop; frame != null; frame = frame.mParent) {
+				if (frame.mName.equals(name)) {
+					while (pop() != frame)
+						;
+					return;
+				}
+			}
+			return;
+		}
+
+		if (mTop.mName.equals(name)) {
+			pop();
+			return;
+		}
+		if (name.trim().length() != name.length() || name.equals("br")
+				|| name.equals("p") || name.equals("body")
+				|| name.equals("html"))
+			throw new UnsupportedLayoutException("End tag " + name + ".");
+
+		Frame target = null;
+		for (Frame frame = mTop; frame != null && frame.mInTable;
+				frame = frame.mParent) {
+			if (frame.mName.equals(name)) {
+				target = frame;
+				break;
+			}
+		}
+		if (target == null) {
+			// stray end tag, ignored
+			return;
+		}
+
+		// implied end tags
+		for (Frame frame = mTop; frame != target; frame = frame.mParent) {
+			boolean implied;
+			if (name.equals("table")) {
+				implied = TABLE_TAGS.contains(frame.mName)
+						|| CELL_TAGS.contains(frame.mName)
+						|| frame.mName.equals("caption");
+			} else if (SECTION_TAGS.contains(name)) {
+				implied = frame.mName.equals("tr")
+						|| CELL_TAGS.contains(frame.mName);
+			} else if (name.equals("tr")) {
+				implied = CELL_TAGS.contains(frame.mName);
+			} else {
+				implied = false;
+			}
+			if (!implied)
+				throw new UnsupportedLayoutException("End tag " + name
+						+ " closing " + frame.mName + ".");
+		}
+		while (pop() != target)
+			;
+	}
+
+	private void text(String text) throws UnsupportedLayoutException {
+		if (mTop == null || !mTop.mInTable)
+			return;
+		checkRawText(text);
+		if (TABLE_TAGS.contains(mTop.mName) && !isBlank(text))
+			throw new UnsupportedLayoutException("Text in "
+					+ mTop.mName + ".");
+
+		for (TextCapture capture : mCaptures) {
+			capture.text(text, mTop.mPreserveWhitespace);
+		}
+		if (isWriting()) {
+			boolean first = !mTop.mHasChildren;
+			mTop.mHasChildren = true;
+			String html = escape(text);
+			if (!mTop.mPreserveWhitespace)
+				html = normaliseWhitespace(html);
+			if (first && mTop.mTag.formatAsBlock() && !isBlank(text))
+				indent(mTop.mLevel - mCellFrame.mLevel);
+			mHtml.append(html);
+		}
+	}
+
+	private void data(String data) throws UnsupportedLayoutException {
+		if (mTop != null && mTop.mInTable)
+			checkRawText(data);
+		if (isWriting()) {
+			mTop.mHasChildren = true;
+			mHtml.append(data);
+		}
+	}
+
+	/**
+	 * Jsoup drops characters after "</" in raw text, unless it starts the end
+	 * tag, and does not end scripts in "<!--" at the expected place.
+	 */
+	private void checkRawText(String text) throws UnsupportedLayoutException {
+		if (RAW_TEXT_TAGS.contains(mTop.mName)
+				&& (text.contains("</") || text.contains("<!--")))
+			throw new UnsupportedLayoutException("Markup in " + mTop.mName
+					+ ".");
+	}
+
+	private void comment(String comment) {
+		if (isWriting()) {
+			mTop.mHasChildren = true;
+			indent(mTop.mLevel - mCellFrame.mLevel);
+			mHtml.append("<!--").append(comment).append("-->");
+		}
+	}
+
+	private Frame push(String name, Map<String, String> attributes,
+			boolean isVoid) throws UnsupportedLayoutException {
+		Frame parent = mTop;
+		Frame frame = new Frame(name, parent);
+		String summary = (attributes == null) ? null : attributes
+				.get("summary");
+
+		for (TextCapture capture : mCaptures) {
+			capture.element(frame);
+		}
+
+		if (mCellFrame != null) {
+			if (ScheduleDetail.SEAT_TABLE_SUMMARY.equalsIgnoreCase(summary)) {
+				mDetailTable.mSeatTableCount++;
+				if (!mSeatTableFound) {
+					mSeatTableFound = true;
+					mSeatFrame = frame;
+				}
+				// left out of the HTML, like the seat tables removed from
+				// the Document
+				frame.mSeatTable = true;
+				mSeatTableDepth++;
+			} else if (isWriting()) {
+				parent.mHasChildren = true;
+				writeStartTag(frame, attributes);
+			}
+		}
+
+		if (mSeats && mSeatFrame != null && !mSeatBodyFound
+				&& name.equals("tbody")) {
+			mSeatBodyFound = true;
+			mSeatBodyFrame = frame;
+			mSeatRowCaptures = new ArrayList<TextCapture>();
+		} else if (mSeatBodyFrame != null && parent == mSeatBodyFrame) {
+			TextCapture capture = new TextCapture(frame);
+			mSeatRowCaptures.add(capture);
+			mCaptures.add(capture);
+		}
+
+		if (mDetailFrame != null) {
+			if (mBasicInfoCapture == null && hasClass(attributes, "ddlabel")) {
+				mBasicInfoCapture = new TextCapture(frame);
+				mCaptures.add(mBasicInfoCapture);
+			}
+			if (mHtml == null && hasClass(attributes, "dddefault")) {
+				mCellFrame = frame;
+				mHtml = new StringBuilder();
+			}
+		}
+
+		boolean detailTable = ScheduleDetail.DETAIL_TABLE_SUMMARY
+				.equalsIgnoreCase(summary);
+		boolean messageTable = ScheduleDetail.MESSAGE_TABLE_SUMMARY
+				.equalsIgnoreCase(summary);
+		if ((detailTable || messageTable)
+				&& (IGNORABLE_TAGS.contains(name) || name.trim().length() != name
+						.length()))
+			throw new UnsupportedLayoutException("Table summary on " + name
+					+ ".");
+
+		if (detailTable) {
+			if (mDetailFrame != null)
+				throw new UnsupportedLayoutException("Nested detail table.");
+			if (hasClass(attributes, "ddlabel")
+					|| hasClass(attributes, "dddefault"))
+				throw new UnsupportedLayoutException(
+						"Detail table with cell class.");
+			frame.mInTable = true;
+			mDetailFrame = frame;
+			mDetailTable = new DetailTable();
+			mBasicInfoCapture = null;
+			mHtml = null;
+			mSeatTableFound = false;
+			mSeatBodyFound = false;
+			mPage.mDetailTables.add(mDetailTable);
+		}
+		if (messageTable) {
+			frame.mInTable = true;
+			TextCapture capture = new TextCapture(frame);
+			mMessageCaptures.add(capture);
+			mCaptures.add(capture);
+		}
+
+		mTop = frame;
+		if (isVoid)
+			pop();
+		return frame;
+	}
+
+	private Frame pop() throws UnsupportedLayoutException {
+		Frame frame = mTop;
+		if (frame.mName.equals("table") && frame.mParent != null
+				&& frame.mParent.mInTable) {
+			// Jsoup then handles the rest of a th cell as if it was in a row
+			Frame context = contextOf(frame.mParent);
+			if (context != null && context.mName.equals("th"))
+				throw new UnsupportedLayoutException("Table in th.");
+		}
+
+		for (int i = mCaptures.size() - 1; i >= 0; i--) {
+			TextCapture capture = mCaptures.get(i);
+			if (capture.mRoot == frame) {
+				capture.finish();
+				mCaptures.remove(i);
+				if (capture == mBasicInfoCapture)
+					mDetailTable.mBasicInfo = capture.mResult;
+			}
+		}
+
+		if (mCellFrame != null) {
+			if (frame == mCellFrame) {
+				mDetailTable.mRemainingInfoHtml = mHtml.toString().trim();
+				mCellFrame = null;
+			} else if (frame.mSeatTable) {
+				mSeatTableDepth--;
+			} else if (isWriting()) {
+				writeEndTag(frame);
+			}
+		}
+		if (frame == mSeatFrame) {
+			mSeatFrame = null;
+		}
+		if (frame == mSeatBodyFrame) {
+			if (mDetailTable.mSeatRows == null) {
+				mDetailTable.mSeatRows = new ArrayList<String>();
+				for (TextCapture capture : mSeatRowCaptures) {
+					mDetailTable.mSeatRows.add(capture.mResult);
+				}
+			}
+			mSeatBodyFrame = null;
+		}
+		if (frame == mDetailFrame) {
+			if (mDetailTable.mSeatTableCount != 1)
+				mDetailTable.mSeatRows = null;
+			mDetailFrame = null;
+		}
+
+		mTop = frame.mParent;
+		return frame;
+	}
+
+	private boolean isWriting() {
+		return mRemainingInfo && mCellFrame != null && mSeatTableDepth == 0;
+	}
+
+	private void writeStartTag(Frame frame, Map<String, String> attributes) {
+		int depth = frame.mLevel - mCellFrame.mLevel - 1;
+		if (mHtml.length() > 0
+				&& (frame.mTag.formatAsBlock() || frame.mParent.mTag
+						.formatAsBlock()))
+			indent(depth);
+		mHtml.append('<').append(frame.mName);
+		if (attributes != null) {
+			for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+				mHtml.append(' ').append(attribute.getKey()).append("=\"")
+						.append(escape(attribute.getValue())).append('"');
+			}
+		}
+		mHtml.append(VOID_TAGS.contains(frame.mName)
+				&& frame.mTag.isSelfClosing() ? " />" : ">");
+	}
+
+	private void writeEndTag(Frame frame) {
+		if (!frame.mHasChildren && frame.mTag.isSelfClosing())
+			return;
+		if (frame.mHasChildren && frame.mTag.formatAsBlock())
+			indent(frame.mLevel - mCellFrame.mLevel - 1);
+		mHtml.append("</").append(frame.mName).append('>');
+	}
+
+	private void indent(int depth) {
+		mHtml.append('\n');
+		for (int i = 0; i < depth; i++) {
+			mHtml.append(' ');
+		}
+	}
+
+	private String escape(String string) {
+		StringBuilder escaped = null;
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			String replacement;
+			if (c < sEscapes.length && sEscapes[c] != null) {
+				replacement = sEscapes[c];
+			} else if (c < 0x80 || mEncoder.canEncode(c)) {
+				if (escaped != null)
+					escaped.append(c);
+				continue;
+			} else {
+				replacement = "&#" + (int) c + ";";
+			}
+			if (escaped == null)
+				escaped = new StringBuilder(string.length() + 16).append(
+						string, 0, i);
+			escaped.append(replacement);
+		}
+		return (escaped == null) ? string : escaped.toString();
+	}
+
+	/**
+	 * @return closest table, table part, cell or caption from the frame up.
+	 */
+	private static Frame contextOf(Frame frame) {
+		while (frame != null && !frame.mName.equals("caption")
+				&& !CELL_TAGS.contains(frame.mName)
+				&& !TABLE_TAGS.contains(frame.mName))
+			frame = frame.mParent;
+		return frame;
+	}
+
+	private static boolean hasClass(Map<String, String> attributes,
+			String className) {
+		String classNames = (attributes == null) ? null : attributes
+				.get("class");
+		if (classNames == null)
+			return false;
+		for (String name : classNames.split("\\s+")) {
+			if (className.equalsIgnoreCase(name))
+				return true;
+		}
+		return false;
+	}
+
+	private static boolean isWhitespace(int c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+	}
+
+	private static boolean isBlank(String string) {
+		for (int i = 0; i < string.length(); i++) {
+			if (!isWhitespace(string.codePointAt(i)))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Same as Jsoup's StringUtil.normaliseWhitespace(), including the way it
+	 * walks over surrogate pairs.
+	 */
+	private static String normaliseWhitespace(String string) {
+		StringBuilder normalised = new StringBuilder(string.length());
+		boolean lastWasWhite = false;
+		boolean modified = false;
+		for (int i = 0; i < string.length(); i++) {
+			int c = string.codePointAt(i);
+			if (isWhitespace(c)) {
+				if (lastWasWhite) {
+					modified = true;
+					continue;
+				}
+				if (c != ' ')
+					modified = true;
+				normalised.append(' ');
+				lastWasWhite = true;
+			} else {
+				normalised.appendCodePoint(c);
+				lastWasWhite = false;
+			}
+		}
+		return modified ? normalised.toString() : string;
+	}
+
+	private static String stripLeadingWhitespace(String string) {
+		int start = 0;
+		while (start < string.length()
+				&& (isWhitespace(string.charAt(start)) || string
+						.charAt(start) == '\u000B'))
+			start++;
+		return string.substring(start);
+	}
+
+}
@@ -10,10 +10,12 @@ import net.kevxu.purdueassist.course.elements.Predefined.Type;
 import net.kevxu.purdueassist.course.shared.CourseNotFoundException;
 import net.kevxu.purdueassist.course.shared.HtmlParseException;
 import net.kevxu.purdueassist.course.shared.RequestNotFinishedException;
-import net.kevxu.purdueassist.shared.httpclient.BasicHttpClientAsync;
 import net.kevxu.purdueassist.shared.httpclient.BasicHttpClientAsync.HttpRequestListener;
+import net.kevxu.purdueassist.shared.httpclient.HttpClientAsync;
 import net.kevxu.purdueassist.shared.httpclient.HttpClientAsync.HttpMethod;
+import net.kevxu.purdueassist.shared.httpclient.HttpClientAsyncFactory;
 import net.kevxu.purdueassist.shared.httpclient.MethodNotPostException;
+import net.kevxu.purdueassist.shared.httpclient.PooledHttpClientAsync;
 
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
@@ -26,7 +28,8 @@ public class ScheduleSearch implements HttpRequestListener {
 			+ "bzwsrch.p_search_schedule";
 
 	private ScheduleSearchListener mListener;
-	private BasicHttpClientAsync mHttpClient;
+	private HttpClientAsyncFactory mHttpClientFactory;
+	private HttpClientAsync mHttpClient;
 
 	private boolean requestFinished;
 
@@ -74,7 +77,13 @@ public class ScheduleSearch implements HttpRequestListener {
 	}
 
 	public ScheduleSearch(ScheduleSearchListener listener) {
+		this(listener, PooledHttpClientAsync.FACTORY);
+	}
+
+	public ScheduleSearch(ScheduleSearchListener listener,
+			HttpClientAsyncFactory httpClientFactory) {
 		this.mListener = listener;
+		this.mHttpClientFactory = httpClientFactory;
 		this.requestFinished = true;
 	}
 
@@ -85,7 +94,8 @@ public class ScheduleSearch implements HttpRequestListener {
 
 		this.requestFinished = false;
 
-		mHttpClient = new BasicHttpClientAsync(URL_HEAD, HttpMethod.POST, this);
+		mHttpClient = mHttpClientFactory.newHttpClient(URL_HEAD,
+				HttpMethod.POST, this);
 		try {
 			mHttpClient.setParameters(config.getParameters());
 			mHttpClient.getResponse();
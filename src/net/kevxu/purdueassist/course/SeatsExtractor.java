@@ -0,0 +1,464 @@
+/*
+ * SeatsExtractor.java
+ * 
+ * Released under Apache License 2.0.
+ */
+
+package net.kevxu.purdueassist.course;
+
+import net.kevxu.purdueassist.course.ScheduleDetailExtractor.UnsupportedLayoutException;
+import net.kevxu.purdueassist.course.elements.Seats;
+import net.kevxu.purdueassist.course.shared.AsciiBytes;
+
+/**
+ * Extracts the CRN and the seats of a schedule detail page straight from its
+ * bytes, for lookups only asking for the seats. Nothing is decoded, split or
+ * boxed: the bytes are scanned once from the title of the detail table to the
+ * end of its seat table, and the numbers are read digit by digit.
+ * <p>
+ * The values are the same ScheduleDetail reads from a Document. Only the
+ * layout of one template is followed, i.e. a title cell holding plain text, a
+ * single seat table of a header row and three or four rows of a label cell
+ * and three number cells; how the rows are marked up is given by the
+ * instance, see PageLayout. Anything else throws UnsupportedLayoutException,
+ * in which case the page should be parsed the usual way; so does a page
+ * without detail table.
+ * <p>
+ * An instance is immutable and may be shared between threads.
+ */
+class SeatsExtractor {
+
+	/**
+	 * Values of the seat table.
+	 */
+	static class SeatTable {
+		/** CRN in the title of the detail table. */
+		int mCrn;
+		Seats mSeats = null;
+		Seats mWaitlistSeats = null;
+		/** Seats of the cross list, or null if there is no such row. */
+		Seats mCrosslistSeats = null;
+	}
+
+	private static final byte[] DETAIL_TABLE_SUMMARY = AsciiBytes.ascii(
+			ScheduleDetail.DETAIL_TABLE_SUMMARY);
+	private static final byte[] SEAT_TABLE_SUMMARY = AsciiBytes.ascii(
+			ScheduleDetail.SEAT_TABLE_SUMMARY);
+	private static final byte[] BASIC_INFO_CLASS = AsciiBytes
+			.ascii("ddlabel");
+	private static final byte[] DETAILED_INFO_CLASS = AsciiBytes
+			.ascii("dddefault");
+
+	private static final byte[] TR = AsciiBytes.ascii("tr");
+	private static final byte[] TBODY = AsciiBytes.ascii("tbody");
+	private static final byte[] TH = AsciiBytes.ascii("th");
+	private static final byte[] TD = AsciiBytes.ascii("td");
+	private static final byte[] SPAN = AsciiBytes.ascii("span");
+	private static final byte[] CAPTION = AsciiBytes.ascii("caption");
+	private static final byte[] TABLE = AsciiBytes.ascii("table");
+	private static final byte[] CAPTION_CLOSE = AsciiBytes.ascii("</caption");
+
+	/** Largest number of digits read without overflow. */
+	private static final int MAX_DIGITS = 9;
+
+	// cells of a seat row
+	private static final int NO_CELL = 0;
+	private static final int HEADER_CELL = 1;
+	private static final int LABEL_CELL = 2;
+	private static final int NUMBER_CELL = 3;
+
+	private final boolean mThLabels;
+	private final boolean mExplicitBody;
+
+	/**
+	 * @param thLabels
+	 *            whether the label of a seat row is a th element, i.e.
+	 *            &lt;th class="ddlabel"&gt;Seats&lt;/th&gt;, rather than a td
+	 *            element.
+	 * @param explicitBody
+	 *            whether the rows of the seat table are in a tbody element
+	 *            written out in the page.
+	 */
+	SeatsExtractor(boolean thLabels, boolean explicitBody) {
+		this.mThLabels = thLabels;
+		this.mExplicitBody = explicitBody;
+	}
+
+	/**
+	 * Get the CRN and the seats of a page.
+	 * 
+	 * @param page
+	 *            page, or the fragment of it holding the detail table.
+	 * @param charset
+	 *            charset of the page, or null if unknown. It has to be ASCII
+	 *            compatible.
+	 * @return values of the seat table.
+	 * @throws UnsupportedLayoutException
+	 */
+	SeatTable extract(byte[] page, String charset)
+			throws UnsupportedLayoutException {
+		if (charset != null && !isAsciiCompatible(charset))
+			throw new UnsupportedLayoutException("Charset " + charset + ".");
+
+		int detail = AsciiBytes.indexOfIgnoreCase(page, 0, page.length,
+				DETAIL_TABLE_SUMMARY);
+		if (detail < 0)
+			throw new UnsupportedLayoutException("No detail table.");
+
+		SeatTable table = new SeatTable();
+		int position = readCrn(page, detail, table);
+
+		int seats = AsciiBytes.indexOfIgnoreCase(page, position, page.length,
+				SEAT_TABLE_SUMMARY);
+		if (seats < 0
+				|| AsciiBytes.indexOfIgnoreCase(page, seats + 1, page.length,
+						SEAT_TABLE_SUMMARY) >= 0)
+			throw new UnsupportedLayoutException("Not one seat table.");
+		if (indexOfClass(page, position, seats, DETAILED_INFO_CLASS) < 0)
+			throw new UnsupportedLayoutException(
+					"Seat table outside of the detailed info.");
+
+		readRows(page, enclosingTagEnd(page, seats), table);
+		return table;
+	}
+
+	/**
+	 * Read the CRN from the title, "name - crn - subject cnbr - section".
+	 * 
+	 * @return index after the title.
+	 */
+	private static int readCrn(byte[] page, int from, SeatTable table)
+			throws UnsupportedLayoutException {
+		int label = indexOfClass(page, from, page.length, BASIC_INFO_CLASS);
+		if (label < 0)
+			throw new UnsupportedLayoutException("No basic info.");
+		int start = enclosingTagEnd(page, label);
+		int end = start;
+		while (end < page.length && page[end] != '<')
+			end++;
+		if (!AsciiBytes.startsWithIgnoreCase(page, end + 2, page.length, TH)
+				|| page[end + 1] != '/')
+			throw new UnsupportedLayoutException("Markup in basic info.");
+
+		// the last three parts are read backwards; they may only hold
+		// letters and digits, so that they split the same either way
+		while (end > start && isWhitespace(page[end - 1]))
+			end--;
+		int section = lastSeparator(page, start, end);
+		int subject = lastSeparator(page, start, section);
+		int crn = lastSeparator(page, start, subject);
+		if (section - subject < 4 || subject - crn < 4 || end - section < 4
+				|| crn == start || page[crn - 1] == '-')
+			throw new UnsupportedLayoutException("Basic info.");
+		int space = -1;
+		for (int i = subject + 3; i < section; i++) {
+			if (page[i] == ' ' && space < 0 && i > subject + 3
+					&& i < section - 1) {
+				space = i;
+			} else if (!isAlphanumeric(page[i])) {
+				throw new UnsupportedLayoutException("Subject and cnbr.");
+			}
+		}
+		if (space < 0)
+			throw new UnsupportedLayoutException("Subject and cnbr.");
+		for (int i = section + 3; i < end; i++) {
+			if (!isAlphanumeric(page[i]))
+				throw new UnsupportedLayoutException("Section.");
+		}
+
+		table.mCrn = readNumber(page, crn + 3, subject, false);
+		return end;
+	}
+
+	/**
+	 * Read the rows of the seat table.
+	 * 
+	 * @param from
+	 *            index after the start tag of the table.
+	 */
+	private void readRows(byte[] page, int from, SeatTable table)
+			throws UnsupportedLayoutException {
+		// tbody not started, in tbody, or tbody ended
+		int body = mExplicitBody ? 0 : 1;
+		int row = -1;
+		int cell = NO_CELL;
+		int labels = 0;
+		int labelWords = 0;
+		boolean inWord = false;
+		int numbers = 0;
+		int[] values = new int[3];
+		int numberStart = -1;
+		int numberEnd = -1;
+
+		int i = from;
+		while (true) {
+			if (i >= page.length)
+				throw new UnsupportedLayoutException("Seat table not closed.");
+			byte b = page[i];
+			if (b != '<') {
+				if (cell == NO_CELL) {
+					if (!isWhitespace(b))
+						throw new UnsupportedLayoutException(
+								"Text outside of cells.");
+				} else if (cell == HEADER_CELL) {
+					// not read
+				} else if (b == '&' || b < 0 || b == '\u000B') {
+					throw new UnsupportedLayoutException("Text in cell.");
+				} else if (cell == LABEL_CELL) {
+					if (isWhitespace(b)) {
+						inWord = false;
+					} else if (!inWord) {
+						inWord = true;
+						labelWords++;
+					}
+				} else if (isWhitespace(b)) {
+					if (numberStart >= 0 && numberEnd < 0)
+						numberEnd = i;
+				} else if (numberStart < 0) {
+					numberStart = i;
+				} else if (numberEnd >= 0) {
+					throw new UnsupportedLayoutException("Text in cell.");
+				}
+				i++;
+				continue;
+			}
+
+			boolean close = i + 1 < page.length && page[i + 1] == '/';
+			int name = close ? i + 2 : i + 1;
+			if (isTag(page, name, TABLE)) {
+				if (!close)
+					throw new UnsupportedLayoutException("Nested table.");
+				if (body == 1) {
+					// implied end of the last row
+					if (cell == NUMBER_CELL)
+						numbers = endNumber(page, numberStart, numberEnd, i,
+								numbers, values);
+					setRow(table, row, labels, labelWords, numbers, values);
+				}
+				break;
+			} else if (isTag(page, name, TBODY)) {
+				// rows outside of the explicit tbody would be in another one
+				if (close ? body != 1 : body != 0 || row >= 0)
+					throw new UnsupportedLayoutException("Seat table body.");
+				if (close) {
+					// implied end of the last row
+					if (cell == NUMBER_CELL)
+						numbers = endNumber(page, numberStart, numberEnd, i,
+								numbers, values);
+					setRow(table, row, labels, labelWords, numbers, values);
+					cell = NO_CELL;
+				}
+				body++;
+			} else if (isTag(page, name, CAPTION) && !close && row < 0
+					&& (body == 0 || !mExplicitBody)) {
+				int captionEnd = AsciiBytes.indexOfIgnoreCase(page, i,
+						page.length, CAPTION_CLOSE);
+				if (captionEnd < 0)
+					throw new UnsupportedLayoutException("Caption not closed.");
+				i = tagEnd(page, captionEnd);
+				continue;
+			} else if (body != 1) {
+				throw new UnsupportedLayoutException("Outside of table body.");
+			} else if (isTag(page, name, TR)) {
+				if (cell == NUMBER_CELL)
+					numbers = endNumber(page, numberStart, numberEnd, i,
+							numbers, values);
+				cell = NO_CELL;
+				if (!close) {
+					setRow(table, row, labels, labelWords, numbers, values);
+					row++;
+					labels = 0;
+					labelWords = 0;
+					numbers = 0;
+				}
+			} else if (isTag(page, name, TH) || isTag(page, name, TD)) {
+				if (row < 0)
+					throw new UnsupportedLayoutException(
+							"Cell outside of rows.");
+				if (cell == NUMBER_CELL)
+					numbers = endNumber(page, numberStart, numberEnd, i,
+							numbers, values);
+				cell = NO_CELL;
+				if (!close) {
+					inWord = false;
+					if (row == 0) {
+						cell = HEADER_CELL;
+					} else if (isTag(page, name, TH) == mThLabels
+							&& labels == 0 && numbers == 0) {
+						// the label is the first cell, as the row text is
+						// read in order
+						cell = LABEL_CELL;
+						labels++;
+					} else if (isTag(page, name, TD)) {
+						cell = NUMBER_CELL;
+						numberStart = -1;
+						numberEnd = -1;
+					} else {
+						throw new UnsupportedLayoutException("Seat row cells.");
+					}
+				}
+			} else if (!isTag(page, name, SPAN) || cell == NO_CELL) {
+				throw new UnsupportedLayoutException("Markup in seat table.");
+			}
+			i = tagEnd(page, i);
+		}
+
+		if (row != 2 && row != 3)
+			throw new UnsupportedLayoutException("Seat table with " + row
+					+ " rows.");
+	}
+
+	/**
+	 * Check the row just ended and set its seats.
+	 */
+	private static void setRow(SeatTable table, int row, int labels,
+			int labelWords, int numbers, int[] values)
+			throws UnsupportedLayoutException {
+		if (row <= 0)
+			return;
+		// the label is one word longer on each row, i.e. "Seats", "Waitlist
+		// Seats" and "Cross List Seats"
+		if (labels != 1 || labelWords != row || numbers != 3)
+			throw new UnsupportedLayoutException("Seat row " + row + ".");
+		Seats seats = new Seats(values[0], values[1], values[2]);
+		if (row == 1) {
+			table.mSeats = seats;
+		} else if (row == 2) {
+			table.mWaitlistSeats = seats;
+		} else if (row == 3) {
+			table.mCrosslistSeats = seats;
+		} else {
+			throw new UnsupportedLayoutException("Seat row " + row + ".");
+		}
+	}
+
+	/**
+	 * Read the number of the cell just ended.
+	 * 
+	 * @return number of numbers read in the row.
+	 */
+	private static int endNumber(byte[] page, int start, int end, int cellEnd,
+			int numbers, int[] values) throws UnsupportedLayoutException {
+		if (start < 0 || numbers >= values.length)
+			throw new UnsupportedLayoutException("Number cells.");
+		values[numbers] = readNumber(page, start, (end < 0) ? cellEnd : end,
+				true);
+		return numbers + 1;
+	}
+
+	/**
+	 * Read a decimal number, the way Integer.valueOf() does.
+	 */
+	private static int readNumber(byte[] page, int start, int end,
+			boolean signed) throws UnsupportedLayoutException {
+		boolean negative = false;
+		if (signed && start < end
+				&& (page[start] == '-' || page[start] == '+')) {
+			negative = page[start] == '-';
+			start++;
+		}
+		if (start == end || end - start > MAX_DIGITS)
+			throw new UnsupportedLayoutException("Number.");
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			if (page[i] < '0' || page[i] > '9')
+				throw new UnsupportedLayoutException("Number.");
+			value = value * 10 + (page[i] - '0');
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * @return index of the last " - " before end, or start if there is none.
+	 */
+	private static int lastSeparator(byte[] page, int start, int end) {
+		for (int i = end - 3; i > start; i--) {
+			if (page[i] == ' ' && page[i + 1] == '-' && page[i + 2] == ' ')
+				return i;
+		}
+		return start;
+	}
+
+	/**
+	 * Find an element with the given class, i.e. class="ddlabel".
+	 * 
+	 * @return index of the class name, or -1.
+	 */
+	private static int indexOfClass(byte[] page, int from, int to,
+			byte[] className) {
+		int index = from;
+		while ((index = AsciiBytes.indexOfIgnoreCase(page, index, to,
+				className)) >= 0) {
+			int after = index + className.length;
+			if (index > 0 && isClassBoundary(page[index - 1])
+					&& after < page.length && isClassBoundary(page[after]))
+				return index;
+			index++;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return index after the end of the tag the index is in.
+	 */
+	private static int enclosingTagEnd(byte[] page, int index)
+			throws UnsupportedLayoutException {
+		int start = index;
+		while (start >= 0 && page[start] != '<')
+			start--;
+		if (start < 0)
+			throw new UnsupportedLayoutException("Attribute outside of tags.");
+		return tagEnd(page, start);
+	}
+
+	/**
+	 * @param index
+	 *            index of the "&lt;" starting the tag.
+	 * @return index after the end of the tag.
+	 */
+	private static int tagEnd(byte[] page, int index)
+			throws UnsupportedLayoutException {
+		byte quote = 0;
+		for (int i = index; i < page.length; i++) {
+			if (quote != 0) {
+				if (page[i] == quote)
+					quote = 0;
+			} else if (page[i] == '"' || page[i] == '\'') {
+				quote = page[i];
+			} else if (page[i] == '>') {
+				return i + 1;
+			}
+		}
+		throw new UnsupportedLayoutException("Tag not closed.");
+	}
+
+	private static boolean isTag(byte[] page, int name, byte[] tagName) {
+		if (!AsciiBytes.startsWithIgnoreCase(page, name, page.length, tagName))
+			return false;
+		int after = name + tagName.length;
+		return after < page.length
+				&& (page[after] == '>' || page[after] == '/' || isWhitespace(
+						page[after]));
+	}
+
+	private static boolean isAsciiCompatible(String charset) {
+		return charset.equalsIgnoreCase("UTF-8")
+				|| charset.equalsIgnoreCase("ISO-8859-1")
+				|| charset.equalsIgnoreCase("US-ASCII")
+				|| charset.equalsIgnoreCase("windows-1252");
+	}
+
+	private static boolean isClassBoundary(byte b) {
+		return b == '"' || b == '\'' || b == '=' || isWhitespace(b);
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t' || b == '\n' || b == '\f' || b == '\r';
+	}
+
+	private static boolean isAlphanumeric(byte b) {
+		return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z')
+				|| (b >= '0' && b <= '9');
+	}
+
+}
@@ -0,0 +1,195 @@
+/*
+ * TermSeatTable.java
+ * 
+ * Released under Apache License 2.0.
+ */
+
+package net.kevxu.purdueassist.course;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import net.kevxu.purdueassist.course.elements.Predefined.Term;
+import net.kevxu.purdueassist.course.elements.Seats;
+import net.kevxu.purdueassist.course.shared.Utilities;
+
+/**
+ * Seats of every section of a term, in flat arrays indexed by CRN.
+ * <p>
+ * CRNs have at most 5 digits, so each of them has a slot holding its seats,
+ * waitlist seats and crosslist seats, each packed into a long (see
+ * Seats.pack()). Reads take no lock and allocate nothing: reading one kind of
+ * seats is a single volatile read, and read() gets the three kinds as written
+ * together by retrying while a write of the slot is in progress (a seqlock).
+ * Writers of the same slot claim it in turn with a compare-and-set of its
+ * version; no lock is taken anywhere.
+ * <p>
+ * Give the table to ScheduleDetail.setSeatTable() to have the seats of every
+ * section looked up written into it, i.e. by a poller requesting only seats.
+ */
+public class TermSeatTable {
+
+	/** Number of CRNs, 00000 to 99999. */
+	public static final int CRNS = Utilities.MAX_CRN + 1;
+
+	/**
+	 * Value given to update() to leave seats as they are, i.e. because they
+	 * were not requested. Packed seats are never negative, and Seats.NONE
+	 * clears them instead.
+	 */
+	public static final long UNCHANGED = -1L;
+
+	private static final int SEATS = 0;
+	private static final int WAITLIST_SEATS = 1;
+	private static final int CROSSLIST_SEATS = 2;
+	private static final int KINDS = 3;
+
+	private final Term mTerm;
+	/** Version of each slot, odd while the slot is written. */
+	private final AtomicIntegerArray mVersions;
+	/** Packed seats of each slot, KINDS longs in a row. */
+	private final AtomicLongArray mSeats;
+
+	/**
+	 * Constructor. All slots are empty.
+	 * 
+	 * @param term
+	 *            term of the sections.
+	 */
+	public TermSeatTable(Term term) {
+		this.mTerm = term;
+		this.mVersions = new AtomicIntegerArray(CRNS);
+		this.mSeats = new AtomicLongArray(CRNS * KINDS);
+		for (int i = 0; i < CRNS * KINDS; i++)
+			mSeats.lazySet(i, Seats.NONE);
+	}
+
+	public Term getTerm() {
+		return mTerm;
+	}
+
+	/**
+	 * @param crn
+	 *            CRN of the section.
+	 * @return packed seats, or Seats.NONE if unknown.
+	 */
+	public long getSeats(int crn) {
+		return mSeats.get(index(crn) + SEATS);
+	}
+
+	/**
+	 * @param crn
+	 *            CRN of the section.
+	 * @return packed waitlist seats, or Seats.NONE if unknown.
+	 */
+	public long getWaitlistSeats(int crn) {
+		return mSeats.get(index(crn) + WAITLIST_SEATS);
+	}
+
+	/**
+	 * @param crn
+	 *            CRN of the section.
+	 * @return packed crosslist seats, or Seats.NONE if unknown.
+	 */
+	public long getCrosslistSeats(int crn) {
+		return mSeats.get(index(crn) + CROSSLIST_SEATS);
+	}
+
+	/**
+	 * Read all seats of a section as they were written together.
+	 * 
+	 * @param crn
+	 *            CRN of the section.
+	 * @param seats
+	 *            array of at least 3 longs, set to the packed seats, waitlist
+	 *            seats and crosslist seats, each Seats.NONE if unknown.
+	 * @return false if none of them is known.
+	 */
+	public boolean read(int crn, long[] seats) {
+		int index = index(crn);
+		while (true) {
+			int version = mVersions.get(crn);
+			if ((version & 1) == 0) {
+				long regular = mSeats.get(index + SEATS);
+				long waitlist = mSeats.get(index + WAITLIST_SEATS);
+				long crosslist = mSeats.get(index + CROSSLIST_SEATS);
+				if (mVersions.get(crn) == version) {
+					seats[SEATS] = regular;
+					seats[WAITLIST_SEATS] = waitlist;
+					seats[CROSSLIST_SEATS] = crosslist;
+					return regular != Seats.NONE || waitlist != Seats.NONE
+							|| crosslist != Seats.NONE;
+				}
+			} else {
+				Thread.yield();
+			}
+		}
+	}
+
+	/**
+	 * Write seats of a section. Readers see either all or none of them.
+	 * <p>
+	 * Seats.NONE means the section has no such seats, i.e. its crosslist row
+	 * is gone, and clears them. UNCHANGED leaves them as they are.
+	 * 
+	 * @param crn
+	 *            CRN of the section.
+	 * @param seats
+	 *            packed seats, Seats.NONE or UNCHANGED.
+	 * @param waitlistSeats
+	 *            packed waitlist seats, Seats.NONE or UNCHANGED.
+	 * @param crosslistSeats
+	 *            packed crosslist seats, Seats.NONE or UNCHANGED.
+	 */
+	public void update(int crn, long seats, long waitlistSeats,
+			long crosslistSeats) {
+		int index = index(crn);
+		int version = claim(crn);
+		if (seats != UNCHANGED)
+			mSeats.set(index + SEATS, seats);
+		if (waitlistSeats != UNCHANGED)
+			mSeats.set(index + WAITLIST_SEATS, waitlistSeats);
+		if (crosslistSeats != UNCHANGED)
+			mSeats.set(index + CROSSLIST_SEATS, crosslistSeats);
+		mVersions.set(crn, version + 2);
+	}
+
+	/**
+	 * Forget the seats of a section, i.e. one which was found no more.
+	 * 
+	 * @param crn
+	 *            CRN of the section.
+	 */
+	public void remove(int crn) {
+		int index = index(crn);
+		int version = claim(crn);
+		for (int kind = 0; kind < KINDS; kind++)
+			mSeats.set(index + kind, Seats.NONE);
+		mVersions.set(crn, version + 2);
+	}
+
+	/**
+	 * Wait for other writers of the slot, and mark it as being written.
+	 * 
+	 * @return version of the slot before the write.
+	 */
+	private int claim(int crn) {
+		while (true) {
+			int version = mVersions.get(crn);
+			if ((version & 1) == 0) {
+				if (mVersions.compareAndSet(crn, version, version + 1))
+					return version;
+			} else {
+				Thread.yield();
+			}
+		}
+	}
+
+	private static int index(int crn) {
+		if (!Utilities.verifyCrn(crn))
+			throw new IllegalArgumentException("CRN " + crn
+					+ " is not a 5 digit number.");
+		return crn * KINDS;
+	}
+
+}
@@ -0,0 +1,74 @@
+package net.kevxu.purdueassist.course.elements;
+
+import net.kevxu.purdueassist.course.elements.Predefined.Subject;
+import net.kevxu.purdueassist.course.elements.Predefined.Term;
+
+/**
+ * Identifies a catalog course by school term, subject and course number.
+ */
+public class CourseKey {
+	private final Term term;
+	private final Subject subject;
+	private final int cnbr;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param term
+	 *            school term. If it's null, current school term will be used.
+	 * @param subject
+	 *            subject of course.
+	 * @param cnbr
+	 *            course number.
+	 */
+	public CourseKey(Term term, Subject subject, int cnbr) {
+		this.term = (term == null) ? Term.CURRENT : term;
+		this.subject = subject;
+		this.cnbr = cnbr;
+	}
+
+	/**
+	 * @return school term.
+	 */
+	public Term getTerm() {
+		return term;
+	}
+
+	/**
+	 * @return subject of course.
+	 */
+	public Subject getSubject() {
+		return subject;
+	}
+
+	/**
+	 * @return course number.
+	 */
+	public int getCnbr() {
+		return cnbr;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof CourseKey))
+			return false;
+		CourseKey other = (CourseKey) obj;
+		return term == other.term && subject == other.subject
+				&& cnbr == other.cnbr;
+	}
+
+	@Override
+	public int hashCode() {
+		int result = term.hashCode();
+		result = 31 * result + ((subject == null) ? 0 : subject.hashCode());
+		return 31 * result + cnbr;
+	}
+
+	@Override
+	public String toString() {
+		return "Term: " + term + "; " + "Subject: " + subject + "; "
+				+ "CNBR: " + cnbr + ";";
+	}
+}
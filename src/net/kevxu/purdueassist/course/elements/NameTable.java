@@ -0,0 +1,160 @@
+package net.kevxu.purdueassist.course.elements;
+
+import java.util.Map;
+
+/**
+ * Immutable table resolving names to enum constants, i.e. "Fall 2012" or
+ * "201310" to Term.FALL2012, without creating any object.
+ * <p>
+ * The names are hashed into an array with a seed picked so that no two of
+ * them collide (a perfect hash), so a lookup hashes the text once and compares
+ * it with at most one name. Text is read from a slice of any CharSequence,
+ * leading and trailing whitespace excluded.
+ */
+final class NameTable<E extends Enum<E>> {
+
+	/** Seeds tried for a table size before doubling it. */
+	private static final int MAX_SEEDS = 1024;
+
+	private final boolean ignoreCase;
+	private final boolean ignoreSpaces;
+	private final E[] constants;
+	private final int seed;
+	private final int mask;
+	private final String[] names;
+	private final int[] ordinals;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param constants
+	 *            constants of the enum, as returned by values().
+	 * @param names
+	 *            names of the constants.
+	 * @param ignoreCase
+	 *            whether ASCII letters are matched ignoring case.
+	 * @param ignoreSpaces
+	 *            whether spaces are ignored, i.e. "Fall 2012" matches
+	 *            "Fall2012".
+	 */
+	NameTable(E[] constants, Map<String, E> names, boolean ignoreCase,
+			boolean ignoreSpaces) {
+		this.ignoreCase = ignoreCase;
+		this.ignoreSpaces = ignoreSpaces;
+		this.constants = constants;
+
+		String[] keys = new String[names.size()];
+		int[] values = new int[names.size()];
+		int count = 0;
+		for (Map.Entry<String, E> name : names.entrySet()) {
+			keys[count] = normalize(name.getKey());
+			values[count] = name.getValue().ordinal();
+			count++;
+		}
+
+		int size = Integer.highestOneBit(Math.max(count, 1)) * 2;
+		int seed = 0;
+		String[] table;
+		while ((table = place(keys, values, seed, size)) == null) {
+			if (++seed == MAX_SEEDS) {
+				seed = 0;
+				size *= 2;
+			}
+		}
+		this.seed = seed;
+		this.mask = size - 1;
+		this.names = table;
+		this.ordinals = new int[size];
+		for (int i = 0; i < count; i++) {
+			int index = hash(keys[i], 0, keys[i].length(), seed) & mask;
+			ordinals[index] = values[i];
+		}
+	}
+
+	/**
+	 * Look up a name.
+	 * 
+	 * @param text
+	 *            text holding the name.
+	 * @param start
+	 *            index of the first char of the name.
+	 * @param end
+	 *            index after the last char of the name.
+	 * @return the constant, or null if the name is unknown.
+	 */
+	E get(CharSequence text, int start, int end) {
+		while (start < end && text.charAt(start) <= ' ')
+			start++;
+		while (end > start && text.charAt(end - 1) <= ' ')
+			end--;
+		int index = hash(text, start, end, seed) & mask;
+		String name = names[index];
+		if (name == null)
+			return null;
+		int i = 0;
+		for (int j = start; j < end; j++) {
+			char c = text.charAt(j);
+			if (ignoreSpaces && c == ' ')
+				continue;
+			if (i == name.length() || fold(c) != name.charAt(i))
+				return null;
+			i++;
+		}
+		return (i == name.length()) ? constants[ordinals[index]] : null;
+	}
+
+	/**
+	 * Place the keys in a table of the given size.
+	 * 
+	 * @return the table, or null if two keys collide.
+	 */
+	private String[] place(String[] keys, int[] values, int seed, int size) {
+		String[] table = new String[size];
+		int[] tableValues = new int[size];
+		for (int i = 0; i < keys.length; i++) {
+			int index = hash(keys[i], 0, keys[i].length(), seed) & (size - 1);
+			if (table[index] == null) {
+				table[index] = keys[i];
+				tableValues[index] = values[i];
+			} else if (!table[index].equals(keys[i])) {
+				return null;
+			} else if (tableValues[index] != values[i]) {
+				throw new IllegalArgumentException("Name \"" + keys[i]
+						+ "\" given to two constants.");
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * FNV-1a hash of the normalized text, with a multiplier depending on the
+	 * seed.
+	 */
+	private int hash(CharSequence text, int start, int end, int seed) {
+		int multiplier = 0x01000193 + 2 * seed;
+		int hash = 0x811C9DC5;
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if (ignoreSpaces && c == ' ')
+				continue;
+			hash = (hash ^ fold(c)) * multiplier;
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	private String normalize(String name) {
+		StringBuilder builder = new StringBuilder(name.length());
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (!ignoreSpaces || c != ' ')
+				builder.append(fold(c));
+		}
+		return builder.toString().trim();
+	}
+
+	private char fold(char c) {
+		return (ignoreCase && c >= 'a' && c <= 'z') ? (char) (c - ('a' - 'A'))
+				: c;
+	}
+
+}
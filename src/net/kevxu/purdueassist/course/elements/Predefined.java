@@ -1,5 +1,8 @@
 package net.kevxu.purdueassist.course.elements;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public class Predefined {
 
 	public enum Term {
@@ -11,16 +14,58 @@ public class Predefined {
 				"Summer 2010", "201030"), SPRING2010("Spring 2010", "201020"), FALL2009(
 				"Fall 2009", "201010"), SUMMER2009("Summer 2009", "200930"), SPRING2009(
 				"Spring 2009", "200920"), FALL2008("Fall 2008", "200910"), SUMMER2008(
-				"Summer 2008", "200830"), SPRING2008("Spring 2008", "200820");
+				"Summer 2008", "200830"), SPRING2008("Spring 2008", "200820"),
+
+		/** A term named on a page but unknown here, never looked up. */
+		UNKNOWN("Unknown", "");
 
 		private final String name;
 		private final String linkName;
 
+		private static final NameTable<Term> nameTable;
+
+		static {
+			Map<String, Term> names = new HashMap<String, Term>();
+			for (Term term : values()) {
+				if (term == UNKNOWN)
+					continue;
+				names.put(term.name(), term);
+				names.put(term.name, term);
+				names.put(term.linkName, term);
+			}
+			nameTable = new NameTable<Term>(values(), names, true, true);
+		}
+
 		Term(String name, String linkName) {
 			this.name = name;
 			this.linkName = linkName;
 		}
 
+		/**
+		 * Same as lookup(text, 0, text.length()).
+		 */
+		public static Term lookup(CharSequence text) {
+			return lookup(text, 0, text.length());
+		}
+
+		/**
+		 * Find a term by its name, i.e. "Fall 2012" or "FALL2012", or its link
+		 * name, i.e. "201310". Case, spaces and surrounding whitespace are
+		 * ignored. Nothing is allocated.
+		 * 
+		 * @param text
+		 *            text holding the name.
+		 * @param start
+		 *            index where the name starts.
+		 * @param end
+		 *            index after the end of the name.
+		 * @return the term, or UNKNOWN if the name is unknown.
+		 */
+		public static Term lookup(CharSequence text, int start, int end) {
+			Term term = nameTable.get(text, start, end);
+			return (term == null) ? UNKNOWN : term;
+		}
+
 		public String getName() {
 			return name;
 		}
@@ -101,14 +146,52 @@ public class Predefined {
 				"HSRV"), POLS("POLS"), SPEA("SPEA"), TEL("TEL"), CIT("CIT"), EALC(
 				"EALC"), SWK("SWK"), ANAT("ANAT"), CJUS("CJUS"), PHYT("PHYT"), PMTD(
 				"PMTD"), DRAF("DRAF"), PRDM("PRDM"), SUPV("SUPV"), ERTH("ERTH"), FOLK(
-				"FOLK"), CMLT("CMLT"), OADM("OADM"), NMCM("NMCM"), PHSL("PHSL");
+				"FOLK"), CMLT("CMLT"), OADM("OADM"), NMCM("NMCM"), PHSL("PHSL"),
+
+		/** A subject named on a page but unknown here. */
+		UNKNOWN("Unknown");
 
 		private final String fullName;
 
+		private static final NameTable<Subject> nameTable;
+
+		static {
+			Map<String, Subject> names = new HashMap<String, Subject>();
+			for (Subject subject : values()) {
+				if (subject != UNKNOWN)
+					names.put(subject.name(), subject);
+			}
+			nameTable = new NameTable<Subject>(values(), names, false, false);
+		}
+
 		Subject(String fullName) {
 			this.fullName = fullName;
 		}
 
+		/**
+		 * Same as lookup(text, 0, text.length()).
+		 */
+		public static Subject lookup(CharSequence text) {
+			return lookup(text, 0, text.length());
+		}
+
+		/**
+		 * Find a subject by its abbreviation, i.e. "CS". Surrounding
+		 * whitespace is ignored. Nothing is allocated.
+		 * 
+		 * @param text
+		 *            text holding the abbreviation.
+		 * @param start
+		 *            index where the abbreviation starts.
+		 * @param end
+		 *            index after the end of the abbreviation.
+		 * @return the subject, or UNKNOWN if the abbreviation is unknown.
+		 */
+		public static Subject lookup(CharSequence text, int start, int end) {
+			Subject subject = nameTable.get(text, start, end);
+			return (subject == null) ? UNKNOWN : subject;
+		}
+
 		public String getFullName() {
 			return fullName;
 		}
@@ -129,16 +212,59 @@ public class Predefined {
 				"Clinic", ""), Lecture1("Lecture1", ""), Presentation(
 				"Presentation", ""), TravelTime("TravelTime", ""), Experiential1(
 				"Experiential1", ""), Clinic1("Clinic1", ""), Clinic2(
-				"Clinic2", ""), Clinic3("Clinic3", ""), Studio1("Studio1", "");
+				"Clinic2", ""), Clinic3("Clinic3", ""), Studio1("Studio1", ""),
+
+		/** A type named on a page but unknown here. */
+		UNKNOWN("Unknown", "");
 
 		private final String name;
 		private final String linkName;
 
+		private static final NameTable<Type> nameTable;
+
+		static {
+			Map<String, Type> names = new HashMap<String, Type>();
+			for (Type type : values()) {
+				if (type == UNKNOWN)
+					continue;
+				names.put(type.name(), type);
+				names.put(type.name, type);
+				if (type.linkName.length() > 0)
+					names.put(type.linkName, type);
+			}
+			nameTable = new NameTable<Type>(values(), names, false, true);
+		}
+
 		Type(String name, String linkName) {
 			this.name = name;
 			this.linkName = linkName;
 		}
 
+		/**
+		 * Same as lookup(text, 0, text.length()).
+		 */
+		public static Type lookup(CharSequence text) {
+			return lookup(text, 0, text.length());
+		}
+
+		/**
+		 * Find a type by its name, i.e. "Distance Learning" or
+		 * "DistanceLearning", or its link name, i.e. "DIS". Spaces and
+		 * surrounding whitespace are ignored. Nothing is allocated.
+		 * 
+		 * @param text
+		 *            text holding the name.
+		 * @param start
+		 *            index where the name starts.
+		 * @param end
+		 *            index after the end of the name.
+		 * @return the type, or UNKNOWN if the name is unknown.
+		 */
+		public static Type lookup(CharSequence text, int start, int end) {
+			Type type = nameTable.get(text, start, end);
+			return (type == null) ? UNKNOWN : type;
+		}
+
 		public String getName() {
 			return name;
 		}
@@ -152,4 +278,64 @@ public class Predefined {
 			return name;
 		}
 	}
+
+	public enum Level {
+		GRADUATE("Graduate"), PROFESSIONAL("Professional"), UNDERGRADUATE(
+				"Undergraduate"),
+
+		/** A level named on a page but unknown here. */
+		UNKNOWN("Unknown");
+
+		private final String name;
+
+		private static final NameTable<Level> nameTable;
+
+		static {
+			Map<String, Level> names = new HashMap<String, Level>();
+			for (Level level : values()) {
+				if (level == UNKNOWN)
+					continue;
+				names.put(level.name(), level);
+				names.put(level.name, level);
+			}
+			nameTable = new NameTable<Level>(values(), names, true, false);
+		}
+
+		Level(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Same as lookup(text, 0, text.length()).
+		 */
+		public static Level lookup(CharSequence text) {
+			return lookup(text, 0, text.length());
+		}
+
+		/**
+		 * Find a level by its name, i.e. "Undergraduate". Case and
+		 * surrounding whitespace are ignored. Nothing is allocated.
+		 * 
+		 * @param text
+		 *            text holding the name.
+		 * @param start
+		 *            index where the name starts.
+		 * @param end
+		 *            index after the end of the name.
+		 * @return the level, or UNKNOWN if the name is unknown.
+		 */
+		public static Level lookup(CharSequence text, int start, int end) {
+			Level level = nameTable.get(text, start, end);
+			return (level == null) ? UNKNOWN : level;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
 }
@@ -6,6 +6,15 @@ package net.kevxu.purdueassist.course.elements;
  * @author Kaiwen Xu (kevin)
  */
 public class Seats {
+
+	/** Packed value of no seat information. */
+	public static final long NONE = Long.MIN_VALUE;
+
+	/** Bits of each number in a packed value. */
+	private static final int BITS = 21;
+	private static final long MASK = (1L << BITS) - 1;
+	private static final int MAX = (1 << (BITS - 1)) - 1;
+
 	private int capacity;
 	private int actual;
 	private int remaining;
@@ -38,6 +47,72 @@ public class Seats {
 		this.remaining = seats.getRemaining();
 	}
 
+	/**
+	 * Pack seats into a long, three signed 21 bit numbers, so that they can be
+	 * kept without an object.
+	 * 
+	 * @param seats
+	 *            seats, or null.
+	 * @return packed seats, or NONE if seats is null.
+	 */
+	public static long pack(Seats seats) {
+		if (seats == null)
+			return NONE;
+		return bits(seats.capacity) << (2 * BITS) | bits(seats.actual) << BITS
+				| bits(seats.remaining);
+	}
+
+	/**
+	 * @param packed
+	 *            value returned by pack().
+	 * @return the seats, or null if packed is NONE.
+	 */
+	public static Seats unpack(long packed) {
+		if (packed == NONE)
+			return null;
+		return new Seats(capacityOf(packed), actualOf(packed),
+				remainingOf(packed));
+	}
+
+	/**
+	 * @param packed
+	 *            value returned by pack(), other than NONE.
+	 * @return number of total seats.
+	 */
+	public static int capacityOf(long packed) {
+		return number(packed >> (2 * BITS));
+	}
+
+	/**
+	 * @param packed
+	 *            value returned by pack(), other than NONE.
+	 * @return number of already registered seats.
+	 */
+	public static int actualOf(long packed) {
+		return number(packed >> BITS);
+	}
+
+	/**
+	 * @param packed
+	 *            value returned by pack(), other than NONE.
+	 * @return number of available seats.
+	 */
+	public static int remainingOf(long packed) {
+		return number(packed);
+	}
+
+	private static long bits(int number) {
+		if (number > MAX || number < -MAX - 1)
+			throw new IllegalArgumentException("Number of seats " + number
+					+ " cannot be packed.");
+		return number & MASK;
+	}
+
+	private static int number(long bits) {
+		// sign extend the lowest BITS bits
+		return (int) (bits << (64 - BITS) >> (64 - BITS));
+	}
+
 	/**
 	 * @return number of available seats.
 	 */
@@ -0,0 +1,58 @@
+package net.kevxu.purdueassist.course.elements;
+
+import net.kevxu.purdueassist.course.elements.Predefined.Term;
+
+/**
+ * Identifies a section by school term and CRN number.
+ */
+public class SectionKey {
+	private final Term term;
+	private final int crn;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param term
+	 *            school term. If it's null, current school term will be used.
+	 * @param crn
+	 *            CRN number of section.
+	 */
+	public SectionKey(Term term, int crn) {
+		this.term = (term == null) ? Term.CURRENT : term;
+		this.crn = crn;
+	}
+
+	/**
+	 * @return school term.
+	 */
+	public Term getTerm() {
+		return term;
+	}
+
+	/**
+	 * @return CRN number of section.
+	 */
+	public int getCrn() {
+		return crn;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof SectionKey))
+			return false;
+		SectionKey other = (SectionKey) obj;
+		return term == other.term && crn == other.crn;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * term.hashCode() + crn;
+	}
+
+	@Override
+	public String toString() {
+		return "Term: " + term + "; " + "CRN: " + crn + ";";
+	}
+}
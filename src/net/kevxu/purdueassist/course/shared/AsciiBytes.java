@@ -0,0 +1,73 @@
+package net.kevxu.purdueassist.course.shared;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Matching of ASCII patterns in raw page bytes, ignoring the case of ASCII
+ * letters, so markup can be found without decoding the page. Patterns are
+ * made with ascii() and are always lower case.
+ */
+public final class AsciiBytes {
+
+	private AsciiBytes() {
+	}
+
+	/**
+	 * @param string
+	 *            ASCII text.
+	 * @return the text in lower case, as a pattern for the other methods.
+	 */
+	public static byte[] ascii(String string) {
+		return string.toLowerCase(Locale.ENGLISH).getBytes(
+				StandardCharsets.US_ASCII);
+	}
+
+	public static byte toLowerCase(byte b) {
+		return (b >= 'A' && b <= 'Z') ? (byte) (b + ('a' - 'A')) : b;
+	}
+
+	/**
+	 * Find the first occurrence of a pattern within buffer[from, to).
+	 * 
+	 * @return index of the occurrence, or -1 if there is none.
+	 */
+	public static int indexOfIgnoreCase(byte[] buffer, int from, int to,
+			byte[] pattern) {
+		for (int i = Math.max(0, from); i + pattern.length <= to; i++) {
+			if (startsWithIgnoreCase(buffer, i, to, pattern))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Find the last occurrence of a pattern ending before an index.
+	 * 
+	 * @return index of the occurrence, or -1 if there is none.
+	 */
+	public static int lastIndexOfIgnoreCase(byte[] buffer, int before,
+			byte[] pattern) {
+		for (int i = before - pattern.length; i >= 0; i--) {
+			if (startsWithIgnoreCase(buffer, i, before, pattern))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return whether the pattern is found at offset, ending no later than
+	 *         to.
+	 */
+	public static boolean startsWithIgnoreCase(byte[] buffer, int offset,
+			int to, byte[] pattern) {
+		if (offset < 0 || offset + pattern.length > to)
+			return false;
+		for (int i = 0; i < pattern.length; i++) {
+			if (toLowerCase(buffer[offset + i]) != pattern[i])
+				return false;
+		}
+		return true;
+	}
+
+}
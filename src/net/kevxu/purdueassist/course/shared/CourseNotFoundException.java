@@ -19,4 +19,16 @@ public class CourseNotFoundException extends Exception {
 		super(message, cause);
 	}
 
+	/**
+	 * @param message
+	 *            message of the page.
+	 * @param writableStackTrace
+	 *            whether the stack trace is filled in. Lookups sweeping ranges
+	 *            of CRNs or cnbrs create this exception for most of them, and
+	 *            do not need it.
+	 */
+	public CourseNotFoundException(String message, boolean writableStackTrace) {
+		super(message, null, false, writableStackTrace);
+	}
+
 }
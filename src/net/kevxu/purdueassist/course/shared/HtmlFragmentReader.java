@@ -0,0 +1,220 @@
+package net.kevxu.purdueassist.course.shared;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads an HTML page from a stream only until a wanted table has been closed.
+ * Tables are recognized by their summary attribute, which is how myPurdue
+ * marks the tables carrying results. Everything after the table, i.e.
+ * navigation, footers and scripts, is left unread, and only the table itself
+ * needs to be parsed.
+ * <p>
+ * Bytes are scanned as they arrive, without decoding. This is correct for
+ * ASCII compatible charsets, which is what myPurdue serves, as long as the
+ * summaries and texts looked for are ASCII.
+ * <p>
+ * An instance reads a single page and is not thread safe.
+ */
+public class HtmlFragmentReader {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private static final byte[] TABLE_OPEN = AsciiBytes.ascii("<table");
+	private static final byte[] TABLE_CLOSE = AsciiBytes.ascii("</table");
+	private static final byte[] CHARSET = AsciiBytes.ascii("charset=");
+
+	private final List<byte[]> mSummaries = new ArrayList<byte[]>();
+	private final List<byte[]> mRequiredTexts = new ArrayList<byte[]>();
+
+	private byte[] mBuffer = new byte[BUFFER_SIZE];
+	private int mLength = 0;
+	private boolean mEof = false;
+	private int mFragmentStart = -1;
+
+	/**
+	 * Stop once a table with the given summary has been closed.
+	 * 
+	 * @param summary
+	 *            summary attribute of the table.
+	 * @return this reader.
+	 */
+	public HtmlFragmentReader addTable(String summary) {
+		return addTable(summary, null);
+	}
+
+	/**
+	 * Stop once a table with the given summary, and containing the given text,
+	 * has been closed. Matching tables without the text are skipped.
+	 * 
+	 * @param summary
+	 *            summary attribute of the table.
+	 * @param requiredText
+	 *            text the table has to contain, or null.
+	 * @return this reader.
+	 */
+	public HtmlFragmentReader addTable(String summary, String requiredText) {
+		mSummaries.add(AsciiBytes.ascii(summary));
+		mRequiredTexts.add(requiredText == null ? null : AsciiBytes
+				.ascii(requiredText));
+		return this;
+	}
+
+	/**
+	 * Read the stream until one of the tables has been closed. The stream is
+	 * not closed.
+	 * 
+	 * @param stream
+	 *            page content.
+	 * @return bytes of the table, or the whole page if none of the tables was
+	 *         found, so that the caller can still inspect it.
+	 * @throws IOException
+	 */
+	public byte[] read(InputStream stream) throws IOException {
+		int searchFrom = 0;
+		int target = -1;
+		int tableStart = -1;
+		int depth = 0;
+		int position = 0;
+
+		while (true) {
+			if (target < 0) {
+				// look for the summary of one of the tables
+				int found = -1;
+				int last = mLength;
+				for (int i = 0; i < mSummaries.size(); i++) {
+					int index = AsciiBytes.indexOfIgnoreCase(mBuffer,
+							searchFrom, mLength, mSummaries.get(i));
+					if (index >= 0 && (found < 0 || index < found)) {
+						found = index;
+						target = i;
+					}
+					last = Math.min(last, mLength - mSummaries.get(i).length
+							+ 1);
+				}
+				if (found >= 0) {
+					tableStart = AsciiBytes.lastIndexOfIgnoreCase(mBuffer,
+							found, TABLE_OPEN);
+					if (tableStart < 0) {
+						// summary outside of a table tag
+						searchFrom = found + 1;
+						target = -1;
+						continue;
+					}
+					depth = 0;
+					position = tableStart;
+				} else {
+					// a summary may be split across reads
+					searchFrom = Math.max(searchFrom, last);
+					if (!fill(stream))
+						return Arrays.copyOf(mBuffer, mLength);
+					continue;
+				}
+			}
+
+			// find the end tag matching the table
+			int end = -1;
+			while (position < mLength) {
+				if (mBuffer[position] != '<') {
+					position++;
+				} else if (position + TABLE_CLOSE.length + 1 > mLength
+						&& !mEof) {
+					// tag may be split across reads
+					break;
+				} else if (AsciiBytes.startsWithIgnoreCase(mBuffer, position,
+						mLength, TABLE_OPEN)) {
+					depth++;
+					position += TABLE_OPEN.length;
+				} else if (AsciiBytes.startsWithIgnoreCase(mBuffer, position,
+						mLength, TABLE_CLOSE)) {
+					depth--;
+					position += TABLE_CLOSE.length;
+					if (depth == 0) {
+						while (position < mLength && mBuffer[position] != '>')
+							position++;
+						if (position < mLength) {
+							end = position + 1;
+						} else {
+							// wait for the rest of the tag
+							position -= TABLE_CLOSE.length;
+							depth++;
+						}
+						break;
+					}
+				} else {
+					position++;
+				}
+			}
+
+			if (end >= 0) {
+				byte[] requiredText = mRequiredTexts.get(target);
+				if (requiredText == null
+						|| AsciiBytes.indexOfIgnoreCase(mBuffer, tableStart,
+								end, requiredText) >= 0) {
+					mFragmentStart = tableStart;
+					return Arrays.copyOfRange(mBuffer, tableStart, end);
+				}
+				// not the table we are looking for, keep looking after it
+				searchFrom = end;
+				target = -1;
+			} else if (!fill(stream)) {
+				return Arrays.copyOf(mBuffer, mLength);
+			}
+		}
+	}
+
+	/**
+	 * @return true if the last read() stopped before the end of the page.
+	 */
+	public boolean isTruncated() {
+		return mFragmentStart >= 0 && !mEof;
+	}
+
+	/**
+	 * Get the charset declared before the table, i.e. in a meta tag. Since
+	 * the returned fragment does not contain the head of the page, it has to
+	 * be passed to the parser explicitly.
+	 * 
+	 * @return declared charset, or null if none was found.
+	 */
+	public String getDeclaredCharset() {
+		int end = (mFragmentStart >= 0) ? mFragmentStart : mLength;
+		int index = AsciiBytes.indexOfIgnoreCase(mBuffer, 0, end, CHARSET);
+		if (index < 0)
+			return null;
+		int start = index + CHARSET.length;
+		if (start < end && (mBuffer[start] == '"' || mBuffer[start] == '\''))
+			start++;
+		int stop = start;
+		while (stop < end && isCharsetChar(mBuffer[stop]))
+			stop++;
+		return (stop > start) ? new String(mBuffer, start, stop - start,
+				StandardCharsets.US_ASCII) : null;
+	}
+
+	private boolean fill(InputStream stream) throws IOException {
+		if (mEof)
+			return false;
+		if (mLength == mBuffer.length)
+			mBuffer = Arrays.copyOf(mBuffer, mBuffer.length * 2);
+		int count = stream.read(mBuffer, mLength, mBuffer.length - mLength);
+		if (count < 0) {
+			mEof = true;
+			// let the scanners finish what was waiting for more bytes
+			return true;
+		}
+		mLength += count;
+		return true;
+	}
+
+	private static boolean isCharsetChar(byte b) {
+		return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z')
+				|| (b >= '0' && b <= '9') || b == '-' || b == '_' || b == '.'
+				|| b == ':';
+	}
+
+}
@@ -0,0 +1,538 @@
+package net.kevxu.purdueassist.course.shared;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jsoup.nodes.Entities;
+
+/**
+ * Forward-only HTML tokenizer. It reports start tags, end tags, text,
+ * comments and script data one at a time, without building a tree, so that
+ * callers can pull the few values they need in a single pass.
+ * <p>
+ * Tokens follow the rules of the tokenizer in Jsoup, which is used by the
+ * query classes otherwise: tag and attribute names are lower case, character
+ * references are decoded the same way, line breaks are normalized to "\n", a
+ * text token holds all the characters between two pieces of markup, and the
+ * content of script, style, title and textarea elements is not parsed as
+ * markup. Tree construction rules, i.e. implied end tags, are left to the
+ * caller.
+ * <p>
+ * An instance tokenizes a single document and is not thread safe.
+ */
+public class HtmlTokenizer {
+
+	public enum TokenType {
+		START_TAG, END_TAG, TEXT, DATA, COMMENT, DOCTYPE, EOF
+	};
+
+	private static final char REPLACEMENT_CHAR = '\uFFFD';
+
+	private final String mInput;
+	private final int mLength;
+	private int mPosition = 0;
+
+	private final StringBuilder mBuffer = new StringBuilder();
+
+	private TokenType mType = null;
+	private TokenType mPendingType = null;
+	private String mPendingText = null;
+	private String mText = null;
+	private String mTagName = null;
+	private boolean mSelfClosing = false;
+	private Map<String, String> mAttributes = null;
+
+	/** End tag closing the raw text being read, or null. */
+	private String mRawTextEnd = null;
+	private boolean mRawTextDecoded = false;
+	private TokenType mRawTextType = null;
+
+	private String mAttributeName = null;
+	private StringBuilder mAttributeValue = null;
+
+	public HtmlTokenizer(String html) {
+		if (html.indexOf('\r') >= 0)
+			html = html.replaceAll("\r\n?", "\n");
+		this.mInput = html;
+		this.mLength = html.length();
+	}
+
+	/**
+	 * Read the next token.
+	 * 
+	 * @return type of the token, EOF at the end of input.
+	 */
+	public TokenType next() {
+		if (mPendingType != null) {
+			// markup read right after a text token
+			mType = mPendingType;
+			mText = mPendingText;
+			mPendingType = null;
+			return started(mType);
+		}
+		if (mRawTextEnd != null)
+			return readRawText();
+
+		mBuffer.setLength(0);
+		while (mPosition < mLength) {
+			char c = mInput.charAt(mPosition);
+			if (c == '<') {
+				int start = mPosition;
+				TokenType markup = readMarkup();
+				if (markup == null) {
+					// not markup after all
+					mPosition = start + 1;
+					mBuffer.append('<');
+				} else if (markup != TokenType.EOF) {
+					if (mBuffer.length() > 0) {
+						mPendingType = markup;
+						mPendingText = mText;
+						mText = mBuffer.toString();
+						return mType = TokenType.TEXT;
+					}
+					mType = markup;
+					return started(markup);
+				}
+			} else if (c == '&') {
+				mPosition++;
+				int reference = readCharacterReference((char) 0, false);
+				mBuffer.append(reference < 0 ? '&' : (char) reference);
+			} else {
+				int end = mPosition + 1;
+				while (end < mLength) {
+					char d = mInput.charAt(end);
+					if (d == '<' || d == '&')
+						break;
+					end++;
+				}
+				mBuffer.append(mInput, mPosition, end);
+				mPosition = end;
+			}
+		}
+
+		if (mBuffer.length() > 0) {
+			mText = mBuffer.toString();
+			return mType = TokenType.TEXT;
+		}
+		return mType = TokenType.EOF;
+	}
+
+	/**
+	 * @return type of the current token.
+	 */
+	public TokenType getType() {
+		return mType;
+	}
+
+	/**
+	 * @return lower case name of the current start or end tag.
+	 */
+	public String getTagName() {
+		return mTagName;
+	}
+
+	/**
+	 * @return true if the current start tag ends with "/>".
+	 */
+	public boolean isSelfClosing() {
+		return mSelfClosing;
+	}
+
+	/**
+	 * @return attributes of the current start tag, by lower case name, in
+	 *         document order.
+	 */
+	public Map<String, String> getAttributes() {
+		if (mAttributes == null)
+			return Collections.emptyMap();
+		return mAttributes;
+	}
+
+	/**
+	 * @param name
+	 *            lower case attribute name.
+	 * @return attribute value of the current start tag, or null if absent.
+	 */
+	public String getAttribute(String name) {
+		return (mAttributes == null) ? null : mAttributes.get(name);
+	}
+
+	/**
+	 * @return decoded content of the current text, data or comment token.
+	 */
+	public String getText() {
+		return mText;
+	}
+
+	private TokenType started(TokenType type) {
+		if (type == TokenType.START_TAG) {
+			if (mTagName.equals("script") || mTagName.equals("style")) {
+				startRawText(TokenType.DATA, false);
+			} else if (mTagName.equals("title")
+					|| mTagName.equals("textarea")) {
+				startRawText(TokenType.TEXT, true);
+			} else if (mTagName.equals("xmp") || mTagName.equals("iframe")
+					|| mTagName.equals("noembed")
+					|| mTagName.equals("noframes")) {
+				startRawText(TokenType.TEXT, false);
+			}
+		}
+		return type;
+	}
+
+	private void startRawText(TokenType type, boolean decoded) {
+		mRawTextEnd = mTagName;
+		mRawTextType = type;
+		mRawTextDecoded = decoded;
+	}
+
+	private TokenType readRawText() {
+		int end = mPosition;
+		while (true) {
+			end = mInput.indexOf("</", end);
+			if (end < 0) {
+				end = mLength;
+				break;
+			}
+			int nameEnd = end + 2 + mRawTextEnd.length();
+			if (mInput.regionMatches(true, end + 2, mRawTextEnd, 0,
+					mRawTextEnd.length())
+					&& nameEnd < mLength
+					&& isTagNameEnd(mInput.charAt(nameEnd)))
+				break;
+			end += 2;
+		}
+
+		String content;
+		if (mRawTextDecoded) {
+			mBuffer.setLength(0);
+			while (mPosition < end) {
+				char c = mInput.charAt(mPosition++);
+				if (c == '&') {
+					int reference = readCharacterReference((char) 0, false);
+					mBuffer.append(reference < 0 ? '&' : (char) reference);
+				} else {
+					mBuffer.append(c);
+				}
+			}
+			content = mBuffer.toString();
+		} else {
+			content = mInput.substring(mPosition, end);
+		}
+		mPosition = end;
+		TokenType type = mRawTextType;
+		mRawTextEnd = null;
+
+		if (content.length() == 0)
+			return next();
+		mText = content;
+		return mType = type;
+	}
+
+	/**
+	 * Read the markup starting at '<'.
+	 * 
+	 * @return type of the token read, null if the '<' is text, or EOF if the
+	 *         markup produced no token.
+	 */
+	private TokenType readMarkup() {
+		int next = mPosition + 1;
+		if (next >= mLength)
+			return null;
+		char c = mInput.charAt(next);
+		if (isLetter(c)) {
+			mPosition = next;
+			return readTag(TokenType.START_TAG);
+		} else if (c == '/') {
+			if (next + 1 >= mLength)
+				return null;
+			char d = mInput.charAt(next + 1);
+			if (isLetter(d)) {
+				mPosition = next + 1;
+				return readTag(TokenType.END_TAG);
+			} else if (d == '>') {
+				mPosition = next + 2;
+				return TokenType.EOF;
+			} else {
+				return readBogusComment(next + 1);
+			}
+		} else if (c == '!') {
+			if (mInput.startsWith("--", next + 1)) {
+				return readComment(next + 3);
+			} else if (mInput.regionMatches(true, next + 1, "DOCTYPE", 0, 7)) {
+				int end = mInput.indexOf('>', next);
+				mPosition = (end < 0) ? mLength : end + 1;
+				return TokenType.DOCTYPE;
+			} else {
+				return readBogusComment(next + 1);
+			}
+		} else if (c == '?') {
+			return readBogusComment(next);
+		} else {
+			return null;
+		}
+	}
+
+	private TokenType readComment(int start) {
+		int end;
+		int after;
+		if (mInput.startsWith(">", start)) {
+			end = start;
+			after = start + 1;
+		} else if (mInput.startsWith("->", start)) {
+			end = start;
+			after = start + 2;
+		} else {
+			end = mInput.indexOf("-->", start);
+			if (end < 0) {
+				end = mLength;
+				after = mLength;
+			} else {
+				after = end + 3;
+			}
+		}
+		mText = mInput.substring(start, end);
+		mPosition = after;
+		return TokenType.COMMENT;
+	}
+
+	private TokenType readBogusComment(int start) {
+		int end = mInput.indexOf('>', start);
+		if (end < 0) {
+			mText = mInput.substring(start);
+			mPosition = mLength;
+		} else {
+			mText = mInput.substring(start, end);
+			mPosition = end + 1;
+		}
+		return TokenType.COMMENT;
+	}
+
+	/**
+	 * Read a tag, starting at its name.
+	 * 
+	 * @return type, or EOF if the input ends within the tag, in which case
+	 *         the tag is dropped.
+	 */
+	private TokenType readTag(TokenType type) {
+		int start = mPosition;
+		while (mPosition < mLength && !isTagNameEnd(mInput.charAt(mPosition)))
+			mPosition++;
+		mTagName = mInput.substring(start, mPosition).toLowerCase();
+		mSelfClosing = false;
+		mAttributes = null;
+		mAttributeName = null;
+
+		// before attribute name
+		while (mPosition < mLength) {
+			char c = mInput.charAt(mPosition++);
+			if (isWhitespace(c)) {
+				continue;
+			} else if (c == '>') {
+				finishAttribute();
+				return type;
+			} else if (c == '/') {
+				if (mPosition >= mLength)
+					return TokenType.EOF;
+				// like Jsoup, the character after a stray '/' is dropped
+				if (mInput.charAt(mPosition++) == '>') {
+					finishAttribute();
+					mSelfClosing = true;
+					return type;
+				}
+			} else {
+				mPosition--;
+				if (!readAttribute())
+					return TokenType.EOF;
+				if (mInput.charAt(mPosition - 1) == '>') {
+					finishAttribute();
+					return type;
+				}
+			}
+		}
+		return TokenType.EOF;
+	}
+
+	/**
+	 * Read one attribute. Stops after the attribute, or after the '>' ending
+	 * the tag.
+	 * 
+	 * @return false if the input ends within the tag.
+	 */
+	private boolean readAttribute() {
+		finishAttribute();
+		int start = mPosition;
+		// a quote, '<' or '=' here is part of the name
+		mPosition++;
+		while (mPosition < mLength) {
+			char c = mInput.charAt(mPosition);
+			if (isWhitespace(c) || c == '/' || c == '=' || c == '>')
+				break;
+			mPosition++;
+		}
+		if (mPosition >= mLength)
+			return false;
+		mAttributeName = mInput.substring(start, mPosition).toLowerCase();
+		mAttributeValue = null;
+
+		// after attribute name
+		while (mPosition < mLength && isWhitespace(mInput.charAt(mPosition)))
+			mPosition++;
+		if (mPosition >= mLength)
+			return false;
+		char c = mInput.charAt(mPosition);
+		if (c == '>') {
+			mPosition++;
+			return true;
+		} else if (c != '=') {
+			// '/' or the next attribute
+			return true;
+		}
+		mPosition++;
+
+		// before attribute value
+		while (mPosition < mLength && isWhitespace(mInput.charAt(mPosition)))
+			mPosition++;
+		if (mPosition >= mLength)
+			return false;
+		mAttributeValue = new StringBuilder();
+		c = mInput.charAt(mPosition);
+		if (c == '"' || c == '\'') {
+			mPosition++;
+			while (mPosition < mLength) {
+				char d = mInput.charAt(mPosition++);
+				if (d == c) {
+					return mPosition < mLength;
+				} else if (d == '&') {
+					int reference = readCharacterReference(c, true);
+					mAttributeValue.append(reference < 0 ? '&'
+							: (char) reference);
+				} else {
+					mAttributeValue.append(d);
+				}
+			}
+			return false;
+		} else if (c == '>') {
+			mPosition++;
+			return true;
+		} else {
+			while (mPosition < mLength) {
+				char d = mInput.charAt(mPosition++);
+				if (isWhitespace(d)) {
+					return true;
+				} else if (d == '>') {
+					return true;
+				} else if (d == '&') {
+					int reference = readCharacterReference('>', true);
+					mAttributeValue.append(reference < 0 ? '&'
+							: (char) reference);
+				} else {
+					mAttributeValue.append(d);
+				}
+			}
+			return false;
+		}
+	}
+
+	private void finishAttribute() {
+		String name = (mAttributeName == null) ? "" : mAttributeName.trim();
+		if (name.length() > 0) {
+			if (mAttributes == null)
+				mAttributes = new LinkedHashMap<String, String>();
+			// like Jsoup, a repeated attribute keeps its position but not its
+			// value
+			mAttributes.put(name, (mAttributeValue == null) ? ""
+					: mAttributeValue.toString());
+		}
+		mAttributeName = null;
+		mAttributeValue = null;
+	}
+
+	/**
+	 * Read a character reference, starting after the '&'.
+	 * 
+	 * @return referenced character, or -1 if there is no valid reference, in
+	 *         which case nothing is consumed.
+	 */
+	private int readCharacterReference(char allowed, boolean inAttribute) {
+		if (mPosition >= mLength)
+			return -1;
+		char c = mInput.charAt(mPosition);
+		if ((allowed != 0 && c == allowed) || isWhitespace(c) || c == '<'
+				|| c == '&')
+			return -1;
+
+		int mark = mPosition;
+		if (c == '#') {
+			mPosition++;
+			boolean hex = mPosition < mLength
+					&& (mInput.charAt(mPosition) == 'x' || mInput
+							.charAt(mPosition) == 'X');
+			if (hex)
+				mPosition++;
+			int start = mPosition;
+			while (mPosition < mLength
+					&& isDigit(mInput.charAt(mPosition), hex))
+				mPosition++;
+			if (mPosition == start) {
+				mPosition = mark;
+				return -1;
+			}
+			String digits = mInput.substring(start, mPosition);
+			if (mPosition < mLength && mInput.charAt(mPosition) == ';')
+				mPosition++;
+			int value;
+			try {
+				value = Integer.parseInt(digits, hex ? 16 : 10);
+			} catch (NumberFormatException e) {
+				value = -1;
+			}
+			if (value == -1 || (value >= 0xD800 && value <= 0xDFFF)
+					|| value > 0x10FFFF)
+				return REPLACEMENT_CHAR;
+			// like Jsoup, characters outside of the BMP are truncated
+			return (char) value;
+		}
+
+		int end = mPosition;
+		while (end < mLength && isLetter(mInput.charAt(end)))
+			end++;
+		// longest prefix naming an entity
+		while (end > mPosition
+				&& !Entities.isNamedEntity(mInput.substring(mPosition, end)))
+			end--;
+		if (end == mPosition)
+			return -1;
+		if (inAttribute && end < mLength) {
+			char d = mInput.charAt(end);
+			if (isLetter(d) || isDigit(d, false) || d == '=' || d == '-'
+					|| d == '_')
+				return -1;
+		}
+		char value = Entities.getCharacterByName(mInput.substring(mPosition,
+				end));
+		mPosition = end;
+		if (mPosition < mLength && mInput.charAt(mPosition) == ';')
+			mPosition++;
+		return value;
+	}
+
+	private static boolean isTagNameEnd(char c) {
+		return isWhitespace(c) || c == '/' || c == '>';
+	}
+
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+	}
+
+	private static boolean isLetter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	private static boolean isDigit(char c, boolean hex) {
+		return (c >= '0' && c <= '9')
+				|| (hex && ((c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F')));
+	}
+
+}
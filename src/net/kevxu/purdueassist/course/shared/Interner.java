@@ -0,0 +1,56 @@
+package net.kevxu.purdueassist.course.shared;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Canonical instances of values repeated across many entries, i.e. campus
+ * names or the levels of a section, so that entries kept in memory share one
+ * copy of each instead of holding their own.
+ * <p>
+ * Only intern lists of values from a small set: interned lists are kept for
+ * the lifetime of the class. Strings are interned with String.intern(), and
+ * are collected once no entry refers to them.
+ */
+public final class Interner {
+
+	private static final ConcurrentMap<List<?>, List<?>> sLists = new ConcurrentHashMap<List<?>, List<?>>();
+
+	private Interner() {
+	}
+
+	/**
+	 * @param string
+	 *            String to intern, or null.
+	 * @return canonical instance of the String, or null.
+	 */
+	public static String intern(String string) {
+		return (string == null) ? null : string.intern();
+	}
+
+	/**
+	 * Get the canonical instance of a list. The list returned cannot be
+	 * modified, and the list given is not retained.
+	 * 
+	 * @param list
+	 *            list to intern, or null. Its elements have to be immutable.
+	 * @return canonical instance of the list, or null.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> List<T> intern(List<T> list) {
+		if (list == null)
+			return null;
+		List<?> canonical = sLists.get(list);
+		if (canonical == null) {
+			List<T> copy = Collections.unmodifiableList(new ArrayList<T>(list));
+			canonical = sLists.putIfAbsent(copy, copy);
+			if (canonical == null)
+				canonical = copy;
+		}
+		return (List<T>) canonical;
+	}
+
+}
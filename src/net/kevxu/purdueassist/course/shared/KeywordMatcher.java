@@ -0,0 +1,219 @@
+package net.kevxu.purdueassist.course.shared;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Finds a fixed set of keywords in text with a single automaton (Aho-Corasick),
+ * so that the text is read once however many keywords are looked for.
+ * <p>
+ * The automaton is fed one char at a time by the caller:
+ * 
+ * <pre>
+ * int state = KeywordMatcher.START;
+ * for (int i = 0; i &lt; text.length(); i++) {
+ * 	state = matcher.next(state, text.charAt(i));
+ * 	for (int keyword : matcher.getMatches(state))
+ * 		; // keyword ends at i
+ * }
+ * </pre>
+ * 
+ * Keywords are matched case sensitively and may only contain ASCII chars. An
+ * instance is immutable and may be shared between threads.
+ */
+public class KeywordMatcher {
+
+	/**
+	 * State before any char has been read.
+	 */
+	public static final int START = 0;
+
+	private static final int ALPHABET_SIZE = 128;
+	private static final int[] NO_MATCHES = new int[0];
+
+	private final String[] mKeywords;
+	private final int[] mTransitions;
+	private final int[][] mMatches;
+
+	/**
+	 * @param keywords
+	 *            keywords to look for. A keyword is referred to by its index.
+	 */
+	public KeywordMatcher(String... keywords) {
+		mKeywords = keywords.clone();
+
+		// trie of the keywords
+		List<int[]> trie = new ArrayList<int[]>();
+		List<int[]> matches = new ArrayList<int[]>();
+		trie.add(newState());
+		matches.add(NO_MATCHES);
+		for (int k = 0; k < mKeywords.length; k++) {
+			String keyword = mKeywords[k];
+			if (keyword.length() == 0)
+				throw new IllegalArgumentException("Empty keyword.");
+			int state = START;
+			for (int i = 0; i < keyword.length(); i++) {
+				char c = keyword.charAt(i);
+				if (c >= ALPHABET_SIZE)
+					throw new IllegalArgumentException("Keyword \"" + keyword
+							+ "\" is not ASCII.");
+				if (trie.get(state)[c] == START) {
+					trie.get(state)[c] = trie.size();
+					trie.add(newState());
+					matches.add(NO_MATCHES);
+				}
+				state = trie.get(state)[c];
+			}
+			matches.set(state, append(matches.get(state), k));
+		}
+
+		// complete the trie into an automaton, breadth first so that the
+		// fallback of a state is done before the state itself
+		int[] fallbacks = new int[trie.size()];
+		Queue<Integer> queue = new LinkedList<Integer>();
+		for (int c = 0; c < ALPHABET_SIZE; c++) {
+			int child = trie.get(START)[c];
+			if (child != START)
+				queue.add(child);
+		}
+		while (!queue.isEmpty()) {
+			int state = queue.remove();
+			int[] transitions = trie.get(state);
+			int[] fallbackTransitions = trie.get(fallbacks[state]);
+			for (int c = 0; c < ALPHABET_SIZE; c++) {
+				int child = transitions[c];
+				if (child == START) {
+					transitions[c] = fallbackTransitions[c];
+				} else {
+					fallbacks[child] = fallbackTransitions[c];
+					for (int keyword : matches.get(fallbacks[child]))
+						matches.set(child, append(matches.get(child), keyword));
+					queue.add(child);
+				}
+			}
+		}
+
+		mTransitions = new int[trie.size() * ALPHABET_SIZE];
+		for (int state = 0; state < trie.size(); state++) {
+			System.arraycopy(trie.get(state), 0, mTransitions, state
+					* ALPHABET_SIZE, ALPHABET_SIZE);
+		}
+		mMatches = matches.toArray(new int[matches.size()][]);
+	}
+
+	/**
+	 * Read one char.
+	 * 
+	 * @param state
+	 *            state after the previous char, or START.
+	 * @param c
+	 *            next char of the text.
+	 * @return state after c.
+	 */
+	public int next(int state, char c) {
+		return (c < ALPHABET_SIZE) ? mTransitions[state * ALPHABET_SIZE + c]
+				: START;
+	}
+
+	/**
+	 * Get the keywords ending at the last char read. Do not modify the
+	 * returned array.
+	 * 
+	 * @param state
+	 *            state returned by next().
+	 * @return indexes of the keywords, longest first; empty if none ends here.
+	 */
+	public int[] getMatches(int state) {
+		return mMatches[state];
+	}
+
+	/**
+	 * Find the first occurrence of every keyword, reading the text once.
+	 * 
+	 * @param text
+	 *            text to search.
+	 * @return for each keyword, the index where it first occurs in text, or -1
+	 *         if it does not occur.
+	 */
+	public int[] indexesOf(CharSequence text) {
+		int[] indexes = new int[mKeywords.length];
+		Arrays.fill(indexes, -1);
+		int found = 0;
+		int state = START;
+		for (int i = 0; i < text.length() && found < mKeywords.length; i++) {
+			state = next(state, text.charAt(i));
+			for (int keyword : mMatches[state]) {
+				if (indexes[keyword] < 0) {
+					indexes[keyword] = i + 1 - mKeywords[keyword].length();
+					found++;
+				}
+			}
+		}
+		return indexes;
+	}
+
+	/**
+	 * Find the first occurrence of some of the keywords. Reading stops as soon
+	 * as all of them are found.
+	 * 
+	 * @param text
+	 *            text to search.
+	 * @param keywords
+	 *            indexes of the keywords to find.
+	 * @return for each keyword, the index where it first occurs in text, or -1
+	 *         if it does not occur or was not asked for.
+	 */
+	public int[] indexesOf(CharSequence text, int... keywords) {
+		int[] indexes = new int[mKeywords.length];
+		Arrays.fill(indexes, -1);
+		boolean[] wanted = new boolean[mKeywords.length];
+		int left = 0;
+		for (int keyword : keywords) {
+			if (!wanted[keyword]) {
+				wanted[keyword] = true;
+				left++;
+			}
+		}
+		int state = START;
+		for (int i = 0; i < text.length() && left > 0; i++) {
+			state = next(state, text.charAt(i));
+			for (int keyword : mMatches[state]) {
+				if (wanted[keyword] && indexes[keyword] < 0) {
+					indexes[keyword] = i + 1 - mKeywords[keyword].length();
+					left--;
+				}
+			}
+		}
+		return indexes;
+	}
+
+	/**
+	 * @param keyword
+	 *            index of the keyword.
+	 * @return the keyword.
+	 */
+	public String getKeyword(int keyword) {
+		return mKeywords[keyword];
+	}
+
+	/**
+	 * @return number of keywords.
+	 */
+	public int getKeywordCount() {
+		return mKeywords.length;
+	}
+
+	private static int[] newState() {
+		return new int[ALPHABET_SIZE];
+	}
+
+	private static int[] append(int[] array, int value) {
+		int[] result = Arrays.copyOf(array, array.length + 1);
+		result[array.length] = value;
+		return result;
+	}
+
+}
@@ -0,0 +1,195 @@
+package net.kevxu.purdueassist.course.shared;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the keys looked up and not found for a while, so that looking
+ * them up again within the time to live answers not found without sending a
+ * request.
+ * <p>
+ * The cache holds at most a given number of keys; past that, the least
+ * recently used key is evicted. Hits, misses, expirations and evictions are
+ * counted. It can be used from any thread.
+ * @param <K>
+ *            type of key. It has to implement equals() and hashCode().
+ */
+public class NegativeCache<K> {
+
+	/** Not found outcome of a key, and when it expires. */
+	private static class Entry {
+		final Outcome<?> mOutcome;
+		final long mExpiresAt;
+
+		Entry(Outcome<?> outcome, long expiresAt) {
+			this.mOutcome = outcome;
+			this.mExpiresAt = expiresAt;
+		}
+	}
+
+	private final int mMaxSize;
+	private final long mTimeToLive;
+	private final Map<K, Entry> mEntries;
+
+	private final AtomicLong mHits = new AtomicLong(0);
+	private final AtomicLong mMisses = new AtomicLong(0);
+	private final AtomicLong mExpirations = new AtomicLong(0);
+	private final AtomicLong mEvictions = new AtomicLong(0);
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param maxSize
+	 *            maximum number of keys held.
+	 * @param timeToLive
+	 *            time a key is held for after it was not found.
+	 * @param unit
+	 *            unit of timeToLive.
+	 */
+	public NegativeCache(int maxSize, long timeToLive, TimeUnit unit) {
+		if (maxSize <= 0 || timeToLive <= 0)
+			throw new IllegalArgumentException(
+					"Size and time to live have to be positive.");
+		this.mMaxSize = maxSize;
+		this.mTimeToLive = unit.toNanos(timeToLive);
+		this.mEntries = new LinkedHashMap<K, Entry>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, Entry> eldest) {
+				if (size() <= mMaxSize)
+					return false;
+				mEvictions.incrementAndGet();
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Get the outcome of a key not found within the time to live.
+	 * 
+	 * @param key
+	 *            key to look up.
+	 * @return the NOT_FOUND outcome, or null if the key is not held.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Outcome<T> get(K key) {
+		long now = System.nanoTime();
+		Entry entry;
+		synchronized (mEntries) {
+			entry = mEntries.get(key);
+			if (entry != null && now - entry.mExpiresAt >= 0) {
+				mEntries.remove(key);
+				mExpirations.incrementAndGet();
+				entry = null;
+			}
+		}
+		if (entry == null) {
+			mMisses.incrementAndGet();
+			return null;
+		}
+		mHits.incrementAndGet();
+		return (Outcome<T>) entry.mOutcome;
+	}
+
+	/**
+	 * Remember a key if it was not found. Other outcomes are ignored.
+	 * 
+	 * @param key
+	 *            key looked up.
+	 * @param outcome
+	 *            outcome of the lookup.
+	 */
+	public void put(K key, Outcome<?> outcome) {
+		if (outcome.getStatus() != Outcome.Status.NOT_FOUND)
+			return;
+		Entry entry = new Entry(outcome, System.nanoTime() + mTimeToLive);
+		synchronized (mEntries) {
+			mEntries.put(key, entry);
+		}
+	}
+
+	/**
+	 * Forget a key, i.e. one known to exist now.
+	 * 
+	 * @param key
+	 *            key to forget.
+	 */
+	public void remove(K key) {
+		synchronized (mEntries) {
+			mEntries.remove(key);
+		}
+	}
+
+	/**
+	 * Forget every key which expired. Expired keys are otherwise only
+	 * dropped when looked up or evicted.
+	 */
+	public void removeExpired() {
+		long now = System.nanoTime();
+		synchronized (mEntries) {
+			Iterator<Entry> entries = mEntries.values().iterator();
+			while (entries.hasNext()) {
+				if (now - entries.next().mExpiresAt >= 0) {
+					entries.remove();
+					mExpirations.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	public void clear() {
+		synchronized (mEntries) {
+			mEntries.clear();
+		}
+	}
+
+	/**
+	 * @return number of keys held, expired or not.
+	 */
+	public int size() {
+		synchronized (mEntries) {
+			return mEntries.size();
+		}
+	}
+
+	/**
+	 * @return number of lookups answered by the cache.
+	 */
+	public long getHits() {
+		return mHits.get();
+	}
+
+	/**
+	 * @return number of lookups of keys not held.
+	 */
+	public long getMisses() {
+		return mMisses.get();
+	}
+
+	/**
+	 * @return number of keys dropped because their time to live was over.
+	 */
+	public long getExpirations() {
+		return mExpirations.get();
+	}
+
+	/**
+	 * @return number of keys dropped because the cache was full.
+	 */
+	public long getEvictions() {
+		return mEvictions.get();
+	}
+
+	@Override
+	public String toString() {
+		return "Size: " + size() + "; Hits: " + getHits() + "; Misses: "
+				+ getMisses() + "; Expirations: " + getExpirations()
+				+ "; Evictions: " + getEvictions() + ";";
+	}
+
+}
@@ -0,0 +1,178 @@
+package net.kevxu.purdueassist.course.shared;
+
+import java.io.IOException;
+
+/**
+ * Outcome of a lookup, as a value: found with an entry, not found, or failed
+ * to parse or to transfer the page.
+ * <p>
+ * Not found is a normal outcome when sweeping ranges of CRNs or cnbrs, so it
+ * carries only the message of the page; no exception is created for it
+ * unless toException() or get() is called. An instance is immutable.
+ * @param <T>
+ *            type of entry.
+ */
+public final class Outcome<T> {
+
+	public enum Status {
+		/** The entry was found and parsed. */
+		FOUND,
+		/** The page says there is no such section or course. */
+		NOT_FOUND,
+		/** The page could not be parsed, or was about something else. */
+		PARSE_ERROR,
+		/** The page could not be requested or read. */
+		TRANSPORT_ERROR
+	};
+
+	private final Status mStatus;
+	private final T mValue;
+	private final String mMessage;
+	private final Exception mCause;
+
+	private Outcome(Status status, T value, String message, Exception cause) {
+		this.mStatus = status;
+		this.mValue = value;
+		this.mMessage = message;
+		this.mCause = cause;
+	}
+
+	/**
+	 * @param value
+	 *            entry found.
+	 * @return a FOUND outcome.
+	 */
+	public static <T> Outcome<T> found(T value) {
+		return new Outcome<T>(Status.FOUND, value, null, null);
+	}
+
+	/**
+	 * @param message
+	 *            message of the page, or null.
+	 * @return a NOT_FOUND outcome.
+	 */
+	public static <T> Outcome<T> notFound(String message) {
+		return new Outcome<T>(Status.NOT_FOUND, null, message, null);
+	}
+
+	/**
+	 * @param cause
+	 *            exception raised while parsing.
+	 * @return a PARSE_ERROR outcome.
+	 */
+	public static <T> Outcome<T> parseError(Exception cause) {
+		return new Outcome<T>(Status.PARSE_ERROR, null, cause.getMessage(),
+				cause);
+	}
+
+	/**
+	 * @param cause
+	 *            exception raised while requesting or reading the page.
+	 * @return a TRANSPORT_ERROR outcome.
+	 */
+	public static <T> Outcome<T> transportError(Exception cause) {
+		return new Outcome<T>(Status.TRANSPORT_ERROR, null,
+				cause.getMessage(), cause);
+	}
+
+	/**
+	 * Get the outcome of a lookup which raised an exception:
+	 * CourseNotFoundException is NOT_FOUND, IOException is TRANSPORT_ERROR,
+	 * and anything else is PARSE_ERROR.
+	 * 
+	 * @param exception
+	 *            exception raised by the lookup.
+	 * @return the outcome.
+	 */
+	public static <T> Outcome<T> failed(Exception exception) {
+		if (exception instanceof CourseNotFoundException) {
+			return notFound(exception.getMessage());
+		} else if (exception instanceof IOException) {
+			return transportError(exception);
+		} else {
+			return parseError(exception);
+		}
+	}
+
+	public Status getStatus() {
+		return mStatus;
+	}
+
+	public boolean isFound() {
+		return mStatus == Status.FOUND;
+	}
+
+	/**
+	 * @return the entry if found, otherwise null.
+	 */
+	public T getValue() {
+		return mValue;
+	}
+
+	/**
+	 * @return message of the page if not found, of the exception if failed,
+	 *         otherwise null.
+	 */
+	public String getMessage() {
+		return mMessage;
+	}
+
+	/**
+	 * @return exception the lookup failed with, or null if it did not fail.
+	 */
+	public Exception getCause() {
+		return mCause;
+	}
+
+	/**
+	 * Get the exception the exception based API reports for this outcome. For
+	 * NOT_FOUND, a CourseNotFoundException without stack trace is created.
+	 * 
+	 * @return the exception, or null if found.
+	 */
+	public Exception toException() {
+		if (mStatus == Status.FOUND) {
+			return null;
+		} else if (mStatus == Status.NOT_FOUND) {
+			return new CourseNotFoundException(mMessage, false);
+		} else {
+			return mCause;
+		}
+	}
+
+	/**
+	 * Get the entry, or throw the exception of toException(). A failure
+	 * caused by another checked exception is wrapped into an IOException for
+	 * TRANSPORT_ERROR, or an HtmlParseException for PARSE_ERROR.
+	 * 
+	 * @return the entry.
+	 * @throws IOException
+	 * @throws HtmlParseException
+	 * @throws CourseNotFoundException
+	 */
+	public T get() throws IOException, HtmlParseException,
+			CourseNotFoundException {
+		Exception exception = toException();
+		if (exception == null)
+			return mValue;
+		if (exception instanceof IOException)
+			throw (IOException) exception;
+		if (exception instanceof HtmlParseException)
+			throw (HtmlParseException) exception;
+		if (exception instanceof CourseNotFoundException)
+			throw (CourseNotFoundException) exception;
+		if (exception instanceof RuntimeException)
+			throw (RuntimeException) exception;
+		if (mStatus == Status.TRANSPORT_ERROR)
+			throw new IOException(exception);
+		throw new HtmlParseException(exception);
+	}
+
+	@Override
+	public String toString() {
+		if (mStatus == Status.FOUND)
+			return mStatus + ": " + mValue;
+		return mStatus + ": " + mMessage;
+	}
+
+}
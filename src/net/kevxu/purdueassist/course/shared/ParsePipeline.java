@@ -0,0 +1,233 @@
+package net.kevxu.purdueassist.course.shared;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide stages responses go through once they arrive:
+ * <ol>
+ * <li>I/O: the HTTP thread reads the body into a buffer and hands it over;
+ * </li>
+ * <li>parse: a pool sized to the cores parses the buffer;</li>
+ * <li>delivery: another pool calls the listeners and completes the futures.
+ * </li>
+ * </ol>
+ * So slow parses do not hold connections, and slow listeners do not hold
+ * parse threads.
+ * <p>
+ * The queues between the stages are bounded. A stage handing work to a full
+ * queue waits, which in turn holds back the stage before it; the HTTP thread
+ * keeps its AdaptiveConcurrencyLimiter slot meanwhile, so no more requests are
+ * started. The depth of every queue is exposed to find the bottleneck; the
+ * queue in front of the I/O stage is the limiter's.
+ */
+public class ParsePipeline {
+
+	/** Number of threads parsing pages. */
+	public static final int PARSE_THREADS = Runtime.getRuntime()
+			.availableProcessors();
+
+	/** Number of pages read but not parsed yet, above which readers wait. */
+	public static final int PARSE_QUEUE_CAPACITY = 64;
+
+	/** Number of threads calling listeners. */
+	public static final int DELIVERY_THREADS = Runtime.getRuntime()
+			.availableProcessors();
+
+	/** Number of results not delivered yet, above which parsers wait. */
+	public static final int DELIVERY_QUEUE_CAPACITY = 256;
+
+	/** Idle stage threads are released after this many seconds. */
+	private static final long KEEP_ALIVE_SECONDS = 10;
+
+	private static ParsePipeline sInstance = null;
+
+	/** Executor of the stage the current thread belongs to, if any. */
+	private static final ThreadLocal<Executor> sCurrentStage =
+			new ThreadLocal<Executor>();
+
+	private final AtomicInteger mReading = new AtomicInteger(0);
+	private final ThreadPoolExecutor mParseExecutor;
+	private final ThreadPoolExecutor mDeliveryExecutor;
+
+	private ParsePipeline() {
+		mParseExecutor = newStage(PARSE_THREADS, PARSE_QUEUE_CAPACITY,
+				"purdueassist-parse-");
+		mDeliveryExecutor = newStage(DELIVERY_THREADS,
+				DELIVERY_QUEUE_CAPACITY, "purdueassist-callback-");
+	}
+
+	/**
+	 * Get the shared pipeline, creating it on first use.
+	 * 
+	 * @return the process-wide pipeline.
+	 */
+	public static synchronized ParsePipeline getInstance() {
+		if (sInstance == null) {
+			sInstance = new ParsePipeline();
+		}
+		return sInstance;
+	}
+
+	/**
+	 * Shut down the shared pipeline. Queued work is still done. Next call to
+	 * getInstance() creates a new pipeline.
+	 */
+	public static synchronized void shutdown() {
+		if (sInstance != null) {
+			sInstance.mParseExecutor.shutdown();
+			sInstance.mDeliveryExecutor.shutdown();
+			sInstance = null;
+		}
+	}
+
+	/**
+	 * Mark the calling thread as reading a response body, until endRead().
+	 */
+	public void beginRead() {
+		mReading.incrementAndGet();
+	}
+
+	/**
+	 * Mark the end of a read started with beginRead().
+	 */
+	public void endRead() {
+		mReading.decrementAndGet();
+	}
+
+	/**
+	 * Run a parse on the parse stage. If its queue is full, wait for space.
+	 * 
+	 * @param task
+	 *            parse of a page read by the calling thread.
+	 */
+	public void parse(Runnable task) {
+		mParseExecutor.execute(task);
+	}
+
+	/**
+	 * @return executor of the delivery stage. If its queue is full, execute()
+	 *         waits for space.
+	 */
+	public Executor getDeliveryExecutor() {
+		return mDeliveryExecutor;
+	}
+
+	/**
+	 * @return number of response bodies being read.
+	 */
+	public int getReading() {
+		return mReading.get();
+	}
+
+	/**
+	 * @return number of pages waiting to be parsed.
+	 */
+	public int getParseQueued() {
+		return mParseExecutor.getQueue().size();
+	}
+
+	/**
+	 * @return number of pages being parsed.
+	 */
+	public int getParsing() {
+		return mParseExecutor.getActiveCount();
+	}
+
+	/**
+	 * @return number of results waiting to be delivered.
+	 */
+	public int getDeliveryQueued() {
+		return mDeliveryExecutor.getQueue().size();
+	}
+
+	/**
+	 * @return number of results being delivered.
+	 */
+	public int getDelivering() {
+		return mDeliveryExecutor.getActiveCount();
+	}
+
+	@Override
+	public String toString() {
+		return "Reading: " + getReading() + "; " + "Parse Queued: "
+				+ getParseQueued() + "; " + "Parsing: " + getParsing() + "; "
+				+ "Delivery Queued: " + getDeliveryQueued() + "; "
+				+ "Delivering: " + getDelivering() + ";";
+	}
+
+	private static ThreadPoolExecutor newStage(int threads, int capacity,
+			String name) {
+		ThreadPoolExecutor stage = new Stage(threads, capacity,
+				new StageThreadFactory(name));
+		// Let the JVM exit once the pipeline has been idle for a while.
+		stage.allowCoreThreadTimeOut(true);
+		return stage;
+	}
+
+	private static class Stage extends ThreadPoolExecutor {
+
+		public Stage(int threads, int capacity, ThreadFactory threadFactory) {
+			super(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+					new ArrayBlockingQueue<Runnable>(capacity), threadFactory,
+					new WaitForSpacePolicy());
+		}
+
+		@Override
+		protected void beforeExecute(Thread thread, Runnable task) {
+			sCurrentStage.set(this);
+		}
+	}
+
+	/**
+	 * Wait for space in the queue instead of rejecting the task.
+	 */
+	private static class WaitForSpacePolicy implements RejectedExecutionHandler {
+
+		@Override
+		public void rejectedExecution(Runnable task,
+				ThreadPoolExecutor executor) {
+			if (executor.isShutdown())
+				throw new RejectedExecutionException("Pipeline shut down.");
+			if (sCurrentStage.get() == executor) {
+				// waiting for the own stage could wait forever
+				task.run();
+				return;
+			}
+			try {
+				executor.getQueue().put(task);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException(e);
+			}
+			// all threads may have timed out while waiting
+			if (executor.getPoolSize() == 0)
+				executor.prestartCoreThread();
+		}
+	}
+
+	private static class StageThreadFactory implements ThreadFactory {
+
+		private final String mPrefix;
+		private final AtomicInteger mCount = new AtomicInteger(0);
+
+		public StageThreadFactory(String prefix) {
+			this.mPrefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, mPrefix
+					+ mCount.incrementAndGet());
+			thread.setDaemon(false);
+			return thread;
+		}
+	}
+
+}
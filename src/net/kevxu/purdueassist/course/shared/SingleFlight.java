@@ -0,0 +1,79 @@
+package net.kevxu.purdueassist.course.shared;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Coalesces concurrent lookups of the same key. While a lookup for a key is
+ * in flight, further lookups of that key wait for it instead of starting
+ * their own, and every waiter gets the same value.
+ * <p>
+ * Nothing is cached: once a lookup completes, the next one for the same key
+ * starts a new load.
+ * @param <K>
+ *            type of key. It has to implement equals() and hashCode().
+ * @param <V>
+ *            type of value.
+ */
+public class SingleFlight<K, V> {
+
+	private final ConcurrentMap<K, CompletableFuture<V>> mInFlight = new ConcurrentHashMap<K, CompletableFuture<V>>();
+
+	/**
+	 * Get the value for a key, sharing the load with any lookup of the same
+	 * key already in flight.
+	 * 
+	 * @param key
+	 *            key to look up.
+	 * @param loader
+	 *            starts the load if no lookup of the key is in flight.
+	 * @return future of the value. Each caller gets its own future, so
+	 *         cancelling it does not affect other waiters.
+	 */
+	public CompletableFuture<V> get(final K key,
+			Function<? super K, CompletableFuture<V>> loader) {
+		CompletableFuture<V> shared = mInFlight.get(key);
+		if (shared == null) {
+			final CompletableFuture<V> created = new CompletableFuture<V>();
+			shared = mInFlight.putIfAbsent(key, created);
+			if (shared == null) {
+				shared = created;
+				CompletableFuture<V> loading;
+				try {
+					loading = loader.apply(key);
+				} catch (RuntimeException e) {
+					loading = new CompletableFuture<V>();
+					loading.completeExceptionally(e);
+				}
+				loading.whenComplete((value, throwable) -> {
+					mInFlight.remove(key, created);
+					complete(created, value, throwable);
+				});
+			}
+		}
+
+		final CompletableFuture<V> future = new CompletableFuture<V>();
+		shared.whenComplete((value, throwable) -> complete(future, value,
+				throwable));
+		return future;
+	}
+
+	/**
+	 * @return number of distinct keys being loaded.
+	 */
+	public int getInFlight() {
+		return mInFlight.size();
+	}
+
+	private static <V> void complete(CompletableFuture<V> future, V value,
+			Throwable throwable) {
+		if (throwable == null) {
+			future.complete(value);
+		} else {
+			future.completeExceptionally(throwable);
+		}
+	}
+
+}
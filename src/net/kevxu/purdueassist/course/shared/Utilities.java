@@ -2,16 +2,19 @@ package net.kevxu.purdueassist.course.shared;
 
 public class Utilities {
 
+	/** Largest CRN number; CRNs have at most 5 digits. */
+	public static final int MAX_CRN = 99999;
+
 	/**
-	 * Verify CRN number.
+	 * Verify CRN number. Whether a section with the CRN exists is not checked;
+	 * see CrnBitmap for that.
 	 * 
 	 * @param crn
 	 *            crn number.
 	 * @return true if crn number is valid, false if invalid.
 	 */
 	public static boolean verifyCrn(int crn) {
-		//TODO: To be implemented
-		return true;
+		return crn >= 0 && crn <= MAX_CRN;
 	}
 
 	/**
@@ -0,0 +1,398 @@
+package net.kevxu.purdueassist.shared.httpclient;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-endpoint concurrency governor using additive increase, multiplicative
+ * decrease (AIMD). Every successful request raises the allowed number of
+ * in-flight requests by roughly one per round trip; an error, a timeout or a
+ * latency far above the observed baseline cuts it.
+ * <p>
+ * Requests over the limit are queued and started, in order, as soon as a slot
+ * is released. The current limit and the observed latency and error rates are
+ * exposed so that they can be charted.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+	/**
+	 * How a request finished, from the point of view of congestion control.
+	 * CANCELLED frees the slot without affecting the limit.
+	 */
+	public enum Outcome {
+		SUCCESS, ERROR, TIMEOUT, CANCELLED
+	};
+
+	public static final int DEFAULT_INITIAL_LIMIT = 4;
+	public static final int DEFAULT_MIN_LIMIT = 1;
+	/**
+	 * Ceiling of limiters whose transport gives none, see
+	 * forEndpoint(String, int).
+	 */
+	public static final int DEFAULT_MAX_LIMIT = 64;
+
+	/** Factor applied to the limit on error or timeout. */
+	private static final double BACKOFF_RATIO = 0.5;
+	/** Factor applied to the limit when latency is well above baseline. */
+	private static final double LATENCY_BACKOFF_RATIO = 0.9;
+	/** Latency above baseline times this factor counts as congestion. */
+	private static final double LATENCY_TOLERANCE = 2.0;
+	/** Smoothing factor of the moving averages. */
+	private static final double SMOOTHING = 0.1;
+	/** Smoothing factor of the slowly moving latency baseline. */
+	private static final double BASELINE_SMOOTHING = 0.01;
+	/** Number of recent latencies kept for percentiles. */
+	private static final int LATENCY_SAMPLES = 256;
+
+	private static final ConcurrentMap<String, AdaptiveConcurrencyLimiter> sLimiters = new ConcurrentHashMap<String, AdaptiveConcurrencyLimiter>();
+
+	private final String mEndpoint;
+	private final Queue<Runnable> mQueue = new ArrayDeque<Runnable>();
+
+	private int mMinLimit;
+	private int mMaxLimit;
+	private double mLimit;
+	private int mInFlight = 0;
+
+	private double mLatencyNanos = 0;
+	private double mBaselineLatencyNanos = 0;
+	private double mErrorRate = 0;
+	private double mTimeoutRate = 0;
+	private long mLastBackoffNanos = 0;
+
+	private final long[] mLatencySamples = new long[LATENCY_SAMPLES];
+	private int mLatencySampleCount = 0;
+
+	public AdaptiveConcurrencyLimiter(String endpoint) {
+		this(endpoint, DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT,
+				DEFAULT_MAX_LIMIT);
+	}
+
+	public AdaptiveConcurrencyLimiter(String endpoint, int initialLimit,
+			int minLimit, int maxLimit) {
+		if (minLimit < 1 || maxLimit < minLimit)
+			throw new IllegalArgumentException("Invalid limits: min "
+					+ minLimit + ", max " + maxLimit + ".");
+		this.mEndpoint = endpoint;
+		this.mMinLimit = minLimit;
+		this.mMaxLimit = maxLimit;
+		this.mLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+	}
+
+	/**
+	 * Get the shared limiter for an endpoint, creating it on first use with
+	 * DEFAULT_MAX_LIMIT as its ceiling. It is not the limiter of any
+	 * transport, see forEndpoint(Class, String, int).
+	 * 
+	 * @param url
+	 *            endpoint URL. Query string, if any, is ignored.
+	 * @return limiter shared by every request to the endpoint.
+	 */
+	public static AdaptiveConcurrencyLimiter forEndpoint(String url) {
+		return forEndpoint(null, url, DEFAULT_MAX_LIMIT);
+	}
+
+	/**
+	 * Get the shared limiter of a transport for an endpoint, creating it on
+	 * first use. Each transport has a limiter of its own, since the ceiling is
+	 * what the transport can have in flight to one host, i.e. its connections
+	 * per route, so that the limit is set by AIMD rather than by the ceiling,
+	 * and latencies include no queueing inside the transport.
+	 * 
+	 * @param transport
+	 *            class of the transport, or null for none.
+	 * @param url
+	 *            endpoint URL. Query string, if any, is ignored.
+	 * @param maxLimit
+	 *            upper bound of the limit, used when the limiter is created.
+	 * @return limiter shared by every request of the transport to the
+	 *         endpoint.
+	 */
+	public static AdaptiveConcurrencyLimiter forEndpoint(Class<?> transport,
+			String url, int maxLimit) {
+		String endpoint = endpointOf(url);
+		String key = (transport == null) ? endpoint : transport.getName()
+				+ " " + endpoint;
+		AdaptiveConcurrencyLimiter limiter = sLimiters.get(key);
+		if (limiter == null) {
+			limiter = new AdaptiveConcurrencyLimiter(endpoint,
+					DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, maxLimit);
+			AdaptiveConcurrencyLimiter existing = sLimiters.putIfAbsent(key,
+					limiter);
+			if (existing != null)
+				limiter = existing;
+		}
+		return limiter;
+	}
+
+	/**
+	 * Get a percentile of the latency of recent successful requests to an
+	 * endpoint, through whichever transport sent them, without creating a
+	 * limiter.
+	 * 
+	 * @param url
+	 *            endpoint URL. Query string, if any, is ignored.
+	 * @param percentile
+	 *            percentile between 0 and 100, i.e. 95.
+	 * @param timeUnit
+	 *            unit of returned latency.
+	 * @return the highest percentile of the limiters of the endpoint, or 0 if
+	 *         no request succeeded yet.
+	 */
+	public static long getLatencyPercentile(String url, double percentile,
+			TimeUnit timeUnit) {
+		String endpoint = endpointOf(url);
+		long latency = 0;
+		for (AdaptiveConcurrencyLimiter limiter : sLimiters.values()) {
+			if (limiter.mEndpoint.equals(endpoint))
+				latency = Math.max(latency, limiter.getLatencyPercentile(
+						percentile, timeUnit));
+		}
+		return latency;
+	}
+
+	/**
+	 * @return every limiter created by forEndpoint(), i.e. for charting.
+	 */
+	public static List<AdaptiveConcurrencyLimiter> getLimiters() {
+		return new ArrayList<AdaptiveConcurrencyLimiter>(sLimiters.values());
+	}
+
+	private static String endpointOf(String url) {
+		int query = url.indexOf('?');
+		return (query < 0) ? url : url.substring(0, query);
+	}
+
+	/**
+	 * Classify an exception raised by a request.
+	 * 
+	 * @param e
+	 *            exception raised by the request.
+	 * @return TIMEOUT for timeouts, ERROR otherwise.
+	 */
+	public static Outcome outcomeOf(Exception e) {
+		// SocketTimeoutException and ConnectTimeoutException both extend it
+		return (e instanceof InterruptedIOException) ? Outcome.TIMEOUT
+				: Outcome.ERROR;
+	}
+
+	/**
+	 * Classify an HTTP status code.
+	 * 
+	 * @param statusCode
+	 *            HTTP status code of the response.
+	 * @return ERROR if the server is overloaded or failing, SUCCESS otherwise.
+	 */
+	public static Outcome outcomeOf(int statusCode) {
+		return (statusCode >= 500 || statusCode == 429) ? Outcome.ERROR
+				: Outcome.SUCCESS;
+	}
+
+	/**
+	 * Run the task as soon as the number of in-flight requests is below the
+	 * limit, possibly right away on the calling thread. Every task run must be
+	 * matched by exactly one call to release().
+	 * 
+	 * @param task
+	 *            task starting the request.
+	 */
+	public void execute(Runnable task) {
+		synchronized (this) {
+			if (mInFlight >= currentLimit()) {
+				mQueue.add(task);
+				return;
+			}
+			mInFlight++;
+		}
+		task.run();
+	}
+
+	/**
+	 * Report that a request started by execute() has finished, and start
+	 * queued requests if the limit allows.
+	 * 
+	 * @param latencyNanos
+	 *            time between sending the request and getting its outcome.
+	 * @param outcome
+	 *            how the request finished.
+	 */
+	public void release(long latencyNanos, Outcome outcome) {
+		List<Runnable> ready = new ArrayList<Runnable>();
+		synchronized (this) {
+			mInFlight--;
+			update(latencyNanos, outcome);
+			while (!mQueue.isEmpty() && mInFlight < currentLimit()) {
+				ready.add(mQueue.poll());
+				mInFlight++;
+			}
+		}
+		for (Runnable task : ready) {
+			task.run();
+		}
+	}
+
+	private void update(long latencyNanos, Outcome outcome) {
+		if (outcome == Outcome.CANCELLED)
+			return;
+
+		mErrorRate += SMOOTHING
+				* ((outcome == Outcome.ERROR ? 1 : 0) - mErrorRate);
+		mTimeoutRate += SMOOTHING
+				* ((outcome == Outcome.TIMEOUT ? 1 : 0) - mTimeoutRate);
+
+		if (outcome != Outcome.SUCCESS) {
+			backoff(BACKOFF_RATIO);
+			return;
+		}
+
+		mLatencySamples[mLatencySampleCount++ % LATENCY_SAMPLES] = latencyNanos;
+		if (mLatencySampleCount == 2 * LATENCY_SAMPLES)
+			mLatencySampleCount = LATENCY_SAMPLES;
+
+		if (mLatencyNanos == 0) {
+			mLatencyNanos = latencyNanos;
+			mBaselineLatencyNanos = latencyNanos;
+		} else {
+			mLatencyNanos += SMOOTHING * (latencyNanos - mLatencyNanos);
+			mBaselineLatencyNanos += BASELINE_SMOOTHING
+					* (latencyNanos - mBaselineLatencyNanos);
+		}
+
+		if (mLatencyNanos > LATENCY_TOLERANCE * mBaselineLatencyNanos) {
+			backoff(LATENCY_BACKOFF_RATIO);
+		} else if (mInFlight + 1 >= currentLimit()) {
+			// only grow while the limit is actually being used
+			mLimit = Math.min(mMaxLimit, mLimit + 1.0 / mLimit);
+		}
+	}
+
+	private void backoff(double ratio) {
+		// Requests in flight when the limit was cut report their outcome
+		// later; cut at most once per round trip so that one congestion event
+		// is not counted many times.
+		long now = System.nanoTime();
+		if (mLastBackoffNanos != 0 && now - mLastBackoffNanos < mLatencyNanos)
+			return;
+		mLastBackoffNanos = now;
+		mLimit = Math.max(mMinLimit, mLimit * ratio);
+	}
+
+	private int currentLimit() {
+		return (int) mLimit;
+	}
+
+	/**
+	 * @return endpoint governed by this limiter.
+	 */
+	public String getEndpoint() {
+		return mEndpoint;
+	}
+
+	/**
+	 * @return number of requests allowed in flight at the moment.
+	 */
+	public synchronized int getLimit() {
+		return currentLimit();
+	}
+
+	/**
+	 * @return number of requests in flight.
+	 */
+	public synchronized int getInFlight() {
+		return mInFlight;
+	}
+
+	/**
+	 * @return number of requests waiting for a slot.
+	 */
+	public synchronized int getQueued() {
+		return mQueue.size();
+	}
+
+	/**
+	 * @param timeUnit
+	 *            unit of returned latency.
+	 * @return moving average of latency of successful requests.
+	 */
+	public synchronized long getLatency(TimeUnit timeUnit) {
+		return timeUnit.convert((long) mLatencyNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Get a percentile of the latency of recent successful requests.
+	 * 
+	 * @param percentile
+	 *            percentile between 0 and 100, i.e. 95.
+	 * @param timeUnit
+	 *            unit of returned latency.
+	 * @return latency percentile, or 0 if no request has succeeded yet.
+	 */
+	public long getLatencyPercentile(double percentile, TimeUnit timeUnit) {
+		long[] samples;
+		synchronized (this) {
+			samples = Arrays.copyOf(mLatencySamples,
+					Math.min(mLatencySampleCount, LATENCY_SAMPLES));
+		}
+		if (samples.length == 0)
+			return 0;
+		Arrays.sort(samples);
+		int index = (int) Math.ceil(percentile / 100.0 * samples.length) - 1;
+		index = Math.max(0, Math.min(samples.length - 1, index));
+		return timeUnit.convert(samples[index], TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return moving average of the fraction of requests failing.
+	 */
+	public synchronized double getErrorRate() {
+		return mErrorRate;
+	}
+
+	/**
+	 * @return moving average of the fraction of requests timing out.
+	 */
+	public synchronized double getTimeoutRate() {
+		return mTimeoutRate;
+	}
+
+	/**
+	 * @param minLimit
+	 *            lower bound of the limit.
+	 * @param maxLimit
+	 *            upper bound of the limit.
+	 */
+	public synchronized void setLimitBounds(int minLimit, int maxLimit) {
+		if (minLimit < 1 || maxLimit < minLimit)
+			throw new IllegalArgumentException("Invalid limits: min "
+					+ minLimit + ", max " + maxLimit + ".");
+		this.mMinLimit = minLimit;
+		this.mMaxLimit = maxLimit;
+		this.mLimit = Math.max(minLimit, Math.min(maxLimit, mLimit));
+	}
+
+	/**
+	 * @return upper bound of the limit.
+	 */
+	public synchronized int getMaxLimit() {
+		return mMaxLimit;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "Endpoint: " + mEndpoint + "; " + "Limit: " + currentLimit()
+				+ "; " + "Max Limit: " + mMaxLimit
+				+ "; " + "In Flight: " + mInFlight + "; " + "Queued: "
+				+ mQueue.size() + "; " + "Latency: "
+				+ TimeUnit.NANOSECONDS.toMillis((long) mLatencyNanos)
+				+ " ms; " + "Error Rate: " + mErrorRate + "; "
+				+ "Timeout Rate: " + mTimeoutRate + ";";
+	}
+
+}
@@ -3,34 +3,53 @@ package net.kevxu.purdueassist.shared.httpclient;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
 
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.RequestAcceptEncoding;
+import org.apache.http.client.protocol.ResponseContentEncoding;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
 
 /**
- * Simplest implementation of HttpClientAsync.
+ * Simplest implementation of HttpClientAsync. Each request gets its own
+ * client, connection and thread.
  * 
  * @author Kaiwen Xu (kevin)
  */
 public class BasicHttpClientAsync implements HttpClientAsync {
 
+	/**
+	 * Factory creating BasicHttpClientAsync instances.
+	 */
+	public static final HttpClientAsyncFactory FACTORY = new HttpClientAsyncFactory() {
+
+		@Override
+		public HttpClientAsync newHttpClient(String url,
+				HttpMethod httpMethod, HttpRequestListener httpRequestListener) {
+			return new BasicHttpClientAsync(url, httpMethod,
+					httpRequestListener);
+		}
+	};
+
 	private String mUrl;
 	private HttpMethod mMethod;
 	private HttpRequestListener mListener;
 	private FutureTask<?> mFutureTask;
-	private ExecutorService mExecutor;
 
 	private List<NameValuePair> mParameters = null;
 
+	private volatile HttpUriRequest mRequest = null;
+	private volatile boolean mCancelled = false;
+
 	public interface HttpRequestListener {
 		public void onRequestFinished(HttpResponse httpResponse);
 
@@ -45,17 +64,26 @@ public class BasicHttpClientAsync implements HttpClientAsync {
 		this.mMethod = httpMethod;
 		this.mListener = httpRequestListener;
 		this.mFutureTask = new FutureTask<Object>(httpTask, null);
-		this.mExecutor = Executors.newSingleThreadExecutor();
 	}
 
 	private Runnable httpTask = new Runnable() {
 
 		@Override
 		public void run() {
-			HttpClient httpClient = new DefaultHttpClient();
+			HttpParams params = new BasicHttpParams();
+			HttpConnectionParams.setConnectionTimeout(params,
+					PooledHttpTransport.CONNECT_TIMEOUT_MILLIS);
+			HttpConnectionParams.setSoTimeout(params,
+					PooledHttpTransport.SOCKET_TIMEOUT_MILLIS);
+			DefaultHttpClient httpClient = new DefaultHttpClient(params);
+			httpClient.addRequestInterceptor(new RequestAcceptEncoding());
+			httpClient.addResponseInterceptor(new ResponseContentEncoding());
 			switch (mMethod) {
 			case GET: {
 				HttpGet httpGet = new HttpGet(mUrl);
+				mRequest = httpGet;
+				if (mCancelled)
+					httpGet.abort();
 				try {
 					HttpResponse httpResponse = httpClient.execute(httpGet);
 					mListener.onRequestFinished(httpResponse);
@@ -63,8 +91,6 @@ public class BasicHttpClientAsync implements HttpClientAsync {
 					mListener.onRequestFinished(e);
 				} catch (IOException e) {
 					mListener.onRequestFinished(e);
-				} finally {
-					mExecutor.shutdown();
 				}
 				break;
 			}
@@ -77,6 +103,9 @@ public class BasicHttpClientAsync implements HttpClientAsync {
 						e.printStackTrace();
 					}
 				}
+				mRequest = httpPost;
+				if (mCancelled)
+					httpPost.abort();
 				try {
 					HttpResponse httpResponse = httpClient.execute(httpPost);
 					mListener.onRequestFinished(httpResponse);
@@ -84,8 +113,6 @@ public class BasicHttpClientAsync implements HttpClientAsync {
 					mListener.onRequestFinished(e);
 				} catch (IOException e) {
 					mListener.onRequestFinished(e);
-				} finally {
-					mExecutor.shutdown();
 				}
 				break;
 			}
@@ -94,6 +121,7 @@ public class BasicHttpClientAsync implements HttpClientAsync {
 		}
 	};
 
+	@Override
 	public void setParameters(List<NameValuePair> parameters)
 			throws MethodNotPostException {
 		if (mMethod != HttpMethod.POST) {
@@ -103,9 +131,29 @@ public class BasicHttpClientAsync implements HttpClientAsync {
 		}
 	}
 
+	/**
+	 * Start the request on its own thread, a virtual thread if chosen with
+	 * RequestThreads.
+	 */
 	@Override
 	public void getResponse() {
-		mExecutor.execute(mFutureTask);
+		RequestThreads.start(mFutureTask);
+	}
+
+	@Override
+	public void cancel() {
+		mCancelled = true;
+		HttpUriRequest request = mRequest;
+		if (request != null)
+			request.abort();
+	}
+
+	/**
+	 * Same as cancel(), as requests are not limited.
+	 */
+	@Override
+	public void timeOut() {
+		cancel();
 	}
 
 }
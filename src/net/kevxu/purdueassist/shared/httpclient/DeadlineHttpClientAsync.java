@@ -0,0 +1,130 @@
+package net.kevxu.purdueassist.shared.httpclient;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.kevxu.purdueassist.shared.httpclient.BasicHttpClientAsync.HttpRequestListener;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.ClientProtocolException;
+
+/**
+ * HttpClientAsync bounding the total time of a request, including the time
+ * spent waiting for a connection or a concurrency slot. When the deadline
+ * passes, the underlying request is timed out, so that the endpoint's
+ * AdaptiveConcurrencyLimiter counts it as a timeout, and the listener is
+ * called with a RequestTimeoutException right away.
+ * <p>
+ * The listener is called exactly once, either by the underlying request or by
+ * the deadline.
+ */
+public class DeadlineHttpClientAsync implements HttpClientAsync {
+
+	private final HttpClientAsync mDelegate;
+	private final HttpRequestListener mListener;
+	private final long mDeadlineMillis;
+
+	private final AtomicBoolean mFinished = new AtomicBoolean(false);
+	private volatile ScheduledFuture<?> mTimer = null;
+
+	/**
+	 * Get a factory bounding requests created by another factory.
+	 * 
+	 * @param delegateFactory
+	 *            factory creating the underlying requests.
+	 * @param deadlineMillis
+	 *            deadline of each request, in milliseconds.
+	 * @return factory creating DeadlineHttpClientAsync instances.
+	 */
+	public static HttpClientAsyncFactory factory(
+			final HttpClientAsyncFactory delegateFactory,
+			final long deadlineMillis) {
+		return new HttpClientAsyncFactory() {
+
+			@Override
+			public HttpClientAsync newHttpClient(String url,
+					HttpMethod httpMethod,
+					HttpRequestListener httpRequestListener) {
+				return new DeadlineHttpClientAsync(delegateFactory, url,
+						httpMethod, httpRequestListener, deadlineMillis);
+			}
+		};
+	}
+
+	public DeadlineHttpClientAsync(HttpClientAsyncFactory delegateFactory,
+			String url, HttpMethod httpMethod,
+			HttpRequestListener httpRequestListener, long deadlineMillis) {
+		this.mListener = httpRequestListener;
+		this.mDeadlineMillis = deadlineMillis;
+		this.mDelegate = delegateFactory.newHttpClient(url, httpMethod,
+				new HttpRequestListener() {
+
+					@Override
+					public void onRequestFinished(HttpResponse httpResponse) {
+						if (finish())
+							mListener.onRequestFinished(httpResponse);
+					}
+
+					@Override
+					public void onRequestFinished(ClientProtocolException e) {
+						if (finish())
+							mListener.onRequestFinished(e);
+					}
+
+					@Override
+					public void onRequestFinished(IOException e) {
+						if (finish())
+							mListener.onRequestFinished(e);
+					}
+				});
+	}
+
+	private boolean finish() {
+		if (!mFinished.compareAndSet(false, true))
+			return false;
+		ScheduledFuture<?> timer = mTimer;
+		if (timer != null)
+			timer.cancel(false);
+		return true;
+	}
+
+	@Override
+	public void setParameters(List<NameValuePair> parameters)
+			throws MethodNotPostException {
+		mDelegate.setParameters(parameters);
+	}
+
+	@Override
+	public void getResponse() {
+		mTimer = RequestScheduler.get().schedule(new Runnable() {
+
+			@Override
+			public void run() {
+				if (!mFinished.compareAndSet(false, true))
+					return;
+				mDelegate.timeOut();
+				mListener.onRequestFinished(new RequestTimeoutException(
+						"Request did not finish within " + mDeadlineMillis
+								+ " ms."));
+			}
+		}, mDeadlineMillis, TimeUnit.MILLISECONDS);
+		if (mFinished.get())
+			mTimer.cancel(false);
+		mDelegate.getResponse();
+	}
+
+	@Override
+	public void cancel() {
+		mDelegate.cancel();
+	}
+
+	@Override
+	public void timeOut() {
+		mDelegate.timeOut();
+	}
+
+}
@@ -0,0 +1,239 @@
+package net.kevxu.purdueassist.shared.httpclient;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import net.kevxu.purdueassist.shared.httpclient.BasicHttpClientAsync.HttpRequestListener;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.ClientProtocolException;
+
+/**
+ * HttpClientAsync sending a second, identical request when the first one is
+ * slower than most recent requests to the same endpoint. The first response
+ * wins and the other request is cancelled, which cuts the tail latency caused
+ * by an occasional slow connection or server thread.
+ * <p>
+ * The hedge is sent once the first request has been outstanding longer than
+ * a percentile of the latencies observed by the endpoint's
+ * AdaptiveConcurrencyLimiter of the underlying transport, but never earlier
+ * than a minimum delay. Since the hedge goes through the same limiter, it is
+ * held back when the endpoint is congested. Only use it for requests that are
+ * safe to repeat, i.e. lookups.
+ * <p>
+ * A failure is reported only when no other attempt is outstanding.
+ */
+public class HedgedHttpClientAsync implements HttpClientAsync {
+
+	/** Default latency percentile after which the hedge is sent. */
+	public static final double DEFAULT_PERCENTILE = 95;
+
+	/** Default minimum delay before the hedge is sent, in milliseconds. */
+	public static final long DEFAULT_MIN_DELAY_MILLIS = 50;
+
+	private final HttpClientAsyncFactory mDelegateFactory;
+	private final String mUrl;
+	private final HttpMethod mMethod;
+	private final HttpRequestListener mListener;
+	private final double mPercentile;
+	private final long mMinDelayMillis;
+
+	private List<NameValuePair> mParameters = null;
+
+	private final Attempt mPrimary;
+	private Attempt mHedge = null;
+	private ScheduledFuture<?> mTimer = null;
+	private boolean mFinished = false;
+
+	/**
+	 * Get a factory hedging requests created by another factory.
+	 * 
+	 * @param delegateFactory
+	 *            factory creating the underlying requests.
+	 * @param percentile
+	 *            latency percentile after which the hedge is sent, i.e. 95.
+	 * @param minDelayMillis
+	 *            minimum delay before the hedge is sent, in milliseconds.
+	 * @return factory creating HedgedHttpClientAsync instances.
+	 */
+	public static HttpClientAsyncFactory factory(
+			final HttpClientAsyncFactory delegateFactory,
+			final double percentile, final long minDelayMillis) {
+		return new HttpClientAsyncFactory() {
+
+			@Override
+			public HttpClientAsync newHttpClient(String url,
+					HttpMethod httpMethod,
+					HttpRequestListener httpRequestListener) {
+				return new HedgedHttpClientAsync(delegateFactory, url,
+						httpMethod, httpRequestListener, percentile,
+						minDelayMillis);
+			}
+		};
+	}
+
+	public HedgedHttpClientAsync(HttpClientAsyncFactory delegateFactory,
+			String url, HttpMethod httpMethod,
+			HttpRequestListener httpRequestListener) {
+		this(delegateFactory, url, httpMethod, httpRequestListener,
+				DEFAULT_PERCENTILE, DEFAULT_MIN_DELAY_MILLIS);
+	}
+
+	public HedgedHttpClientAsync(HttpClientAsyncFactory delegateFactory,
+			String url, HttpMethod httpMethod,
+			HttpRequestListener httpRequestListener, double percentile,
+			long minDelayMillis) {
+		this.mDelegateFactory = delegateFactory;
+		this.mUrl = url;
+		this.mMethod = httpMethod;
+		this.mListener = httpRequestListener;
+		this.mPercentile = percentile;
+		this.mMinDelayMillis = minDelayMillis;
+		this.mPrimary = new Attempt();
+	}
+
+	@Override
+	public void setParameters(List<NameValuePair> parameters)
+			throws MethodNotPostException {
+		mPrimary.mHttpClient.setParameters(parameters);
+		this.mParameters = parameters;
+	}
+
+	@Override
+	public void getResponse() {
+		long delayMillis = Math.max(mMinDelayMillis,
+				AdaptiveConcurrencyLimiter.getLatencyPercentile(mUrl,
+						mPercentile, TimeUnit.MILLISECONDS));
+		synchronized (this) {
+			mTimer = RequestScheduler.get().schedule(new Runnable() {
+
+				@Override
+				public void run() {
+					hedge();
+				}
+			}, delayMillis, TimeUnit.MILLISECONDS);
+		}
+		mPrimary.mHttpClient.getResponse();
+	}
+
+	private void hedge() {
+		Attempt hedge;
+		synchronized (this) {
+			if (mFinished || mHedge != null)
+				return;
+			hedge = new Attempt();
+			if (mParameters != null) {
+				try {
+					hedge.mHttpClient.setParameters(mParameters);
+				} catch (MethodNotPostException e) {
+					// parameters were accepted by the primary request
+					throw new IllegalStateException(e);
+				}
+			}
+			mHedge = hedge;
+		}
+		hedge.mHttpClient.getResponse();
+	}
+
+	/**
+	 * Cancel both attempts.
+	 */
+	@Override
+	public void cancel() {
+		Attempt hedge;
+		synchronized (this) {
+			if (mTimer != null)
+				mTimer.cancel(false);
+			hedge = mHedge;
+		}
+		mPrimary.mHttpClient.cancel();
+		if (hedge != null)
+			hedge.mHttpClient.cancel();
+	}
+
+	/**
+	 * Time out both attempts.
+	 */
+	@Override
+	public void timeOut() {
+		Attempt hedge;
+		synchronized (this) {
+			if (mTimer != null)
+				mTimer.cancel(false);
+			hedge = mHedge;
+		}
+		mPrimary.mHttpClient.timeOut();
+		if (hedge != null)
+			hedge.mHttpClient.timeOut();
+	}
+
+	/**
+	 * @return true if the response of this attempt should be delivered.
+	 */
+	private boolean succeeded(Attempt attempt) {
+		Attempt other;
+		synchronized (this) {
+			attempt.mDone = true;
+			if (mFinished)
+				return false;
+			mFinished = true;
+			if (mTimer != null)
+				mTimer.cancel(false);
+			other = (attempt == mPrimary) ? mHedge : mPrimary;
+			if (other != null && other.mDone)
+				other = null;
+		}
+		if (other != null)
+			other.mHttpClient.cancel();
+		return true;
+	}
+
+	/**
+	 * @return true if the failure of this attempt should be delivered.
+	 */
+	private synchronized boolean failed(Attempt attempt) {
+		attempt.mDone = true;
+		if (mFinished)
+			return false;
+		Attempt other = (attempt == mPrimary) ? mHedge : mPrimary;
+		if (other != null && !other.mDone)
+			return false;
+		mFinished = true;
+		if (mTimer != null)
+			mTimer.cancel(false);
+		return true;
+	}
+
+	private class Attempt implements HttpRequestListener {
+
+		private final HttpClientAsync mHttpClient;
+		private boolean mDone = false;
+
+		public Attempt() {
+			this.mHttpClient = mDelegateFactory.newHttpClient(mUrl, mMethod,
+					this);
+		}
+
+		@Override
+		public void onRequestFinished(HttpResponse httpResponse) {
+			if (succeeded(this))
+				mListener.onRequestFinished(httpResponse);
+		}
+
+		@Override
+		public void onRequestFinished(ClientProtocolException e) {
+			if (failed(this))
+				mListener.onRequestFinished(e);
+		}
+
+		@Override
+		public void onRequestFinished(IOException e) {
+			if (failed(this))
+				mListener.onRequestFinished(e);
+		}
+	}
+
+}
@@ -1,11 +1,32 @@
 package net.kevxu.purdueassist.shared.httpclient;
 
+import java.util.List;
+
+import org.apache.http.NameValuePair;
+
 public interface HttpClientAsync {
 
 	public enum HttpMethod {
 		GET, POST
 	};
 
+	public void setParameters(List<NameValuePair> parameters)
+			throws MethodNotPostException;
+
 	public void getResponse();
 
+	/**
+	 * Cancel the request. If the listener has not been called yet, it will be
+	 * called with an IOException. If called by the listener, the rest of the
+	 * response is dropped without being read.
+	 */
+	public void cancel();
+
+	/**
+	 * Cancel the request because its deadline passed. Same as cancel(),
+	 * except that the request counts as timed out, not cancelled, for the
+	 * endpoint's AdaptiveConcurrencyLimiter.
+	 */
+	public void timeOut();
+
 }
@@ -0,0 +1,15 @@
+package net.kevxu.purdueassist.shared.httpclient;
+
+import net.kevxu.purdueassist.shared.httpclient.BasicHttpClientAsync.HttpRequestListener;
+import net.kevxu.purdueassist.shared.httpclient.HttpClientAsync.HttpMethod;
+
+/**
+ * Creates HttpClientAsync instances. Query classes use it to stay independent
+ * of the transport actually carrying their requests.
+ */
+public interface HttpClientAsyncFactory {
+
+	public HttpClientAsync newHttpClient(String url, HttpMethod httpMethod,
+			HttpRequestListener httpRequestListener);
+
+}
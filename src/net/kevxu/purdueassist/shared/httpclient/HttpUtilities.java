@@ -0,0 +1,70 @@
+package net.kevxu.purdueassist.shared.httpclient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.UnsupportedCharsetException;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.ParseException;
+import org.apache.http.entity.ContentType;
+
+public class HttpUtilities {
+
+	/** Default size of content worth discarding to keep a connection. */
+	public static final long DEFAULT_MAX_DISCARD_BYTES = 16 * 1024;
+
+	/**
+	 * Get the charset declared in the Content-Type header of an entity. Note
+	 * that the Content-Encoding header names a compression (i.e. gzip), not a
+	 * charset.
+	 * 
+	 * @param entity
+	 *            response entity.
+	 * @return charset name, or null if it is not declared or not supported, in
+	 *         which case the parser has to detect it from the content.
+	 */
+	public static String getContentCharset(HttpEntity entity) {
+		try {
+			ContentType contentType = ContentType.get(entity);
+			if (contentType == null)
+				return null;
+			Charset charset = contentType.getCharset();
+			return (charset == null) ? null : charset.name();
+		} catch (ParseException e) {
+			return null;
+		} catch (UnsupportedCharsetException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Release the content of a response that is no longer needed. Remaining
+	 * content up to given size is discarded, so that the connection can be
+	 * reused. A longer remainder is not worth reading; the request is
+	 * cancelled instead, which closes the connection.
+	 * 
+	 * @param httpClient
+	 *            request the response belongs to.
+	 * @param stream
+	 *            content of the response, partially read.
+	 * @param maxDiscardBytes
+	 *            maximum number of bytes to discard.
+	 * @throws IOException
+	 */
+	public static void releaseContent(HttpClientAsync httpClient,
+			InputStream stream, long maxDiscardBytes) throws IOException {
+		byte[] buffer = new byte[4096];
+		long discarded = 0;
+		while (discarded <= maxDiscardBytes) {
+			int count = stream.read(buffer);
+			if (count < 0) {
+				stream.close();
+				return;
+			}
+			discarded += count;
+		}
+		httpClient.cancel();
+	}
+
+}
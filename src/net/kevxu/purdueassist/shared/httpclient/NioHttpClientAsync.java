@@ -0,0 +1,216 @@
+package net.kevxu.purdueassist.shared.httpclient;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import net.kevxu.purdueassist.shared.httpclient.AdaptiveConcurrencyLimiter.Outcome;
+import net.kevxu.purdueassist.shared.httpclient.BasicHttpClientAsync.HttpRequestListener;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.nio.reactor.IOReactorException;
+
+/**
+ * Non-blocking implementation of HttpClientAsync running on the shared
+ * NioHttpTransport. No thread is held while the request is in flight; the
+ * listener is called from the transport's delivery pool once the whole
+ * response has been received. Requests wait for the endpoint's
+ * AdaptiveConcurrencyLimiter of this transport before being sent, whose
+ * ceiling is the transport's connections per route.
+ * @see NioHttpTransport
+ */
+public class NioHttpClientAsync implements HttpClientAsync {
+
+	/**
+	 * Factory creating NioHttpClientAsync instances.
+	 */
+	public static final HttpClientAsyncFactory FACTORY = new HttpClientAsyncFactory() {
+
+		@Override
+		public HttpClientAsync newHttpClient(String url,
+				HttpMethod httpMethod, HttpRequestListener httpRequestListener) {
+			return new NioHttpClientAsync(url, httpMethod,
+					httpRequestListener);
+		}
+	};
+
+	private String mUrl;
+	private HttpMethod mMethod;
+	private HttpRequestListener mListener;
+
+	private List<NameValuePair> mParameters = null;
+
+	private volatile Future<HttpResponse> mFuture = null;
+	private volatile boolean mCancelled = false;
+	private volatile boolean mTimedOut = false;
+
+	public NioHttpClientAsync(String url, HttpMethod httpMethod,
+			HttpRequestListener httpRequestListener) {
+		this.mUrl = url;
+		this.mMethod = httpMethod;
+		this.mListener = httpRequestListener;
+	}
+
+	@Override
+	public void setParameters(List<NameValuePair> parameters)
+			throws MethodNotPostException {
+		if (mMethod != HttpMethod.POST) {
+			throw new MethodNotPostException();
+		} else {
+			this.mParameters = parameters;
+		}
+	}
+
+	@Override
+	public void getResponse() {
+		final NioHttpTransport transport;
+		try {
+			transport = NioHttpTransport.getInstance();
+		} catch (IOReactorException e) {
+			mListener.onRequestFinished(e);
+			return;
+		}
+
+		HttpUriRequest request;
+		switch (mMethod) {
+		case POST: {
+			HttpPost httpPost = new HttpPost(mUrl);
+			if (mParameters != null) {
+				try {
+					httpPost.setEntity(new UrlEncodedFormEntity(mParameters));
+				} catch (UnsupportedEncodingException e) {
+					e.printStackTrace();
+				}
+			}
+			request = httpPost;
+			break;
+		}
+		default: {
+			request = new HttpGet(mUrl);
+			break;
+		}
+		}
+
+		final HttpUriRequest httpRequest = request;
+		final AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter
+				.forEndpoint(NioHttpTransport.class, mUrl,
+						NioHttpTransport.MAX_CONNECTIONS_PER_ROUTE);
+		limiter.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				execute(transport, limiter, httpRequest);
+			}
+		});
+	}
+
+	private void execute(final NioHttpTransport transport,
+			final AdaptiveConcurrencyLimiter limiter, HttpUriRequest request) {
+		if (mCancelled) {
+			limiter.release(0, cancelledOutcome());
+			deliver(transport, new Runnable() {
+
+				@Override
+				public void run() {
+					mListener.onRequestFinished(new IOException(
+							"Request cancelled."));
+				}
+			});
+			return;
+		}
+
+		final long startTime = System.nanoTime();
+		mFuture = transport.getHttpClient().execute(request,
+				new FutureCallback<HttpResponse>() {
+
+					@Override
+					public void completed(final HttpResponse httpResponse) {
+						limiter.release(System.nanoTime() - startTime,
+								AdaptiveConcurrencyLimiter
+										.outcomeOf(httpResponse.getStatusLine()
+												.getStatusCode()));
+						deliver(transport, new Runnable() {
+
+							@Override
+							public void run() {
+								mListener.onRequestFinished(httpResponse);
+							}
+						});
+					}
+
+					@Override
+					public void failed(final Exception e) {
+						limiter.release(System.nanoTime() - startTime,
+								mCancelled ? cancelledOutcome()
+										: AdaptiveConcurrencyLimiter
+												.outcomeOf(e));
+						deliver(transport, new Runnable() {
+
+							@Override
+							public void run() {
+								if (e instanceof ClientProtocolException) {
+									mListener
+											.onRequestFinished((ClientProtocolException) e);
+								} else if (e instanceof IOException) {
+									mListener.onRequestFinished((IOException) e);
+								} else {
+									mListener.onRequestFinished(new IOException(
+											e));
+								}
+							}
+						});
+					}
+
+					@Override
+					public void cancelled() {
+						limiter.release(System.nanoTime() - startTime,
+								cancelledOutcome());
+						deliver(transport, new Runnable() {
+
+							@Override
+							public void run() {
+								mListener.onRequestFinished(new IOException(
+										"Request cancelled."));
+							}
+						});
+					}
+				});
+		if (mCancelled)
+			mFuture.cancel(true);
+	}
+
+	/**
+	 * Cancel the request. A request in flight is cancelled on the I/O reactor
+	 * without blocking.
+	 */
+	@Override
+	public void cancel() {
+		mCancelled = true;
+		Future<HttpResponse> future = mFuture;
+		if (future != null)
+			future.cancel(true);
+	}
+
+	@Override
+	public void timeOut() {
+		mTimedOut = true;
+		cancel();
+	}
+
+	private Outcome cancelledOutcome() {
+		return mTimedOut ? Outcome.TIMEOUT : Outcome.CANCELLED;
+	}
+
+	private static void deliver(NioHttpTransport transport, Runnable task) {
+		transport.getDeliveryExecutor().execute(task);
+	}
+
+}
@@ -0,0 +1,171 @@
+package net.kevxu.purdueassist.shared.httpclient;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.client.protocol.RequestAcceptEncoding;
+import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.client.DefaultHttpAsyncClient;
+import org.apache.http.impl.nio.conn.AsyncSchemeRegistryFactory;
+import org.apache.http.impl.nio.conn.PoolingClientAsyncConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.nio.reactor.IOReactorException;
+
+/**
+ * Process-wide non-blocking HTTP transport. A few I/O reactor threads
+ * multiplex every in-flight request, so the number of concurrent requests is
+ * bounded by the connection pool instead of by the number of threads.
+ * <p>
+ * Completed responses are handed to a small delivery pool, so that listeners
+ * parsing the response never block the I/O reactor. Responses are requested
+ * with gzip or deflate content coding and are decompressed while the listener
+ * reads them.
+ * <p>
+ * I/O threads are daemon threads. Callers relying on asynchronous results
+ * have to keep the JVM alive until the results arrive.
+ * @see NioHttpClientAsync
+ */
+public class NioHttpTransport {
+
+	/** Number of I/O reactor threads. */
+	public static final int IO_THREADS = 2;
+
+	/** Maximum number of pooled connections to a single host. */
+	public static final int MAX_CONNECTIONS_PER_ROUTE = 200;
+
+	/** Maximum number of pooled connections in total. */
+	public static final int MAX_CONNECTIONS_TOTAL = 400;
+
+	/** Number of threads delivering responses to listeners. */
+	public static final int DELIVERY_THREADS = Runtime.getRuntime()
+			.availableProcessors();
+
+	/** Timeout for establishing a connection, in milliseconds. */
+	public static final int CONNECT_TIMEOUT_MILLIS = 10000;
+
+	/** Timeout for waiting for data on a connection, in milliseconds. */
+	public static final int SOCKET_TIMEOUT_MILLIS = 30000;
+
+	/** Idle delivery threads are released after this many seconds. */
+	private static final long DELIVERY_KEEP_ALIVE_SECONDS = 10;
+
+	private static NioHttpTransport sInstance = null;
+
+	private final PoolingClientAsyncConnectionManager mConnectionManager;
+	private final DefaultHttpAsyncClient mHttpClient;
+	private final ThreadPoolExecutor mDeliveryExecutor;
+
+	private NioHttpTransport() throws IOReactorException {
+		IOReactorConfig config = new IOReactorConfig();
+		config.setIoThreadCount(IO_THREADS);
+		config.setTcpNoDelay(true);
+		config.setSoKeepalive(true);
+		config.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+		config.setSoTimeout(SOCKET_TIMEOUT_MILLIS);
+
+		DefaultConnectingIOReactor ioReactor = new DefaultConnectingIOReactor(
+				config, new NamedThreadFactory("purdueassist-nio-", true));
+		mConnectionManager = new PoolingClientAsyncConnectionManager(
+				ioReactor, AsyncSchemeRegistryFactory.createDefault());
+		mConnectionManager.setMaxTotal(MAX_CONNECTIONS_TOTAL);
+		mConnectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+
+		mHttpClient = new DefaultHttpAsyncClient(mConnectionManager);
+		mHttpClient
+				.setKeepAliveStrategy(new DefaultConnectionKeepAliveStrategy());
+		mHttpClient.addRequestInterceptor(new RequestAcceptEncoding());
+		mHttpClient.addResponseInterceptor(new ResponseContentEncoding());
+		mHttpClient.start();
+
+		mDeliveryExecutor = new ThreadPoolExecutor(DELIVERY_THREADS,
+				DELIVERY_THREADS, DELIVERY_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory(
+						"purdueassist-delivery-", false));
+		mDeliveryExecutor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Get the shared transport, creating and starting it on first use.
+	 * 
+	 * @return the process-wide transport.
+	 * @throws IOReactorException
+	 *             If the I/O reactor cannot be created.
+	 */
+	public static synchronized NioHttpTransport getInstance()
+			throws IOReactorException {
+		if (sInstance == null) {
+			sInstance = new NioHttpTransport();
+		}
+		return sInstance;
+	}
+
+	/**
+	 * Shut down the shared transport. In-flight requests are cancelled. Next
+	 * call to getInstance() creates a new transport.
+	 * 
+	 * @throws InterruptedException
+	 */
+	public static synchronized void shutdown() throws InterruptedException {
+		if (sInstance != null) {
+			NioHttpTransport transport = sInstance;
+			sInstance = null;
+			transport.mHttpClient.shutdown();
+			transport.mDeliveryExecutor.shutdown();
+		}
+	}
+
+	/**
+	 * @return started asynchronous HttpClient.
+	 */
+	public HttpAsyncClient getHttpClient() {
+		return mHttpClient;
+	}
+
+	/**
+	 * @return executor on which listeners are called.
+	 */
+	public ExecutorService getDeliveryExecutor() {
+		return mDeliveryExecutor;
+	}
+
+	/**
+	 * Close pooled connections that have been idle longer than given time.
+	 * 
+	 * @param idleTime
+	 *            idle time.
+	 * @param timeUnit
+	 *            unit of idle time.
+	 */
+	public void closeIdleConnections(long idleTime, TimeUnit timeUnit) {
+		mConnectionManager.closeExpiredConnections();
+		mConnectionManager.closeIdleConnections(idleTime, timeUnit);
+	}
+
+	private static class NamedThreadFactory implements ThreadFactory {
+
+		private final String mPrefix;
+		private final boolean mDaemon;
+		private final AtomicInteger mCount = new AtomicInteger(0);
+
+		public NamedThreadFactory(String prefix, boolean daemon) {
+			this.mPrefix = prefix;
+			this.mDaemon = daemon;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, mPrefix
+					+ mCount.incrementAndGet());
+			thread.setDaemon(mDaemon);
+			return thread;
+		}
+	}
+
+}
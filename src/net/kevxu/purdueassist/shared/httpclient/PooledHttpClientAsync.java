@@ -0,0 +1,194 @@
+package net.kevxu.purdueassist.shared.httpclient;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+
+import net.kevxu.purdueassist.shared.httpclient.AdaptiveConcurrencyLimiter.Outcome;
+import net.kevxu.purdueassist.shared.httpclient.BasicHttpClientAsync.HttpRequestListener;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Implementation of HttpClientAsync running on the shared
+ * PooledHttpTransport. Unlike BasicHttpClientAsync, it does not create a
+ * thread or a connection for each request.
+ * <p>
+ * The response entity is consumed after the listener returns, so the
+ * connection always goes back to the pool. Requests wait for the endpoint's
+ * AdaptiveConcurrencyLimiter of this transport before being queued on the
+ * worker pool. Its ceiling is the transport's connections per route, so that
+ * requests holding a slot do not wait for a worker or a connection.
+ * @see PooledHttpTransport
+ */
+public class PooledHttpClientAsync implements HttpClientAsync {
+
+	/**
+	 * Factory creating PooledHttpClientAsync instances.
+	 */
+	public static final HttpClientAsyncFactory FACTORY = new HttpClientAsyncFactory() {
+
+		@Override
+		public HttpClientAsync newHttpClient(String url,
+				HttpMethod httpMethod, HttpRequestListener httpRequestListener) {
+			return new PooledHttpClientAsync(url, httpMethod,
+					httpRequestListener);
+		}
+	};
+
+	private String mUrl;
+	private HttpMethod mMethod;
+	private HttpRequestListener mListener;
+
+	private List<NameValuePair> mParameters = null;
+
+	private volatile HttpUriRequest mRequest = null;
+	private volatile boolean mCancelled = false;
+	private volatile boolean mTimedOut = false;
+
+	public PooledHttpClientAsync(String url, HttpMethod httpMethod,
+			HttpRequestListener httpRequestListener) {
+		this.mUrl = url;
+		this.mMethod = httpMethod;
+		this.mListener = httpRequestListener;
+	}
+
+	private Runnable httpTask = new Runnable() {
+
+		@Override
+		public void run() {
+			AdaptiveConcurrencyLimiter limiter = limiterOf(mUrl);
+			if (mCancelled) {
+				limiter.release(0, cancelledOutcome());
+				mListener.onRequestFinished(new IOException(
+						"Request cancelled."));
+				return;
+			}
+
+			HttpUriRequest request;
+			switch (mMethod) {
+			case POST: {
+				HttpPost httpPost = new HttpPost(mUrl);
+				if (mParameters != null) {
+					try {
+						httpPost.setEntity(new UrlEncodedFormEntity(mParameters));
+					} catch (UnsupportedEncodingException e) {
+						e.printStackTrace();
+					}
+				}
+				request = httpPost;
+				break;
+			}
+			default: {
+				request = new HttpGet(mUrl);
+				break;
+			}
+			}
+
+			mRequest = request;
+			if (mCancelled)
+				request.abort();
+
+			long startTime = System.nanoTime();
+			HttpResponse httpResponse;
+			try {
+				httpResponse = PooledHttpTransport.getInstance()
+						.getHttpClient().execute(request);
+			} catch (ClientProtocolException e) {
+				request.abort();
+				limiter.release(System.nanoTime() - startTime,
+						outcomeOf(e));
+				mListener.onRequestFinished(e);
+				return;
+			} catch (IOException e) {
+				request.abort();
+				limiter.release(System.nanoTime() - startTime,
+						outcomeOf(e));
+				mListener.onRequestFinished(e);
+				return;
+			}
+			long latency = System.nanoTime() - startTime;
+
+			try {
+				mListener.onRequestFinished(httpResponse);
+			} finally {
+				try {
+					EntityUtils.consume(httpResponse.getEntity());
+				} catch (IOException e) {
+					request.abort();
+				}
+				// the connection is back in the pool only now
+				limiter.release(latency, AdaptiveConcurrencyLimiter
+						.outcomeOf(httpResponse.getStatusLine()
+								.getStatusCode()));
+			}
+		}
+	};
+
+	private static AdaptiveConcurrencyLimiter limiterOf(String url) {
+		return AdaptiveConcurrencyLimiter.forEndpoint(
+				PooledHttpTransport.class, url,
+				PooledHttpTransport.MAX_CONNECTIONS_PER_ROUTE);
+	}
+
+	private Outcome outcomeOf(IOException e) {
+		return mCancelled ? cancelledOutcome() : AdaptiveConcurrencyLimiter
+				.outcomeOf(e);
+	}
+
+	private Outcome cancelledOutcome() {
+		return mTimedOut ? Outcome.TIMEOUT : Outcome.CANCELLED;
+	}
+
+	@Override
+	public void setParameters(List<NameValuePair> parameters)
+			throws MethodNotPostException {
+		if (mMethod != HttpMethod.POST) {
+			throw new MethodNotPostException();
+		} else {
+			this.mParameters = parameters;
+		}
+	}
+
+	/**
+	 * Start the request once the endpoint's AdaptiveConcurrencyLimiter allows
+	 * it.
+	 */
+	@Override
+	public void getResponse() {
+		limiterOf(mUrl).execute(new Runnable() {
+
+			@Override
+			public void run() {
+				PooledHttpTransport.getInstance().getExecutor()
+						.execute(httpTask);
+			}
+		});
+	}
+
+	/**
+	 * Cancel the request. A request already sent is aborted, which closes its
+	 * connection.
+	 */
+	@Override
+	public void cancel() {
+		mCancelled = true;
+		HttpUriRequest request = mRequest;
+		if (request != null)
+			request.abort();
+	}
+
+	@Override
+	public void timeOut() {
+		mTimedOut = true;
+		cancel();
+	}
+
+}
@@ -0,0 +1,179 @@
+package net.kevxu.purdueassist.shared.httpclient;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.params.ClientPNames;
+import org.apache.http.client.protocol.RequestAcceptEncoding;
+import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+
+/**
+ * Process-wide HTTP transport. It owns one pooled connection manager with
+ * keep-alive and one bounded worker pool, so connections (and TLS sessions) to
+ * myPurdue are reused across requests instead of being opened for every
+ * lookup.
+ * <p>
+ * Responses are requested with gzip or deflate content coding and are
+ * decompressed while the listener reads them.
+ * @see PooledHttpClientAsync
+ */
+public class PooledHttpTransport {
+
+	/** Maximum number of pooled connections to a single host. */
+	public static final int MAX_CONNECTIONS_PER_ROUTE = 16;
+
+	/** Maximum number of pooled connections in total. */
+	public static final int MAX_CONNECTIONS_TOTAL = 32;
+
+	/** Number of worker threads executing requests. */
+	public static final int WORKER_THREADS = MAX_CONNECTIONS_PER_ROUTE;
+
+	/** Timeout for establishing a connection, in milliseconds. */
+	public static final int CONNECT_TIMEOUT_MILLIS = 10000;
+
+	/** Timeout for waiting for data on a connection, in milliseconds. */
+	public static final int SOCKET_TIMEOUT_MILLIS = 30000;
+
+	/** Timeout for leasing a connection from the pool, in milliseconds. */
+	public static final long CONNECTION_REQUEST_TIMEOUT_MILLIS = 60000;
+
+	/** Idle worker threads are released after this many seconds. */
+	private static final long WORKER_KEEP_ALIVE_SECONDS = 10;
+
+	private static PooledHttpTransport sInstance = null;
+
+	private final PoolingClientConnectionManager mConnectionManager;
+	private final DefaultHttpClient mHttpClient;
+	private final ExecutorService mExecutor;
+
+	private PooledHttpTransport() {
+		mConnectionManager = new PoolingClientConnectionManager(
+				SchemeRegistryFactory.createDefault());
+		mConnectionManager.setMaxTotal(MAX_CONNECTIONS_TOTAL);
+		mConnectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+
+		HttpParams params = new BasicHttpParams();
+		HttpConnectionParams.setStaleCheckingEnabled(params, true);
+		HttpConnectionParams.setTcpNoDelay(params, true);
+		HttpConnectionParams.setConnectionTimeout(params,
+				CONNECT_TIMEOUT_MILLIS);
+		HttpConnectionParams.setSoTimeout(params, SOCKET_TIMEOUT_MILLIS);
+		params.setLongParameter(ClientPNames.CONN_MANAGER_TIMEOUT,
+				CONNECTION_REQUEST_TIMEOUT_MILLIS);
+
+		mHttpClient = new DefaultHttpClient(mConnectionManager, params);
+		mHttpClient
+				.setKeepAliveStrategy(new DefaultConnectionKeepAliveStrategy());
+		mHttpClient.addRequestInterceptor(new RequestAcceptEncoding());
+		mHttpClient.addResponseInterceptor(new ResponseContentEncoding());
+
+		ExecutorService virtualExecutor = RequestThreads.newVirtualExecutor();
+		if (virtualExecutor != null) {
+			// concurrency is bounded by the limiter and the connection pool
+			mExecutor = virtualExecutor;
+		} else {
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(
+					WORKER_THREADS, WORKER_THREADS, WORKER_KEEP_ALIVE_SECONDS,
+					TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+					new WorkerThreadFactory());
+			// Let the JVM exit once the transport has been idle for a while.
+			executor.allowCoreThreadTimeOut(true);
+			mExecutor = executor;
+		}
+	}
+
+	/**
+	 * Get the shared transport, creating it on first use.
+	 * 
+	 * @return the process-wide transport.
+	 */
+	public static synchronized PooledHttpTransport getInstance() {
+		if (sInstance == null) {
+			sInstance = new PooledHttpTransport();
+		}
+		return sInstance;
+	}
+
+	/**
+	 * Shut down the shared transport. Pending requests are still executed, but
+	 * pooled connections are closed afterwards. Next call to getInstance()
+	 * creates a new transport.
+	 */
+	public static synchronized void shutdown() {
+		if (sInstance != null) {
+			final PooledHttpTransport transport = sInstance;
+			sInstance = null;
+			transport.mExecutor.shutdown();
+			new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						transport.mExecutor.awaitTermination(Long.MAX_VALUE,
+								TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						transport.mConnectionManager.shutdown();
+					}
+				}
+			}).start();
+		}
+	}
+
+	/**
+	 * @return HttpClient backed by the pooled connection manager. It is safe
+	 *         to use from multiple threads.
+	 */
+	public HttpClient getHttpClient() {
+		return mHttpClient;
+	}
+
+	/**
+	 * @return executor on which requests are run, either a bounded pool of
+	 *         platform threads or, if chosen with RequestThreads, a virtual
+	 *         thread per request.
+	 */
+	public ExecutorService getExecutor() {
+		return mExecutor;
+	}
+
+	/**
+	 * Close pooled connections that have been idle longer than given time.
+	 * 
+	 * @param idleTime
+	 *            idle time.
+	 * @param timeUnit
+	 *            unit of idle time.
+	 */
+	public void closeIdleConnections(long idleTime, TimeUnit timeUnit) {
+		mConnectionManager.closeExpiredConnections();
+		mConnectionManager.closeIdleConnections(idleTime, timeUnit);
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger mCount = new AtomicInteger(0);
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "purdueassist-http-"
+					+ mCount.incrementAndGet());
+			thread.setDaemon(false);
+			return thread;
+		}
+	}
+
+}
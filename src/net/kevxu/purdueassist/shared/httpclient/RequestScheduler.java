@@ -0,0 +1,41 @@
+package net.kevxu.purdueassist.shared.httpclient;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Timer shared by deadlines and hedged requests. Its only thread is a daemon
+ * thread, and tasks must not block.
+ */
+class RequestScheduler {
+
+	private static final ScheduledExecutorService sScheduler = createScheduler();
+
+	private RequestScheduler() {
+	}
+
+	static ScheduledExecutorService get() {
+		return sScheduler;
+	}
+
+	private static ScheduledExecutorService createScheduler() {
+		ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(
+				1, new ThreadFactory() {
+
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = Executors.defaultThreadFactory()
+								.newThread(runnable);
+						thread.setName("purdueassist-scheduler");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		// most timers are cancelled because the request finished in time
+		scheduler.setRemoveOnCancelPolicy(true);
+		return scheduler;
+	}
+
+}
@@ -0,0 +1,123 @@
+package net.kevxu.purdueassist.shared.httpclient;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Chooses the kind of thread blocking requests run on. Platform threads are
+ * used by default. On JDK 21 and later, virtual threads can be chosen instead,
+ * either with setMode() or by starting the JVM with
+ * -Dpurdueassist.http.threads=virtual, so that tens of thousands of lookups
+ * can block at once without as many stacks. On older JDKs the virtual mode
+ * falls back to platform threads.
+ * <p>
+ * Virtual threads never keep the JVM alive. Callers relying on asynchronous
+ * results have to wait for them, i.e. with CompletableFuture.join().
+ * <p>
+ * The mode is read when a request starts, and by PooledHttpTransport when it
+ * is created, so it should be chosen before the first request.
+ */
+public class RequestThreads {
+
+	public enum Mode {
+		PLATFORM, VIRTUAL
+	};
+
+	/** System property selecting the initial mode, "platform" or "virtual". */
+	public static final String MODE_PROPERTY = "purdueassist.http.threads";
+
+	/** Executors.newVirtualThreadPerTaskExecutor(), or null if unsupported. */
+	private static final Method sVirtualExecutorFactory = findVirtualExecutorFactory();
+
+	/** Executor used by start(), never shut down; null if unsupported. */
+	private static final ExecutorService sVirtualExecutor = newVirtualExecutor(sVirtualExecutorFactory);
+
+	private static volatile Mode sMode = initialMode();
+
+	private RequestThreads() {
+	}
+
+	private static Method findVirtualExecutorFactory() {
+		try {
+			// not compiled against JDK 21, so look it up at run time
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	private static ExecutorService newVirtualExecutor(Method factory) {
+		if (factory == null)
+			return null;
+		try {
+			return (ExecutorService) factory.invoke(null);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	private static Mode initialMode() {
+		String mode = System.getProperty(MODE_PROPERTY);
+		if (mode != null && mode.equalsIgnoreCase(Mode.VIRTUAL.toString())
+				&& isVirtualSupported()) {
+			return Mode.VIRTUAL;
+		} else {
+			return Mode.PLATFORM;
+		}
+	}
+
+	/**
+	 * @return true if the running JVM supports virtual threads.
+	 */
+	public static boolean isVirtualSupported() {
+		// the method exists but throws on JDK 19 and 20 without preview
+		return sVirtualExecutor != null;
+	}
+
+	/**
+	 * @return mode in use.
+	 */
+	public static Mode getMode() {
+		return sMode;
+	}
+
+	/**
+	 * Choose the kind of thread requests run on.
+	 * 
+	 * @param mode
+	 *            requested mode.
+	 * @return mode actually in use, PLATFORM if VIRTUAL was requested but is
+	 *         not supported.
+	 */
+	public static Mode setMode(Mode mode) {
+		if (mode == Mode.VIRTUAL && !isVirtualSupported())
+			mode = Mode.PLATFORM;
+		sMode = mode;
+		return mode;
+	}
+
+	/**
+	 * @return new executor starting a virtual thread per task, or null if the
+	 *         mode in use is PLATFORM.
+	 */
+	static ExecutorService newVirtualExecutor() {
+		return (sMode == Mode.VIRTUAL) ? newVirtualExecutor(sVirtualExecutorFactory)
+				: null;
+	}
+
+	/**
+	 * Run the task on a new thread of the kind in use.
+	 * 
+	 * @param task
+	 *            task to run.
+	 */
+	static void start(Runnable task) {
+		if (sMode == Mode.VIRTUAL) {
+			sVirtualExecutor.execute(task);
+		} else {
+			new Thread(task, "purdueassist-request").start();
+		}
+	}
+
+}
@@ -0,0 +1,20 @@
+package net.kevxu.purdueassist.shared.httpclient;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Thrown when a request does not finish before its deadline.
+ */
+public class RequestTimeoutException extends InterruptedIOException {
+
+	private static final long serialVersionUID = 1L;
+
+	public RequestTimeoutException() {
+
+	}
+
+	public RequestTimeoutException(String message) {
+		super(message);
+	}
+
+}
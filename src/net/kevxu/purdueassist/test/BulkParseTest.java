@@ -0,0 +1,465 @@
+package net.kevxu.purdueassist.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import net.kevxu.purdueassist.course.CatalogDetail;
+import net.kevxu.purdueassist.course.CrnBitmap;
+import net.kevxu.purdueassist.course.ScheduleDetail;
+import net.kevxu.purdueassist.course.ScheduleDetail.Field;
+import net.kevxu.purdueassist.course.ScheduleDetail.Parser;
+import net.kevxu.purdueassist.course.ScheduleDetail.ScheduleDetailEntry;
+import net.kevxu.purdueassist.course.elements.Predefined.Subject;
+import net.kevxu.purdueassist.course.elements.Predefined.Term;
+import net.kevxu.purdueassist.course.shared.HtmlParseException;
+import net.kevxu.purdueassist.course.shared.Outcome;
+import net.kevxu.purdueassist.course.shared.Utilities;
+
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * Parse saved pages offline, in parallel on all cores.
+ * <p>
+ * Pages are read from directories, searched recursively, or zip archives. The
+ * section or course of a page is taken from its file name:
+ * TERM_CRN.html for schedule detail pages, TERM_SUBJECT_CNBR.html for catalog
+ * detail pages, i.e. FALL2012_10248.html or FALL2012_CS_18000.html. The term
+ * may be left out, in which case it is CURRENT.
+ * <p>
+ * With --verify-seats, schedule detail pages are parsed once more for the seats
+ * only, which reads them straight from the bytes, and the seats are checked
+ * against the full parse. Pages read the usual way instead are counted as
+ * seats fallbacks.
+ * <p>
+ * Without pages given, the fixture pages in FIXTURES are parsed, i.e. with
+ * "BulkParseTest --verify-seats" run from the project directory. They hold
+ * one directory of schedule detail pages for each template of PageLayout,
+ * named after it, with and without crosslist seats, a directory of pages of
+ * no known template, named unknown, and a directory of pages of sections not
+ * found, named not_found. With --verify-seats, the template of each of them
+ * is checked against its directory, so that a fixture page of a template
+ * which falls back to the usual parse is reported instead of passing.
+ * <p>
+ * With --crn-bitmaps, the CRNs of the schedule detail pages found are saved
+ * into a CrnBitmap for each term, to be loaded by ScheduleDetail users.
+ */
+public class BulkParseTest {
+
+	/** Fixture pages, relative to the project directory. */
+	public static final String FIXTURES = "src/net/kevxu/purdueassist/test/pages";
+
+	private static final HelpFormatter formatter = new HelpFormatter();
+	private static final Options options = new Options();
+
+	private static final AtomicInteger sFound = new AtomicInteger(0);
+	private static final AtomicInteger sNotFound = new AtomicInteger(0);
+	private static final AtomicInteger sFailed = new AtomicInteger(0);
+	private static final AtomicInteger sMismatched = new AtomicInteger(0);
+	private static final AtomicInteger sTemplatesMismatched =
+			new AtomicInteger(0);
+	private static final ConcurrentMap<Term, CrnBitmap> sCrnBitmaps =
+			new ConcurrentHashMap<Term, CrnBitmap>();
+
+	/**
+	 * A saved page, in a directory or an archive.
+	 */
+	private static abstract class SavedPage {
+
+		final String mName;
+
+		SavedPage(String name) {
+			this.mName = name;
+		}
+
+		abstract InputStream open() throws IOException;
+
+		/**
+		 * @return parts of the file name without extension, split on "_".
+		 */
+		String[] getKey() {
+			String name = mName.substring(Math.max(mName.lastIndexOf('/'),
+					mName.lastIndexOf(File.separatorChar)) + 1);
+			int extension = name.lastIndexOf('.');
+			if (extension > 0)
+				name = name.substring(0, extension);
+			return name.split("_");
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		options.addOption("C", "catalog", false,
+				"Pages are catalog detail pages instead of schedule detail pages.");
+		options.addOption("x", "streaming", false,
+				"Parse schedule detail pages with the streaming parser instead of building a document.");
+		options.addOption("j", "threads", true,
+				"Number of pages parsed in parallel. (default: number of cores)");
+		options.addOption("f", "fields", true,
+				"Comma separated fields to parse, i.e. seats,credits. (default: all)");
+		options.addOption("V", "verify-seats", false,
+				"Check the seats read for seats only lookups against the full parse.");
+		options.addOption("B", "crn-bitmaps", true,
+				"Directory to save the CRNs found of each term into, as TERM.crns.");
+		options.addOption("S", "silent", false, "Only print the summary.");
+
+		CommandLineParser parser = new GnuParser();
+		org.apache.commons.cli.CommandLine cmd;
+		try {
+			cmd = parser.parse(options, args);
+		} catch (ParseException e) {
+			System.err
+					.println("Command line arguments parsing failed. Reason: "
+							+ e.getMessage());
+			printHelp(formatter, options);
+			return;
+		}
+		String[] paths = cmd.getArgs();
+		if (paths.length == 0) {
+			if (!new File(FIXTURES).isDirectory()) {
+				printHelp(formatter, options);
+				System.exit(10);
+			}
+			paths = new String[] { FIXTURES };
+		}
+
+		final boolean catalog = cmd.hasOption("C");
+		final boolean silent = cmd.hasOption("S");
+		int threads = Runtime.getRuntime().availableProcessors();
+		if (cmd.hasOption("j"))
+			threads = Integer.valueOf(cmd.getOptionValue("j"));
+
+		final ScheduleDetail scheduleDetail = new ScheduleDetail();
+		scheduleDetail.setParser(cmd.hasOption("x") ? Parser.STREAMING
+				: Parser.DOCUMENT);
+		final ScheduleDetail seatsDetail;
+		if (cmd.hasOption("V")) {
+			seatsDetail = new ScheduleDetail();
+			seatsDetail.setFields(EnumSet.of(Field.SEATS,
+					Field.WAITLIST_SEATS, Field.CROSSLIST_SEATS));
+		} else {
+			seatsDetail = null;
+		}
+		final CatalogDetail catalogDetail = new CatalogDetail();
+		if (cmd.hasOption("f")) {
+			try {
+				if (catalog) {
+					catalogDetail.setFields(parseFields(
+							CatalogDetail.Field.class, cmd.getOptionValue("f")));
+				} else {
+					scheduleDetail.setFields(parseFields(
+							ScheduleDetail.Field.class, cmd.getOptionValue("f")));
+				}
+			} catch (IllegalArgumentException e) {
+				System.err.println("Unknown field: " + e.getMessage());
+				printHelp(formatter, options);
+				System.exit(10);
+			}
+		}
+
+		List<SavedPage> pages = new ArrayList<SavedPage>();
+		List<ZipFile> archives = new ArrayList<ZipFile>();
+		for (String path : paths) {
+			File file = new File(path);
+			if (file.isDirectory()) {
+				listDirectory(file, pages);
+			} else if (path.endsWith(".zip")) {
+				ZipFile archive = new ZipFile(file);
+				archives.add(archive);
+				listArchive(archive, pages);
+			} else {
+				pages.add(newFilePage(file));
+			}
+		}
+
+		long startTime = System.nanoTime();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		List<ForkJoinTask<String>> results = new ArrayList<ForkJoinTask<String>>();
+		for (final SavedPage page : pages) {
+			results.add(pool.submit(new Callable<String>() {
+
+				@Override
+				public String call() {
+					return catalog ? parseCatalogDetail(catalogDetail, page)
+							: parseScheduleDetail(scheduleDetail, seatsDetail,
+									page);
+				}
+			}));
+		}
+		// print in the order the pages were listed
+		for (ForkJoinTask<String> result : results) {
+			String output = result.join();
+			if (!silent)
+				System.out.println(output);
+		}
+		long elapsed = System.nanoTime() - startTime;
+		pool.shutdown();
+		for (ZipFile archive : archives)
+			archive.close();
+		if (cmd.hasOption("B")) {
+			File directory = new File(cmd.getOptionValue("B"));
+			directory.mkdirs();
+			for (CrnBitmap bitmap : sCrnBitmaps.values()) {
+				File file = new File(directory, bitmap.getTerm().name()
+						+ ".crns");
+				bitmap.save(file);
+				System.err.println("Saved " + bitmap.size() + " CRNs to "
+						+ file + ".");
+			}
+		}
+
+		System.err.println("Pages: " + pages.size() + "; Found: "
+				+ sFound.get() + "; Not Found: " + sNotFound.get()
+				+ "; Failed: " + sFailed.get() + "; Unknown Values: "
+				+ scheduleDetail.getUnknownValues() + "; Threads: " + threads
+				+ "; Time: " + elapsed / 1000000 + " ms;"
+				+ (seatsDetail == null ? "" : " Seats Mismatched: "
+						+ sMismatched.get() + "; Seats Fallbacks: "
+						+ seatsDetail.getSeatsFallbacks()
+						+ "; Templates Mismatched: "
+						+ sTemplatesMismatched.get() + ";"));
+	}
+
+	private static String parseScheduleDetail(ScheduleDetail detail,
+			ScheduleDetail seatsDetail, SavedPage page) {
+		String[] key = page.getKey();
+		InputStream stream = null;
+		try {
+			Term term = (key.length > 1) ? Term.valueOf(key[key.length - 2]
+					.toUpperCase()) : Term.CURRENT;
+			int crn = Integer.valueOf(key[key.length - 1]);
+			stream = page.open();
+			Outcome<ScheduleDetailEntry> outcome;
+			if (seatsDetail != null) {
+				byte[] bytes = readFully(stream);
+				outcome = detail.parseOutcome(bytes, null, term, crn);
+				String mismatch = verifySeats(outcome, seatsDetail, bytes,
+						term, crn);
+				if (mismatch != null) {
+					sMismatched.incrementAndGet();
+					return "INPUT: " + page.mName + " Seats Mismatched: "
+							+ mismatch + "\n";
+				}
+				mismatch = verifyTemplate(page, bytes);
+				if (mismatch != null) {
+					sTemplatesMismatched.incrementAndGet();
+					return "INPUT: " + page.mName + " Template Mismatched: "
+							+ mismatch + "\n";
+				}
+			} else {
+				outcome = detail.parseOutcome(stream, null, term, crn);
+			}
+			if (outcome.isFound() && Utilities.verifyCrn(crn)) {
+				CrnBitmap bitmap = sCrnBitmaps.get(term);
+				if (bitmap == null) {
+					sCrnBitmaps.putIfAbsent(term, new CrnBitmap(term));
+					bitmap = sCrnBitmaps.get(term);
+				}
+				bitmap.add(crn);
+			}
+			return report(page, outcome);
+		} catch (Exception e) {
+			return failed(page, e);
+		} finally {
+			close(stream);
+		}
+	}
+
+	/**
+	 * Parse a page for the seats only, and compare them with the full parse.
+	 * 
+	 * @return how the seats differ, or null if they are the same or the full
+	 *         parse failed.
+	 */
+	private static String verifySeats(Outcome<ScheduleDetailEntry> full,
+			ScheduleDetail seatsDetail, byte[] page, Term term, int crn) {
+		// nothing to check the seats against if the full parse failed
+		if (full.getCause() != null)
+			return null;
+		String expected = seatsOf(full);
+		String actual = seatsOf(seatsDetail.parseOutcome(page, null, term, crn));
+		return expected.equals(actual) ? null : "expected " + expected
+				+ ", got " + actual;
+	}
+
+	/**
+	 * Check the template of a fixture page against its directory.
+	 * 
+	 * @return how the template differs, or null if it is the same or the page
+	 *         is not a fixture page.
+	 */
+	private static String verifyTemplate(SavedPage page, byte[] bytes) {
+		String path = page.mName.replace(File.separatorChar, '/');
+		int name = path.lastIndexOf('/');
+		int directory = (name > 0) ? path.lastIndexOf('/', name - 1) : -1;
+		if (directory < 0 || !path.substring(0, directory).endsWith(FIXTURES))
+			return null;
+		String directoryName = path.substring(directory + 1, name);
+		String expected = directoryName.equals("unknown")
+				|| directoryName.equals("not_found") ? null : directoryName
+				.toUpperCase(Locale.ENGLISH);
+		String actual = ScheduleDetail.getSeatsTemplate(bytes);
+		if (expected == null ? actual == null : expected.equals(actual))
+			return null;
+		return "expected " + (expected == null ? "none" : expected)
+				+ ", got " + (actual == null ? "none" : actual);
+	}
+
+	private static String seatsOf(Outcome<ScheduleDetailEntry> outcome) {
+		if (!outcome.isFound())
+			return outcome.toString();
+		ScheduleDetailEntry entry = outcome.getValue();
+		return entry.getCrn() + " " + entry.getSeats() + " "
+				+ entry.getWaitlistSeats() + " " + entry.getCrosslistSeats();
+	}
+
+	private static byte[] readFully(InputStream stream) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int count;
+		while ((count = stream.read(buffer)) >= 0)
+			bytes.write(buffer, 0, count);
+		return bytes.toByteArray();
+	}
+
+	private static String parseCatalogDetail(CatalogDetail detail,
+			SavedPage page) {
+		String[] key = page.getKey();
+		InputStream stream = null;
+		try {
+			if (key.length < 2)
+				throw new IllegalArgumentException(
+						"File name does not contain subject and cnbr.");
+			Subject subject = Subject.valueOf(key[key.length - 2]
+					.toUpperCase());
+			int cnbr = Integer.valueOf(key[key.length - 1]);
+			stream = page.open();
+			return report(page, detail.parseOutcome(stream, null, subject,
+					cnbr));
+		} catch (Exception e) {
+			return failed(page, e);
+		} finally {
+			close(stream);
+		}
+	}
+
+	private static <E extends Enum<E>> EnumSet<E> parseFields(
+			Class<E> fieldClass, String fields) {
+		EnumSet<E> result = EnumSet.noneOf(fieldClass);
+		for (String field : fields.split(",")) {
+			result.add(Enum.valueOf(fieldClass, field.trim().toUpperCase()));
+		}
+		return result;
+	}
+
+	private static String report(SavedPage page, Outcome<?> outcome) {
+		switch (outcome.getStatus()) {
+		case FOUND:
+			sFound.incrementAndGet();
+			return outcome.getValue().toString();
+		case NOT_FOUND:
+			sNotFound.incrementAndGet();
+			return "INPUT: " + page.mName + " Not Found"
+					+ (outcome.getMessage() == null ? "" : ": "
+							+ outcome.getMessage()) + "\n";
+		default:
+			return failed(page, outcome.getCause());
+		}
+	}
+
+	private static String failed(SavedPage page, Exception e) {
+		sFailed.incrementAndGet();
+		String reason;
+		if (e instanceof HtmlParseException) {
+			reason = "Parse Error: ";
+		} else if (e instanceof IOException) {
+			reason = "IO Error: ";
+		} else if (e instanceof IllegalArgumentException) {
+			reason = "Bad File Name: ";
+		} else {
+			reason = e.getClass().getName() + ": ";
+		}
+		return "INPUT: " + page.mName + " " + reason + e.getMessage() + "\n";
+	}
+
+	private static void close(InputStream stream) {
+		if (stream != null) {
+			try {
+				stream.close();
+			} catch (IOException e) {
+				// nothing was written
+			}
+		}
+	}
+
+	private static boolean isPage(String name) {
+		String lowerCase = name.toLowerCase();
+		return lowerCase.endsWith(".html") || lowerCase.endsWith(".htm");
+	}
+
+	private static void listDirectory(File directory, List<SavedPage> pages) {
+		File[] files = directory.listFiles();
+		if (files == null)
+			return;
+		List<File> sorted = new ArrayList<File>();
+		Collections.addAll(sorted, files);
+		Collections.sort(sorted);
+		for (File file : sorted) {
+			if (file.isDirectory()) {
+				listDirectory(file, pages);
+			} else if (isPage(file.getName())) {
+				pages.add(newFilePage(file));
+			}
+		}
+	}
+
+	private static void listArchive(final ZipFile archive,
+			List<SavedPage> pages) {
+		for (final ZipEntry entry : Collections.list(archive.entries())) {
+			if (!entry.isDirectory() && isPage(entry.getName())) {
+				pages.add(new SavedPage(archive.getName() + "!/"
+						+ entry.getName()) {
+
+					@Override
+					InputStream open() throws IOException {
+						return archive.getInputStream(entry);
+					}
+				});
+			}
+		}
+	}
+
+	private static SavedPage newFilePage(final File file) {
+		return new SavedPage(file.getPath()) {
+
+			@Override
+			InputStream open() throws IOException {
+				return new FileInputStream(file);
+			}
+		};
+	}
+
+	private static void printHelp(HelpFormatter formatter, Options options) {
+		formatter.printHelp(
+				"java BulkParseTest [options] [directory|archive.zip|page.html ...]",
+				options);
+	}
+}
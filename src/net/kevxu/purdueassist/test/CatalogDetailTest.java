@@ -1,15 +1,14 @@
 package net.kevxu.purdueassist.test;
 
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
 
 import net.kevxu.purdueassist.course.CatalogDetail;
 import net.kevxu.purdueassist.course.CatalogDetail.CatalogDetailEntry;
-import net.kevxu.purdueassist.course.CatalogDetail.CatalogDetailListener;
 import net.kevxu.purdueassist.course.elements.Predefined.Subject;
-import net.kevxu.purdueassist.course.shared.CourseNotFoundException;
 import net.kevxu.purdueassist.course.shared.HtmlParseException;
-import net.kevxu.purdueassist.course.shared.RequestNotFinishedException;
 
 public class CatalogDetailTest {
 	public static void main(String[] args) {
@@ -29,57 +28,48 @@ public class CatalogDetailTest {
 		// tmp_cnbr*=100;
 		// }
 		// final int cnbr=tmp_cnbr;
+		// most cnbrs are not found, so outcomes are used instead of exceptions
+		CatalogDetail detail = new CatalogDetail();
+		List<CompletableFuture<Void>> lookups =
+				new ArrayList<CompletableFuture<Void>>();
 		for (int mcnbr = 10000; mcnbr < 16000; mcnbr += 100) {
 			final int cnbr = mcnbr;
-			CatalogDetail detail = new CatalogDetail(
-					new CatalogDetailListener() {
-						@Override
-						public void onCatalogDetailFinished(
-								CatalogDetailEntry entry) {
-							if(entry.getCampuses().contains("West Lafayette"))
+			lookups.add(detail.getOutcome(subject, cnbr).thenAccept(
+					outcome -> {
+						switch (outcome.getStatus()) {
+						case FOUND:
+							CatalogDetailEntry entry = outcome.getValue();
+							if (entry.getCampuses().contains("West Lafayette"))
 								System.out.println(entry.toString());
 							System.out.println("Course Found");
 							System.out.println("----------------------");
-						}
-
-						@Override
-						public void onCatalogDetailFinished(IOException e) {
+							break;
+						case NOT_FOUND:
+							break;
+						case TRANSPORT_ERROR:
 							System.out.println("INPUT: " + cnbr + " "
 									+ subject.toString());
 							System.out.println("IO Error!");
 							System.out.println("----------------------");
-						}
-
-						@Override
-						public void onCatalogDetailFinished(HtmlParseException e) {
+							break;
+						case PARSE_ERROR:
 							System.out.println("INPUT: " + cnbr + " "
 									+ subject.toString());
-							System.out.println("Parse Error!");
+							if (outcome.getCause()
+									instanceof HtmlParseException) {
+								System.out.println("Parse Error!");
+							} else {
+								outcome.getCause().printStackTrace();
+							}
 							System.out.println("----------------------");
+							break;
 						}
-
-						@Override
-						public void onCatalogDetailFinished(
-								CourseNotFoundException e) {
-							// System.out.println("INPUT: " + cnbr + " " +
-							// subject.toString());
-							// System.out.println("Course Not Found!");
-							// System.out.println("----------------------");
-						}
-
-						@Override
-						public void onCatalogDetailFinished(Exception e) {
-							e.printStackTrace();
-						}
-
-					});
-			try {
-				detail.getResult(subject, cnbr);
-			} catch (StringIndexOutOfBoundsException e) {
-
-			} catch (RequestNotFinishedException e1) {
-				e1.printStackTrace();
-			}
+					}));
 		}
+		CompletableFuture.allOf(
+				lookups.toArray(new CompletableFuture<?>[lookups.size()]))
+				.join();
+		// a second sweep within 10 minutes is answered by the not found cache
+		System.out.println("Not Found Cache: " + detail.getNegativeCache());
 	}
 }
@@ -1,25 +1,35 @@
 package net.kevxu.purdueassist.test;
 
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
 
 import net.kevxu.purdueassist.course.ScheduleDetail;
+import net.kevxu.purdueassist.course.ScheduleDetail.BatchListener;
+import net.kevxu.purdueassist.course.ScheduleDetail.Parser;
 import net.kevxu.purdueassist.course.ScheduleDetail.ScheduleDetailEntry;
 import net.kevxu.purdueassist.course.ScheduleDetail.ScheduleDetailListener;
 import net.kevxu.purdueassist.course.elements.Predefined.Term;
+import net.kevxu.purdueassist.course.elements.SectionKey;
 import net.kevxu.purdueassist.course.shared.CourseNotFoundException;
 import net.kevxu.purdueassist.course.shared.HtmlParseException;
-import net.kevxu.purdueassist.course.shared.RequestNotFinishedException;
+import net.kevxu.purdueassist.shared.httpclient.RequestThreads;
+import net.kevxu.purdueassist.shared.httpclient.RequestThreads.Mode;
 
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.GnuParser;
 import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
+import org.apache.commons.lang.StringUtils;
 
 public class ScheduleDetailTest {
 
 	public static final String VERSION = "0.1.2";
 
+	private static final int DEFAULT_CONCURRENCY = 16;
+
 	private static final HelpFormatter formatter = new HelpFormatter();
 	private static final Options options = new Options();
 
@@ -31,6 +41,15 @@ public class ScheduleDetailTest {
 		options.addOption("S", "slient", false, "Do not print anything.");
 		options.addOption("p", "parallel", false,
 				"Process all the search requests parallely.");
+		options.addOption("c", "concurrency", true,
+				"Maximum number of requests in flight in parallel mode. (default "
+						+ DEFAULT_CONCURRENCY + ")");
+		options.addOption("i", "stdin", false,
+				"Read crns from standard input instead of arguments.");
+		options.addOption("v", "virtual-threads", false,
+				"Run requests on virtual threads if the JVM supports them.");
+		options.addOption("x", "streaming", false,
+				"Parse pages with the streaming parser instead of building a document.");
 
 		CommandLineParser parser = new GnuParser();
 		org.apache.commons.cli.CommandLine cmd;
@@ -49,87 +68,78 @@ public class ScheduleDetailTest {
 					termString = cmd.getOptionValue("t");
 				}
 				final Term term = parseTerm(termString);
+				if (cmd.hasOption("v")) {
+					Mode mode = RequestThreads.setMode(Mode.VIRTUAL);
+					if (mode != Mode.VIRTUAL)
+						System.err
+								.println("Virtual threads are not supported, using platform threads.");
+				}
 				final boolean silent = cmd.hasOption("S");
 				final boolean smallSilent = cmd.hasOption("s");
 				final String[] crns = cmd.getArgs();
 				final boolean parallel = cmd.hasOption("p");
+				final Parser pageParser = cmd.hasOption("x") ? Parser.STREAMING
+						: Parser.DOCUMENT;
+				final Iterator<SectionKey> sections;
+				if (cmd.hasOption("i")) {
+					sections = readSections(term, new Scanner(System.in));
+				} else {
+					sections = readSections(term,
+							new Scanner(StringUtils.join(crns, ' ')));
+				}
 
 				if (parallel) {
-					// parallel
-					for (final String crnString : crns) {
-						final int crn = Integer.valueOf(crnString);
-						ScheduleDetail detail = new ScheduleDetail(
-								new ScheduleDetailListener() {
-
-									@Override
-									public void onScheduleDetailFinished(
-											CourseNotFoundException e,
-											Term term, int crn) {
-										if (!silent) {
-											if (!smallSilent)
-												System.err.println("INPUT: "
-														+ crnString + " "
-														+ term);
-											System.out.println("CRN: " + crn + " "
-													+ "Term: " + term
-													+ " Not Found: "
-													+ e.getMessage() + "\n");
-										}
+					// parallel, with bounded number of requests in flight
+					int concurrency = DEFAULT_CONCURRENCY;
+					if (cmd.hasOption("c"))
+						concurrency = Integer.valueOf(cmd.getOptionValue("c"));
+
+					ScheduleDetail detail = new ScheduleDetail();
+					detail.setParser(pageParser);
+					detail.getResults(sections, concurrency,
+							new BatchListener() {
+
+								@Override
+								public void onBatchEntry(
+										ScheduleDetailEntry entry) {
+									if (!silent) {
+										if (!smallSilent)
+											System.err.println("INPUT: "
+													+ entry.getSearchCrn()
+													+ " "
+													+ entry.getSearchTerm());
+										System.out.println(entry);
 									}
+								}
 
-									@Override
-									public void onScheduleDetailFinished(
-											HtmlParseException e) {
-										if (!silent) {
-											if (!smallSilent)
-												System.err.println("INPUT: "
-														+ crnString + " "
-														+ term);
+								@Override
+								public void onBatchFailure(
+										SectionKey section, Exception e) {
+									if (!silent) {
+										if (!smallSilent)
+											System.err.println("INPUT: "
+													+ section.getCrn() + " "
+													+ section.getTerm());
+										if (e instanceof CourseNotFoundException) {
+											System.out.println("CRN: "
+													+ section.getCrn() + " "
+													+ "Term: "
+													+ section.getTerm()
+													+ " Not Found: "
+													+ e.getMessage() + "\n");
+										} else if (e instanceof HtmlParseException) {
 											System.err.println("Parse Error: "
 													+ e.getMessage() + "\n");
-										}
-									}
-
-									@Override
-									public void onScheduleDetailFinished(
-											IOException e) {
-										if (!silent) {
-											if (!smallSilent)
-												System.err.println("INPUT: "
-														+ crnString + " "
-														+ term);
+										} else if (e instanceof IOException) {
 											System.err.println("IO Error: "
 													+ e.getMessage() + "\n");
-										}
-									}
-
-									@Override
-									public void onScheduleDetailFinished(
-											ScheduleDetailEntry entry) {
-										if (!silent) {
-											if (!smallSilent)
-												System.err.println("INPUT: "
-														+ crnString + " "
-														+ term);
-											System.out.println(entry);
-										}
-									}
-
-									@Override
-									public void onScheduleDetailFinished(
-											Exception e) {
-										if (!silent) {
-											if (!smallSilent)
-												System.err.println("INPUT: "
-														+ crnString + " "
-														+ term);
+										} else {
 											e.printStackTrace();
 											System.err.println();
 										}
 									}
-								});
-						detail.getResult(term, crn);
-					}
+								}
+							}).join();
 				} else {
 					// Not parallel
 					ScheduleDetail detail = new ScheduleDetail(
@@ -181,18 +191,19 @@ public class ScheduleDetailTest {
 									}
 								}
 							});
-					for (final String crnString : crns) {
-						while (!detail.isRequestFinished()) {
-							Thread.sleep(100);
-						}
-
-						final int crn = Integer.valueOf(crnString);
+					detail.setParser(pageParser);
+					while (sections.hasNext()) {
+						SectionKey section = sections.next();
 
 						if (!smallSilent)
-							System.err.println("INPUT: " + crnString + " "
-									+ term);
+							System.err.println("INPUT: " + section.getCrn()
+									+ " " + term);
 
-						detail.getResult(term, crn);
+						try {
+							detail.getResult(term, section.getCrn()).get();
+						} catch (ExecutionException e) {
+							// already reported to the listener
+						}
 					}
 				}
 			}
@@ -205,8 +216,6 @@ public class ScheduleDetailTest {
 		} catch (IllegalArgumentException e) {
 			System.err.println("No such school term.");
 			printHelp(formatter, options);
-		} catch (RequestNotFinishedException e1) {
-			e1.printStackTrace();
 		}
 	}
 
@@ -219,4 +228,29 @@ public class ScheduleDetailTest {
 	private static Term parseTerm(String termString) {
 		return Term.valueOf(termString.toUpperCase());
 	}
+
+	/**
+	 * Lazily read whitespace separated crns, so that large inputs are never
+	 * buffered.
+	 */
+	private static Iterator<SectionKey> readSections(final Term term,
+			final Scanner scanner) {
+		return new Iterator<SectionKey>() {
+
+			@Override
+			public boolean hasNext() {
+				return scanner.hasNextInt();
+			}
+
+			@Override
+			public SectionKey next() {
+				return new SectionKey(term, scanner.nextInt());
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
 }
\ No newline at end of file